@@ -0,0 +1,121 @@
+package com.boycottpro.users.bench;
+
+import com.boycottpro.models.UserBoycotts;
+import com.boycottpro.models.UserCauses;
+import com.boycottpro.models.Users;
+import com.boycottpro.users.mapping.ItemMappers;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// The static ItemMappers against the hand-built HashMaps the handler used to fill field
+// by field (insertUserBoycotts, insertUserCauses and the users read-back in upgradeUser).
+// Compare gc.alloc.rate.norm as well as ops/s.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ItemMappingBenchmark {
+
+    @Param({"10", "1000"})
+    public int boycotts;
+
+    private List<UserBoycotts> userBoycotts;
+    private List<UserCauses> userCauses;
+    private Map<String, AttributeValue> userItem;
+
+    @Setup
+    public void setUp() {
+        userBoycotts = new ArrayList<>();
+        for (int i = 0; i < boycotts; i++) {
+            String reason = i % 4 == 0 ? "personal reason " + i : null;
+            String causeId = "cause" + (i % 20);
+            userBoycotts.add(new UserBoycotts("user", "company" + i, "Company Name " + i, causeId,
+                    "Cause description " + (i % 20), "company" + i + "#" + causeId, reason, "1754141635140"));
+        }
+        userCauses = new ArrayList<>();
+        for (int i = 0; i < Math.min(boycotts, 20); i++) {
+            userCauses.add(new UserCauses("user", "cause" + i, "Cause description " + i, "1754141635140"));
+        }
+        userItem = Map.of(
+                "user_id", AttributeValue.fromS("user"),
+                "email_addr", AttributeValue.fromS("user@example.com"),
+                "username", AttributeValue.fromS("user"),
+                "password_hash", AttributeValue.fromS("hash"),
+                "created_ts", AttributeValue.fromN("1754141635140"),
+                "paying_user", AttributeValue.fromBool(true));
+    }
+
+    @Benchmark
+    public void handBuiltItems(Blackhole bh) {
+        for (UserBoycotts boycott : userBoycotts) {
+            Map<String, AttributeValue> item = new HashMap<>();
+            item.put("user_id", AttributeValue.fromS(boycott.getUser_id()));
+            item.put("company_id", AttributeValue.fromS(boycott.getCompany_id()));
+            if (boycott.getCause_id() != null) {
+                item.put("cause_id", AttributeValue.fromS(boycott.getCause_id()));
+            }
+            item.put("company_cause_id", AttributeValue.fromS(boycott.getCompany_cause_id()));
+            if (boycott.getCompany_name() != null) {
+                item.put("company_name", AttributeValue.fromS(boycott.getCompany_name()));
+            }
+            if (boycott.getCause_desc() != null) {
+                item.put("cause_desc", AttributeValue.fromS(boycott.getCause_desc()));
+            }
+            if (boycott.getPersonal_reason() != null) {
+                item.put("personal_reason", AttributeValue.fromS(boycott.getPersonal_reason()));
+            }
+            if (boycott.getTimestamp() != null) {
+                item.put("timestamp", AttributeValue.fromS(boycott.getTimestamp()));
+            }
+            bh.consume(item);
+        }
+        for (UserCauses cause : userCauses) {
+            Map<String, AttributeValue> item = new HashMap<>();
+            item.put("user_id", AttributeValue.fromS(cause.getUser_id()));
+            item.put("cause_id", AttributeValue.fromS(cause.getCause_id()));
+            if (cause.getCause_desc() != null) {
+                item.put("cause_desc", AttributeValue.fromS(cause.getCause_desc()));
+            }
+            if (cause.getTimestamp() != null) {
+                item.put("timestamp", AttributeValue.fromS(cause.getTimestamp()));
+            }
+            bh.consume(item);
+        }
+    }
+
+    @Benchmark
+    public void staticMappers(Blackhole bh) {
+        for (UserBoycotts boycott : userBoycotts) {
+            bh.consume(ItemMappers.USER_BOYCOTTS.toItem(boycott));
+        }
+        for (UserCauses cause : userCauses) {
+            bh.consume(ItemMappers.USER_CAUSES.toItem(cause));
+        }
+    }
+
+    @Benchmark
+    public Users handBuiltUserReadBack() {
+        Users user = new Users();
+        user.setUser_id(null);
+        user.setEmail_addr(userItem.get("email_addr").s());
+        user.setUsername(userItem.get("username").s());
+        user.setCreated_ts(Long.parseLong(userItem.get("created_ts").n()));
+        user.setPassword_hash("***");
+        user.setPaying_user(userItem.get("paying_user").bool());
+        return user;
+    }
+
+    @Benchmark
+    public Users staticUserReadBack() {
+        return ItemMappers.USERS.fromItem(userItem);
+    }
+}
@@ -0,0 +1,46 @@
+package com.boycottpro.users.bench;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+import java.util.Map;
+
+// Answers the calls the upgrade path makes with canned responses and no I/O, so the
+// benchmarks measure only the handler's own work.
+public class StubDynamoDbClient implements DynamoDbClient {
+
+    private static final UpdateItemResponse UPDATED = UpdateItemResponse.builder()
+            .attributes(Map.of(
+                    "user_id", AttributeValue.fromS("bench-user"),
+                    "email_addr", AttributeValue.fromS("bench@example.com"),
+                    "username", AttributeValue.fromS("bench"),
+                    "created_ts", AttributeValue.fromN("1754141635140"),
+                    "paying_user", AttributeValue.fromBool(true)))
+            .build();
+    private static final BatchWriteItemResponse WRITTEN = BatchWriteItemResponse.builder()
+            .unprocessedItems(Map.of())
+            .build();
+
+    @Override
+    public UpdateItemResponse updateItem(UpdateItemRequest request) {
+        return UPDATED;
+    }
+
+    @Override
+    public BatchWriteItemResponse batchWriteItem(BatchWriteItemRequest request) {
+        return WRITTEN;
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,130 @@
+package com.boycottpro.users.bench;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.boycottpro.models.ResponseMessage;
+import com.boycottpro.models.UserBoycotts;
+import com.boycottpro.models.UserCauses;
+import com.boycottpro.users.UpgradeUserHandler;
+import com.boycottpro.users.config.UpgradeOptions;
+import com.boycottpro.users.dynamo.BatchPacker;
+import com.boycottpro.users.mapping.UserItems;
+import com.boycottpro.users.model.UpgradeUserForm;
+import com.boycottpro.users.parse.DecodedUpgrade;
+import com.boycottpro.users.parse.UpgradeBodyDecoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Throughput of each stage of UpgradeUserHandler.handleRequest, and of the whole request
+// against a stub DynamoDbClient. Run with the gc profiler (the benchmark profile does) to
+// get allocation per operation alongside ops/s.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpgradeStagesBenchmark {
+
+    private static final String SUB = "11111111-2222-3333-4444-555555555555";
+
+    @Param({"1", "10", "100", "1000"})
+    public int boycotts;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final UpgradeBodyDecoder decoder = new UpgradeBodyDecoder();
+    private final BatchPacker packer = new BatchPacker();
+    private String body;
+    private UpgradeUserForm form;
+    private Map<String, List<WriteRequest>> writesByTable;
+    private UpgradeUserHandler handler;
+    private APIGatewayProxyRequestEvent event;
+
+    @Setup
+    public void setUp() throws Exception {
+        List<UserBoycotts> userBoycotts = new ArrayList<>();
+        for (int i = 0; i < boycotts; i++) {
+            // every fourth entry carries a personal reason instead of a cause
+            String reason = i % 4 == 0 ? "personal reason " + i : null;
+            userBoycotts.add(new UserBoycotts(null, "company" + i, "Company Name " + i, "cause" + (i % 20),
+                    "Cause description " + (i % 20), null, reason, "1754141635140"));
+        }
+        List<UserCauses> userCauses = new ArrayList<>();
+        for (int i = 0; i < Math.min(boycotts, 20); i++) {
+            userCauses.add(new UserCauses(null, "cause" + i, "Cause description " + i, "1754141635140"));
+        }
+        body = objectMapper.writeValueAsString(new UpgradeUserForm(userBoycotts, userCauses));
+        form = objectMapper.readValue(body, UpgradeUserForm.class);
+        writesByTable = decoder.decode(body, SUB).toWritesByTable();
+
+        handler = new UpgradeUserHandler(new StubDynamoDbClient(), null, new UpgradeOptions());
+        event = new APIGatewayProxyRequestEvent();
+        Map<String, Object> authorizer = new HashMap<>();
+        authorizer.put("claims", Map.of("sub", SUB));
+        APIGatewayProxyRequestEvent.ProxyRequestContext rc = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        rc.setAuthorizer(authorizer);
+        event.setRequestContext(rc);
+        event.setBody(body);
+    }
+
+    // Jackson data binding into the form POJOs, the handler's original first stage.
+    @Benchmark
+    public UpgradeUserForm formDeserialization() throws Exception {
+        return objectMapper.readValue(body, UpgradeUserForm.class);
+    }
+
+    // Streaming decode: parsing, key derivation and item construction in one pass.
+    @Benchmark
+    public DecodedUpgrade streamingDecode() throws Exception {
+        return decoder.decode(body, SUB);
+    }
+
+    @Benchmark
+    public void companyCauseIdDerivation(Blackhole bh) {
+        for (UserBoycotts boycott : form.getUser_boycotts()) {
+            bh.consume(UserItems.companyCauseId(boycott.getCompany_id(), boycott.getCause_id(),
+                    boycott.getPersonal_reason()));
+        }
+    }
+
+    // Item construction from already-bound POJOs, as insertUserBoycotts/insertUserCauses did.
+    @Benchmark
+    public void itemConstruction(Blackhole bh) {
+        for (UserBoycotts b : form.getUser_boycotts()) {
+            bh.consume(UserItems.put(UserItems.boycottItem(SUB, b.getCompany_id(), b.getCompany_name(),
+                    b.getCause_id(), b.getCause_desc(), b.getPersonal_reason(), b.getTimestamp())));
+        }
+        for (UserCauses c : form.getUser_causes()) {
+            bh.consume(UserItems.put(UserItems.causeItem(SUB, c.getCause_id(), c.getCause_desc(),
+                    c.getTimestamp())));
+        }
+    }
+
+    @Benchmark
+    public List<Map<String, List<WriteRequest>>> batchPacking() {
+        return packer.pack(writesByTable);
+    }
+
+    // Mirrors the handler's private response(): serialize the body and build the event.
+    @Benchmark
+    public APIGatewayProxyResponseEvent responseSerialization() throws Exception {
+        ResponseMessage message = new ResponseMessage(200, "User upgraded to premium successfully!", null);
+        return new APIGatewayProxyResponseEvent()
+                .withStatusCode(200)
+                .withHeaders(Map.of("Content-Type", "application/json"))
+                .withBody(objectMapper.writeValueAsString(message));
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent handleRequest() {
+        return handler.handleRequest(event, null);
+    }
+}
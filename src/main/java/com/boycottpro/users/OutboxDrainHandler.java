@@ -0,0 +1,92 @@
+package com.boycottpro.users;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.boycottpro.users.config.Settings;
+import com.boycottpro.users.dynamo.BatchWriteResult;
+import com.boycottpro.users.dynamo.BatchWriter;
+import com.boycottpro.users.dynamo.CounterUpdater;
+import com.boycottpro.users.dynamo.DynamoDbClients;
+import com.boycottpro.users.outbox.OutboxCodec;
+import com.boycottpro.users.outbox.OutboxMessage;
+import com.boycottpro.utilities.Logger;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Consumes the deferred-write queue fed by UpgradeUserHandler in DEFERRED_WRITES mode and
+// writes each message with the same BatchWriter the synchronous path uses. Messages that
+// fail or still have unprocessed items are reported back for redelivery; the event source
+// mapping needs ReportBatchItemFailures. The queue is FIFO, so once a message fails the
+// ones after it are reported too rather than written ahead of it. With AGGREGATE_COUNTERS
+// on, a message's boycotts and causes are counted here once they are written.
+public class OutboxDrainHandler implements RequestHandler<SQSEvent, SQSBatchResponse> {
+
+    private final BatchWriter batchWriter;
+    private final CounterUpdater counterUpdater;
+
+    public OutboxDrainHandler() {
+        this(DynamoDbClients.sync());
+    }
+
+    public OutboxDrainHandler(DynamoDbClient dynamoDb) {
+        this(dynamoDb, Settings.getBoolean("AGGREGATE_COUNTERS", false) ? new CounterUpdater(dynamoDb) : null);
+    }
+
+    public OutboxDrainHandler(DynamoDbClient dynamoDb, CounterUpdater counterUpdater) {
+        this.batchWriter = new BatchWriter(dynamoDb);
+        this.counterUpdater = counterUpdater;
+    }
+
+    @Override
+    public SQSBatchResponse handleRequest(SQSEvent event, Context context) {
+        List<SQSBatchResponse.BatchItemFailure> failures = new ArrayList<>();
+        if (event.getRecords() != null) {
+            for (SQSEvent.SQSMessage record : event.getRecords()) {
+                if (!failures.isEmpty() || !drain(record.getMessageId(), record.getBody())) {
+                    failures.add(new SQSBatchResponse.BatchItemFailure(record.getMessageId()));
+                }
+            }
+        }
+        return new SQSBatchResponse(failures);
+    }
+
+    // Writes one message body; false means it should be retried.
+    public boolean drain(String messageId, String body) {
+        OutboxMessage message;
+        try {
+            message = OutboxCodec.decode(body);
+        } catch (Exception e) {
+            // a body that can't be decoded never will be, so it is dropped rather than retried
+            Logger.error(64, null, "dropping undecodable outbox message " + messageId + ": " + e.getMessage());
+            return true;
+        }
+        try {
+            BatchWriteResult result = batchWriter.write(message.getWritesByTable());
+            if (!result.isComplete()) {
+                Logger.error(70, message.getUserId(), "outbox message " + messageId + " left "
+                        + result.getUnprocessedCount() + " of " + result.getItemCount() + " items unwritten");
+                return false;
+            }
+        } catch (Exception e) {
+            Logger.error(75, message.getUserId(), "outbox message " + messageId + " failed: " + e.getMessage());
+            return false;
+        }
+        if (counterUpdater != null) {
+            // counters are derived data; a failure here doesn't redeliver rows already written
+            try {
+                int failed = counterUpdater.apply(message.getUserId(),
+                        counterUpdater.deltas(message.getUserId(), message.getWritesByTable(), false));
+                if (failed > 0) {
+                    Logger.error(84, message.getUserId(), failed + " boycott/follower counter updates failed");
+                }
+            } catch (Exception e) {
+                Logger.error(87, message.getUserId(), "boycott/follower counters not updated: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,198 @@
+package com.boycottpro.users;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.boycottpro.users.config.Settings;
+import com.boycottpro.users.dynamo.BatchPacker;
+import com.boycottpro.users.dynamo.BatchWriteResult;
+import com.boycottpro.users.dynamo.BatchWriter;
+import com.boycottpro.users.dynamo.DynamoDbClients;
+import com.boycottpro.users.dynamo.UserUpgrader;
+import com.boycottpro.users.mapping.DuplicateCoalescer;
+import com.boycottpro.users.parse.DecodedUpgrade;
+import com.boycottpro.users.parse.UpgradeBodyDecoder;
+import com.boycottpro.utilities.Logger;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Bulk upgrades from an SQS queue for back-office and partner migrations. A message body
+// is the API's upgrade form plus "user_id" (or a user_id message attribute). Records are
+// decoded and upgraded concurrently, then every user's boycott and cause writes are merged
+// into shared 25-item BatchWriteItem chunks. Only the messages whose upgrade or writes
+// failed come back as batchItemFailures; the event source mapping needs
+// ReportBatchItemFailures. Bodies that can never succeed are logged and dropped.
+public class UpgradeQueueHandler implements RequestHandler<SQSEvent, SQSBatchResponse> {
+
+    private final UserUpgrader userUpgrader;
+    private final BatchWriter batchWriter;
+    private final BatchPacker packer = new BatchPacker();
+    private final UpgradeBodyDecoder decoder = new UpgradeBodyDecoder();
+    private final ExecutorService executor;
+
+    public UpgradeQueueHandler() {
+        this(DynamoDbClients.sync());
+    }
+
+    public UpgradeQueueHandler(DynamoDbClient dynamoDb) {
+        this(dynamoDb, Settings.getInt("QUEUE_CONCURRENCY", 8));
+    }
+
+    public UpgradeQueueHandler(DynamoDbClient dynamoDb, int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1: " + concurrency);
+        }
+        this.userUpgrader = new UserUpgrader(dynamoDb);
+        this.batchWriter = new BatchWriter(dynamoDb);
+        this.executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "upgrade-queue");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // What became of one record before the list writes.
+    private static class Upgrade {
+        final String messageId;
+        final String userId;
+        final Map<String, List<WriteRequest>> writesByTable;
+        final boolean failed;
+
+        Upgrade(String messageId, String userId, Map<String, List<WriteRequest>> writesByTable, boolean failed) {
+            this.messageId = messageId;
+            this.userId = userId;
+            this.writesByTable = writesByTable;
+            this.failed = failed;
+        }
+    }
+
+    @Override
+    public SQSBatchResponse handleRequest(SQSEvent event, Context context) {
+        List<SQSEvent.SQSMessage> records = event.getRecords() == null ? List.of() : event.getRecords();
+        List<CompletableFuture<Upgrade>> futures = new ArrayList<>();
+        for (SQSEvent.SQSMessage record : records) {
+            futures.add(CompletableFuture.supplyAsync(() -> upgrade(record), executor));
+        }
+        Set<String> failedMessages = new LinkedHashSet<>();
+        Map<String, Set<String>> messagesByUser = new LinkedHashMap<>();
+        Map<String, List<WriteRequest>> merged = new LinkedHashMap<>();
+        for (CompletableFuture<Upgrade> future : futures) {
+            Upgrade upgrade = future.join();
+            if (upgrade.failed) {
+                failedMessages.add(upgrade.messageId);
+                continue;
+            }
+            if (upgrade.writesByTable.isEmpty()) {
+                continue;
+            }
+            messagesByUser.computeIfAbsent(upgrade.userId, u -> new LinkedHashSet<>()).add(upgrade.messageId);
+            for (Map.Entry<String, List<WriteRequest>> table : upgrade.writesByTable.entrySet()) {
+                merged.computeIfAbsent(table.getKey(), t -> new ArrayList<>()).addAll(table.getValue());
+            }
+        }
+        // two messages for the same user may carry the same item; one chunk can't hold both
+        merged = DuplicateCoalescer.coalesce(merged).getWritesByTable();
+        for (String userId : writeAll(merged)) {
+            failedMessages.addAll(messagesByUser.getOrDefault(userId, Set.of()));
+        }
+        List<SQSBatchResponse.BatchItemFailure> failures = new ArrayList<>();
+        for (String messageId : failedMessages) {
+            failures.add(new SQSBatchResponse.BatchItemFailure(messageId));
+        }
+        return new SQSBatchResponse(failures);
+    }
+
+    private Upgrade upgrade(SQSEvent.SQSMessage record) {
+        String messageId = record.getMessageId();
+        String userId = null;
+        Map<String, List<WriteRequest>> writesByTable;
+        try {
+            userId = userId(record);
+            if (userId == null || userId.isEmpty()) {
+                Logger.error(125, null, "dropping queued upgrade " + messageId + " without a user_id");
+                return new Upgrade(messageId, null, Map.of(), false);
+            }
+            DecodedUpgrade decoded = decoder.decode(record.getBody(), userId);
+            if (!decoded.isComplete()) {
+                Logger.error(130, userId, "dropping queued upgrade " + messageId + ": missing fields");
+                return new Upgrade(messageId, userId, Map.of(), false);
+            }
+            writesByTable = DuplicateCoalescer.coalesce(decoded.toWritesByTable()).getWritesByTable();
+            List<BatchPacker.OversizedItem> oversized = packer.findOversized(writesByTable);
+            if (!oversized.isEmpty()) {
+                Logger.error(136, userId, "dropping queued upgrade " + messageId + ": items too large " + oversized);
+                return new Upgrade(messageId, userId, Map.of(), false);
+            }
+        } catch (IOException e) {
+            Logger.error(140, userId, "dropping queued upgrade " + messageId + ": " + e.getMessage());
+            return new Upgrade(messageId, userId, Map.of(), false);
+        }
+        try {
+            if (userUpgrader.upgrade(userId) == UserUpgrader.Outcome.NOT_FOUND) {
+                Logger.error(145, userId, "dropping queued upgrade " + messageId + ": user not found");
+                return new Upgrade(messageId, userId, Map.of(), false);
+            }
+            return new Upgrade(messageId, userId, writesByTable, false);
+        } catch (Exception e) {
+            Logger.error(150, userId, "queued upgrade " + messageId + " failed: " + e.getMessage());
+            return new Upgrade(messageId, userId, Map.of(), true);
+        }
+    }
+
+    private String userId(SQSEvent.SQSMessage record) throws IOException {
+        if (record.getMessageAttributes() != null) {
+            SQSEvent.MessageAttribute attribute = record.getMessageAttributes().get("user_id");
+            if (attribute != null && attribute.getStringValue() != null) {
+                return attribute.getStringValue();
+            }
+        }
+        return decoder.readTopLevelString(record.getBody(), "user_id");
+    }
+
+    // Writes the merged chunks concurrently and returns the users with anything left unwritten.
+    private Set<String> writeAll(Map<String, List<WriteRequest>> merged) {
+        Set<String> failedUsers = new HashSet<>();
+        if (merged.isEmpty()) {
+            return failedUsers;
+        }
+        long deadline = batchWriter.deadline();
+        List<Map<String, List<WriteRequest>>> chunks = packer.pack(merged);
+        List<CompletableFuture<BatchWriteResult.RequestOutcome>> futures = new ArrayList<>();
+        for (Map<String, List<WriteRequest>> chunk : chunks) {
+            futures.add(CompletableFuture.supplyAsync(() -> batchWriter.submit(chunk, deadline), executor));
+        }
+        for (int i = 0; i < chunks.size(); i++) {
+            try {
+                BatchWriteResult.RequestOutcome outcome = futures.get(i).join();
+                addUsers(outcome.getUnprocessedItems(), failedUsers);
+            } catch (Exception e) {
+                Logger.error(182, null, "queued upgrade chunk failed: " + e.getMessage());
+                addUsers(chunks.get(i), failedUsers);
+            }
+        }
+        return failedUsers;
+    }
+
+    private static void addUsers(Map<String, List<WriteRequest>> writesByTable, Set<String> users) {
+        for (List<WriteRequest> writes : writesByTable.values()) {
+            for (WriteRequest write : writes) {
+                users.add(write.putRequest() != null
+                        ? write.putRequest().item().get("user_id").s()
+                        : write.deleteRequest().key().get("user_id").s());
+            }
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.boycottpro.users.cli;
+
+import com.boycottpro.users.config.Settings;
+import com.boycottpro.users.dynamo.BatchPacker;
+import com.boycottpro.users.dynamo.BatchWriteResult;
+import com.boycottpro.users.dynamo.BatchWriter;
+import com.boycottpro.users.dynamo.DynamoDbClients;
+import com.boycottpro.users.dynamo.UserUpgrader;
+import com.boycottpro.users.mapping.DuplicateCoalescer;
+import com.boycottpro.users.parse.DecodedUpgrade;
+import com.boycottpro.users.parse.UpgradeBodyDecoder;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Offline backfill from a JSON Lines export, one {"sub": ..., "user_boycotts": [...],
+// "user_causes": [...]} record per line. A reader thread feeds a bounded queue; worker
+// threads decode each record with the handler's decoder, upgrade the user, and buffer
+// the writes of several users into shared BatchWriteItem chunks. Progress is checkpointed
+// as the byte offset before the first unfinished line, so a rerun resumes there. Lines
+// that fail are copied to a failures file, which is itself a valid input for a retry run.
+//
+//   java -cp users-upgrade-lambda.jar com.boycottpro.users.cli.BulkUpgrade export.jsonl \
+//        [--writers 8] [--queue 1000] [--checkpoint export.jsonl.checkpoint] [--failures export.jsonl.failed]
+public class BulkUpgrade {
+
+    private static final JsonlReader.Line END = new JsonlReader.Line(-1, "", -1);
+
+    public static class Summary {
+        private final AtomicLong lines = new AtomicLong();
+        private final AtomicLong upgraded = new AtomicLong();
+        private final AtomicLong itemsWritten = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private volatile long committedOffset;
+
+        public long getLines() {
+            return lines.get();
+        }
+
+        public long getUpgraded() {
+            return upgraded.get();
+        }
+
+        public long getItemsWritten() {
+            return itemsWritten.get();
+        }
+
+        public long getFailed() {
+            return failed.get();
+        }
+
+        public long getCommittedOffset() {
+            return committedOffset;
+        }
+
+        @Override
+        public String toString() {
+            return "lines=" + lines + " upgraded=" + upgraded + " itemsWritten=" + itemsWritten
+                    + " failed=" + failed + " offset=" + committedOffset;
+        }
+    }
+
+    private final UserUpgrader userUpgrader;
+    private final BatchWriter batchWriter;
+    private final BatchPacker packer = new BatchPacker();
+    private final UpgradeBodyDecoder decoder = new UpgradeBodyDecoder();
+    private final int writers;
+    private final int queueCapacity;
+    private final int flushItems;
+    private final long checkpointMillis;
+
+    public BulkUpgrade(DynamoDbClient dynamoDb, int writers, int queueCapacity) {
+        this(dynamoDb, writers, queueCapacity, Settings.getInt("BULK_FLUSH_ITEMS", 100),
+                Settings.getLong("BULK_CHECKPOINT_MS", 5000));
+    }
+
+    BulkUpgrade(DynamoDbClient dynamoDb, int writers, int queueCapacity, int flushItems, long checkpointMillis) {
+        if (writers < 1 || queueCapacity < 1 || flushItems < 1) {
+            throw new IllegalArgumentException("invalid bulk upgrade: writers=" + writers
+                    + " queue=" + queueCapacity + " flushItems=" + flushItems);
+        }
+        this.userUpgrader = new UserUpgrader(dynamoDb);
+        this.batchWriter = new BatchWriter(dynamoDb);
+        this.writers = writers;
+        this.queueCapacity = queueCapacity;
+        this.flushItems = flushItems;
+        this.checkpointMillis = checkpointMillis;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("usage: BulkUpgrade <file.jsonl> [--writers N] [--queue N]"
+                    + " [--checkpoint PATH] [--failures PATH]");
+            System.exit(2);
+        }
+        Path input = Paths.get(args[0]);
+        int writers = 8;
+        int queue = 1000;
+        Path checkpoint = Paths.get(args[0] + ".checkpoint");
+        Path failures = Paths.get(args[0] + ".failed");
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--writers":
+                    writers = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--queue":
+                    queue = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--checkpoint":
+                    checkpoint = Paths.get(args[i + 1]);
+                    break;
+                case "--failures":
+                    failures = Paths.get(args[i + 1]);
+                    break;
+                default:
+                    System.err.println("unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+        try {
+            Summary summary = new BulkUpgrade(DynamoDbClients.sync(), writers, queue).run(input, checkpoint, failures);
+            System.err.println("done: " + summary);
+            System.exit(summary.getFailed() == 0 ? 0 : 1);
+        } catch (Exception e) {
+            System.err.println("bulk upgrade stopped: " + e);
+            System.exit(1);
+        }
+    }
+
+    public Summary run(Path input, Path checkpointPath, Path failuresPath) throws IOException, InterruptedException {
+        long startOffset = Checkpoint.read(checkpointPath);
+        Checkpoint checkpoint = new Checkpoint(checkpointPath, startOffset);
+        Summary summary = new Summary();
+        BlockingQueue<JsonlReader.Line> queue = new ArrayBlockingQueue<>(queueCapacity);
+        ExecutorService pool = Executors.newFixedThreadPool(writers);
+        try (BufferedWriter failures = Files.newBufferedWriter(failuresPath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+             JsonlReader reader = new JsonlReader(input, startOffset, 1 << 20,
+                     Settings.getInt("BULK_MAX_LINE_BYTES", 64 * 1024 * 1024))) {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < writers; i++) {
+                workers.add(pool.submit(new Worker(queue, checkpoint, failures, summary)));
+            }
+            long lastSave = System.currentTimeMillis();
+            JsonlReader.Line line;
+            while ((line = reader.next()) != null) {
+                while (!queue.offer(line, 100, TimeUnit.MILLISECONDS)) {
+                    checkWorkers(workers);
+                }
+                summary.lines.incrementAndGet();
+                if (System.currentTimeMillis() - lastSave >= checkpointMillis) {
+                    save(checkpoint, failures, summary);
+                    lastSave = System.currentTimeMillis();
+                }
+            }
+            for (int i = 0; i < writers; i++) {
+                queue.put(END);
+            }
+            for (Future<?> worker : workers) {
+                join(worker);
+            }
+            save(checkpoint, failures, summary);
+        } finally {
+            pool.shutdownNow();
+        }
+        return summary;
+    }
+
+    // Failed lines must be on disk before the checkpoint moves past them.
+    private static void save(Checkpoint checkpoint, BufferedWriter failures, Summary summary) throws IOException {
+        synchronized (failures) {
+            failures.flush();
+        }
+        checkpoint.save();
+        summary.committedOffset = checkpoint.getCommittedOffset();
+        System.err.println("checkpoint: " + summary);
+    }
+
+    private static void checkWorkers(List<Future<?>> workers) throws IOException {
+        for (Future<?> worker : workers) {
+            if (worker.isDone()) {
+                join(worker);
+            }
+        }
+    }
+
+    private static void join(Future<?> worker) throws IOException {
+        try {
+            worker.get();
+        } catch (ExecutionException e) {
+            throw new IOException("bulk upgrade worker failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        }
+    }
+
+    // A decoded line whose user is upgraded and whose writes sit in a worker's buffer.
+    private static class Pending {
+        final JsonlReader.Line line;
+        final String sub;
+        final int items;
+
+        Pending(JsonlReader.Line line, String sub, int items) {
+            this.line = line;
+            this.sub = sub;
+            this.items = items;
+        }
+    }
+
+    private class Worker implements Runnable {
+
+        private final BlockingQueue<JsonlReader.Line> queue;
+        private final Checkpoint checkpoint;
+        private final BufferedWriter failures;
+        private final Summary summary;
+        private final Map<String, List<WriteRequest>> buffered = new LinkedHashMap<>();
+        private final List<Pending> pending = new ArrayList<>();
+        private int bufferedItems;
+
+        Worker(BlockingQueue<JsonlReader.Line> queue, Checkpoint checkpoint, BufferedWriter failures,
+               Summary summary) {
+            this.queue = queue;
+            this.checkpoint = checkpoint;
+            this.failures = failures;
+            this.summary = summary;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    // don't hold a part-filled buffer while the reader is slow
+                    JsonlReader.Line line = pending.isEmpty() ? queue.take() : queue.poll(200, TimeUnit.MILLISECONDS);
+                    if (line == null) {
+                        flush();
+                        continue;
+                    }
+                    if (line == END) {
+                        flush();
+                        return;
+                    }
+                    process(line);
+                    if (bufferedItems >= flushItems) {
+                        flush();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void process(JsonlReader.Line line) {
+            String sub;
+            Map<String, List<WriteRequest>> writesByTable;
+            try {
+                sub = decoder.readTopLevelString(line.getText(), "sub");
+                if (sub == null || sub.isEmpty()) {
+                    fail(line, "no sub");
+                    return;
+                }
+                DecodedUpgrade decoded = decoder.decode(line.getText(), sub);
+                if (!decoded.isComplete()) {
+                    fail(line, "missing user_boycotts or user_causes");
+                    return;
+                }
+                writesByTable = DuplicateCoalescer.coalesce(decoded.toWritesByTable()).getWritesByTable();
+                List<BatchPacker.OversizedItem> oversized = packer.findOversized(writesByTable);
+                if (!oversized.isEmpty()) {
+                    fail(line, "items too large: " + oversized);
+                    return;
+                }
+                if (userUpgrader.upgrade(sub) == UserUpgrader.Outcome.NOT_FOUND) {
+                    fail(line, "user not found");
+                    return;
+                }
+            } catch (Exception e) {
+                fail(line, e.getMessage());
+                return;
+            }
+            summary.upgraded.incrementAndGet();
+            int items = 0;
+            for (Map.Entry<String, List<WriteRequest>> table : writesByTable.entrySet()) {
+                buffered.computeIfAbsent(table.getKey(), t -> new ArrayList<>()).addAll(table.getValue());
+                items += table.getValue().size();
+            }
+            if (items == 0) {
+                checkpoint.finished(line.getNumber(), line.getEndOffset());
+                return;
+            }
+            pending.add(new Pending(line, sub, items));
+            bufferedItems += items;
+        }
+
+        private void flush() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            Set<String> failedUsers = new HashSet<>();
+            long deadline = batchWriter.deadline();
+            for (Map<String, List<WriteRequest>> chunk
+                    : packer.pack(DuplicateCoalescer.coalesce(buffered).getWritesByTable())) {
+                try {
+                    BatchWriteResult.RequestOutcome outcome = batchWriter.submit(chunk, deadline);
+                    addUsers(outcome.getUnprocessedItems(), failedUsers);
+                } catch (Exception e) {
+                    addUsers(chunk, failedUsers);
+                }
+            }
+            for (Pending p : pending) {
+                if (failedUsers.contains(p.sub)) {
+                    fail(p.line, "batch write failed or left unprocessed items");
+                } else {
+                    summary.itemsWritten.addAndGet(p.items);
+                    checkpoint.finished(p.line.getNumber(), p.line.getEndOffset());
+                }
+            }
+            buffered.clear();
+            pending.clear();
+            bufferedItems = 0;
+        }
+
+        private void fail(JsonlReader.Line line, String reason) {
+            summary.failed.incrementAndGet();
+            System.err.println("line " + line.getNumber() + " failed: " + reason);
+            synchronized (failures) {
+                try {
+                    failures.write(line.getText());
+                    failures.newLine();
+                } catch (IOException e) {
+                    throw new IllegalStateException("cannot record failed line " + line.getNumber(), e);
+                }
+            }
+            checkpoint.finished(line.getNumber(), line.getEndOffset());
+        }
+    }
+
+    private static void addUsers(Map<String, List<WriteRequest>> writesByTable, Set<String> users) {
+        for (List<WriteRequest> writes : writesByTable.values()) {
+            for (WriteRequest write : writes) {
+                users.add(write.putRequest() != null
+                        ? write.putRequest().item().get("user_id").s()
+                        : write.deleteRequest().key().get("user_id").s());
+            }
+        }
+    }
+}
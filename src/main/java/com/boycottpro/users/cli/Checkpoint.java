@@ -0,0 +1,58 @@
+package com.boycottpro.users.cli;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+// Tracks which lines are finished and the offset a resumed run can start from. Workers
+// finish lines out of order, so the committed offset only moves past a line once every
+// line before it is done too. The file holds that offset and is replaced atomically.
+public class Checkpoint {
+
+    private final Path path;
+    private final Map<Long, Long> finishedAhead = new HashMap<>();
+    private long nextLine;
+    private long committedOffset;
+
+    public Checkpoint(Path path, long startOffset) {
+        this.path = path;
+        this.committedOffset = startOffset;
+    }
+
+    // Offset stored by an earlier run, or 0 when there is none.
+    public static long read(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        String text = Files.readString(path, StandardCharsets.UTF_8).trim();
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new IOException("unreadable checkpoint " + path + ": " + text);
+        }
+    }
+
+    public synchronized void finished(long lineNumber, long endOffset) {
+        finishedAhead.put(lineNumber, endOffset);
+        Long end;
+        while ((end = finishedAhead.remove(nextLine)) != null) {
+            committedOffset = end;
+            nextLine++;
+        }
+    }
+
+    public synchronized long getCommittedOffset() {
+        return committedOffset;
+    }
+
+    public void save() throws IOException {
+        long offset = getCommittedOffset();
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.writeString(tmp, offset + "\n", StandardCharsets.UTF_8);
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
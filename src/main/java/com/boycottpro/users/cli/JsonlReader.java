@@ -0,0 +1,105 @@
+package com.boycottpro.users.cli;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Reads a JSON Lines file from a byte offset through a fixed read buffer, reporting where
+// each line ends so progress can be checkpointed as an exact offset. Memory use is the
+// buffer plus the longest line, whatever the file size. Blank lines are skipped.
+public class JsonlReader implements Closeable {
+
+    public static class Line {
+        private final long number;
+        private final String text;
+        private final long endOffset;
+
+        Line(long number, String text, long endOffset) {
+            this.number = number;
+            this.text = text;
+            this.endOffset = endOffset;
+        }
+
+        // 0-based position among the lines read in this run.
+        public long getNumber() {
+            return number;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        // Offset just past the line's newline: where a resumed run starts.
+        public long getEndOffset() {
+            return endOffset;
+        }
+    }
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int maxLineBytes;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+    private long offset;
+    private long number;
+
+    public JsonlReader(Path path, long startOffset, int bufferBytes, int maxLineBytes) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        if (startOffset > channel.size()) {
+            channel.close();
+            throw new IOException("checkpoint offset " + startOffset + " is past the end of " + path);
+        }
+        channel.position(startOffset);
+        this.buffer = ByteBuffer.allocate(bufferBytes);
+        this.buffer.flip();
+        this.maxLineBytes = maxLineBytes;
+        this.offset = startOffset;
+    }
+
+    // Next non-blank line, or null at end of file.
+    public Line next() throws IOException {
+        while (true) {
+            line.reset();
+            boolean sawNewline = false;
+            while (!sawNewline) {
+                if (!buffer.hasRemaining()) {
+                    buffer.clear();
+                    int read = channel.read(buffer);
+                    buffer.flip();
+                    if (read < 0) {
+                        break;
+                    }
+                }
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    offset++;
+                    if (b == '\n') {
+                        sawNewline = true;
+                        break;
+                    }
+                    if (line.size() == maxLineBytes) {
+                        throw new IOException("line ending at byte " + offset + " is longer than "
+                                + maxLineBytes + " bytes");
+                    }
+                    line.write(b);
+                }
+            }
+            if (!sawNewline && line.size() == 0) {
+                return null;
+            }
+            String text = line.toString(StandardCharsets.UTF_8).strip();
+            if (!text.isEmpty()) {
+                return new Line(number++, text, offset);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,180 @@
+package com.boycottpro.users.config;
+
+// Feature switches for UpgradeUserHandler. The Lambda reads them from the
+// environment; tests set them directly.
+public class UpgradeOptions {
+
+    private boolean asyncWrites;
+    private boolean transactWrites;
+    private boolean idempotency;
+    private boolean deltaSync;
+    private boolean deltaSyncDeletes;
+    private boolean deferredWrites;
+    private boolean compressResponses;
+    private boolean validateReferences;
+    private boolean aggregateCounters;
+    private boolean pagedStorage;
+    private int pagedStorageThreshold = 500;
+    private boolean metrics = true;
+    private String metricsNamespace = "BoycottPro/UsersUpgrade";
+
+    public UpgradeOptions() {
+    }
+
+    public static UpgradeOptions fromEnvironment() {
+        UpgradeOptions options = new UpgradeOptions();
+        options.setAsyncWrites(Settings.getBoolean("ASYNC_WRITES", false));
+        options.setTransactWrites(Settings.getBoolean("TRANSACT_WRITES", false));
+        options.setIdempotency(Settings.getBoolean("IDEMPOTENCY", false));
+        options.setDeltaSync(Settings.getBoolean("DELTA_SYNC", false));
+        options.setDeltaSyncDeletes(Settings.getBoolean("DELTA_SYNC_DELETES", false));
+        options.setDeferredWrites(Settings.getBoolean("DEFERRED_WRITES", false));
+        options.setCompressResponses(Settings.getBoolean("COMPRESS_RESPONSES", false));
+        options.setValidateReferences(Settings.getBoolean("VALIDATE_REFERENCES", false));
+        options.setAggregateCounters(Settings.getBoolean("AGGREGATE_COUNTERS", false));
+        options.setPagedStorage(Settings.getBoolean("PAGED_STORAGE", false));
+        options.setPagedStorageThreshold(Settings.getInt("PAGED_STORAGE_THRESHOLD", 500));
+        options.setMetrics(Settings.getBoolean("EMF_METRICS", true));
+        options.setMetricsNamespace(Settings.getString("EMF_NAMESPACE", "BoycottPro/UsersUpgrade"));
+        return options;
+    }
+
+    public boolean isAsyncWrites() {
+        return asyncWrites;
+    }
+
+    public void setAsyncWrites(boolean asyncWrites) {
+        this.asyncWrites = asyncWrites;
+    }
+
+    public boolean isTransactWrites() {
+        return transactWrites;
+    }
+
+    public void setTransactWrites(boolean transactWrites) {
+        this.transactWrites = transactWrites;
+    }
+
+    public boolean isIdempotency() {
+        return idempotency;
+    }
+
+    // Needs the idempotency table (IDEMPOTENCY_TABLE) with TTL enabled on expires_at.
+    public void setIdempotency(boolean idempotency) {
+        this.idempotency = idempotency;
+    }
+
+    public boolean isDeltaSync() {
+        return deltaSync;
+    }
+
+    public void setDeltaSync(boolean deltaSync) {
+        this.deltaSync = deltaSync;
+    }
+
+    public boolean isDeltaSyncDeletes() {
+        return deltaSyncDeletes;
+    }
+
+    // Only applies with deltaSync: stored items missing from the form are deleted.
+    public void setDeltaSyncDeletes(boolean deltaSyncDeletes) {
+        this.deltaSyncDeletes = deltaSyncDeletes;
+    }
+
+    public boolean isDeferredWrites() {
+        return deferredWrites;
+    }
+
+    // Answer 202 once paying_user is set and hand the list writes to the outbox
+    // (OUTBOX_QUEUE_URL, a FIFO queue). Takes precedence over transactWrites; can't be
+    // combined with deltaSync.
+    public void setDeferredWrites(boolean deferredWrites) {
+        this.deferredWrites = deferredWrites;
+    }
+
+    public boolean isCompressResponses() {
+        return compressResponses;
+    }
+
+    // gzip/deflate per Accept-Encoding. API Gateway has to list application/json as a
+    // binary media type, or clients get the base64 text.
+    public void setCompressResponses(boolean compressResponses) {
+        this.compressResponses = compressResponses;
+    }
+
+    public boolean isValidateReferences() {
+        return validateReferences;
+    }
+
+    // Reject unknown company_id/cause_id values and replace company_name and cause_desc
+    // with the names stored in the companies and causes tables.
+    public void setValidateReferences(boolean validateReferences) {
+        this.validateReferences = validateReferences;
+    }
+
+    public boolean isAggregateCounters() {
+        return aggregateCounters;
+    }
+
+    // Maintain companies.boycott_count and causes.follower_count; needs the counter markers
+    // table (COUNTER_MARKERS_TABLE) and costs one Query on it per request plus a small
+    // transaction per changed id. With deferredWrites the drain side does the counting.
+    public void setAggregateCounters(boolean aggregateCounters) {
+        this.aggregateCounters = aggregateCounters;
+    }
+
+    public boolean isPagedStorage() {
+        return pagedStorage;
+    }
+
+    // Store a large boycott list as compressed page items in user_boycott_pages instead of
+    // one user_boycotts item per boycott. A user stays paged once they have a page index.
+    public void setPagedStorage(boolean pagedStorage) {
+        this.pagedStorage = pagedStorage;
+    }
+
+    public int getPagedStorageThreshold() {
+        return pagedStorageThreshold;
+    }
+
+    // Boycotts in one request at which a not yet paged user switches to pages.
+    public void setPagedStorageThreshold(int pagedStorageThreshold) {
+        this.pagedStorageThreshold = pagedStorageThreshold;
+    }
+
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    // One CloudWatch Embedded Metric Format line per request on stdout.
+    public void setMetrics(boolean metrics) {
+        this.metrics = metrics;
+    }
+
+    public String getMetricsNamespace() {
+        return metricsNamespace;
+    }
+
+    public void setMetricsNamespace(String metricsNamespace) {
+        this.metricsNamespace = metricsNamespace;
+    }
+
+    @Override
+    public String toString() {
+        return "UpgradeOptions{" +
+                "asyncWrites=" + asyncWrites +
+                ", transactWrites=" + transactWrites +
+                ", idempotency=" + idempotency +
+                ", deltaSync=" + deltaSync +
+                ", deltaSyncDeletes=" + deltaSyncDeletes +
+                ", deferredWrites=" + deferredWrites +
+                ", compressResponses=" + compressResponses +
+                ", validateReferences=" + validateReferences +
+                ", aggregateCounters=" + aggregateCounters +
+                ", pagedStorage=" + pagedStorage +
+                ", pagedStorageThreshold=" + pagedStorageThreshold +
+                ", metrics=" + metrics +
+                ", metricsNamespace='" + metricsNamespace + '\'' +
+                '}';
+    }
+}
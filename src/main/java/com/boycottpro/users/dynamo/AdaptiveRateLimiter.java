@@ -0,0 +1,81 @@
+package com.boycottpro.users.dynamo;
+
+import java.util.function.LongSupplier;
+
+// Token bucket whose refill rate (WCU per second) follows AIMD: it climbs by
+// increaseUnits for every second's worth of capacity written without pushback and is
+// cut by decreaseFactor on throttling, between minRate and maxRate. Reservations may
+// take the bucket negative; the caller waits off the debt, which is what paces chunks.
+public class AdaptiveRateLimiter implements WriteRateLimiter {
+
+    // Concurrent chunks throttled by the same burst should only cut the rate once.
+    static final long DECREASE_COOLDOWN_MILLIS = 1000;
+
+    private final double minRate;
+    private final double maxRate;
+    private final double increaseUnits;
+    private final double decreaseFactor;
+    private final LongSupplier clock;
+
+    private double rate;
+    private double tokens;
+    private long lastRefill;
+    private long lastDecrease = Long.MIN_VALUE;
+
+    public AdaptiveRateLimiter(double minRate, double maxRate, double increaseUnits, double decreaseFactor,
+                               LongSupplier clock) {
+        if (minRate <= 0 || maxRate < minRate || increaseUnits < 0 || decreaseFactor <= 0 || decreaseFactor >= 1) {
+            throw new IllegalArgumentException("invalid rate limiter: min=" + minRate + " max=" + maxRate
+                    + " increase=" + increaseUnits + " decrease=" + decreaseFactor);
+        }
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.increaseUnits = increaseUnits;
+        this.decreaseFactor = decreaseFactor;
+        this.clock = clock;
+        this.rate = maxRate;
+        this.tokens = maxRate;
+        this.lastRefill = clock.getAsLong();
+    }
+
+    @Override
+    public synchronized long reserve(double units) {
+        refill();
+        tokens -= units;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-tokens * 1000 / rate);
+    }
+
+    @Override
+    public synchronized void onConsumed(double reservedUnits, double consumedUnits) {
+        refill();
+        tokens = Math.min(rate, tokens + reservedUnits - consumedUnits);
+        rate = Math.min(maxRate, rate + increaseUnits * consumedUnits / rate);
+    }
+
+    @Override
+    public synchronized void onThrottled() {
+        long now = clock.getAsLong();
+        if (lastDecrease != Long.MIN_VALUE && now - lastDecrease < DECREASE_COOLDOWN_MILLIS) {
+            return;
+        }
+        refill();
+        lastDecrease = now;
+        rate = Math.max(minRate, rate * decreaseFactor);
+        tokens = Math.min(tokens, 0);
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    private void refill() {
+        long now = clock.getAsLong();
+        if (now > lastRefill) {
+            tokens = Math.min(rate, tokens + rate * (now - lastRefill) / 1000.0);
+            lastRefill = now;
+        }
+    }
+}
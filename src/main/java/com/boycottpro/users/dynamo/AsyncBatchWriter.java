@@ -0,0 +1,153 @@
+package com.boycottpro.users.dynamo;
+
+import com.boycottpro.users.config.Settings;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// Dispatches every packed BatchWriteItem request at once through DynamoDbAsyncClient,
+// keeping at most maxInFlight BatchWriteItem requests outstanding. Unprocessed items
+// are resubmitted with the same backoff and time budget as BatchWriter, and every
+// request waits out its WriteRateLimiter delay before it is sent.
+public class AsyncBatchWriter {
+
+    private final DynamoDbAsyncClient dynamoDb;
+    private final RetryPolicy retryPolicy;
+    private final WriteRateLimiter rateLimiter;
+    private final int maxInFlight;
+    private final BatchPacker packer = new BatchPacker();
+    private final LongSupplier clock;
+
+    public AsyncBatchWriter(DynamoDbAsyncClient dynamoDb) {
+        this(dynamoDb, RetryPolicy.fromEnvironment(), Settings.getInt("ASYNC_MAX_IN_FLIGHT", 8),
+                WriteRateLimiter.shared());
+    }
+
+    public AsyncBatchWriter(DynamoDbAsyncClient dynamoDb, RetryPolicy retryPolicy, int maxInFlight) {
+        this(dynamoDb, retryPolicy, maxInFlight, WriteRateLimiter.NONE);
+    }
+
+    public AsyncBatchWriter(DynamoDbAsyncClient dynamoDb, RetryPolicy retryPolicy, int maxInFlight,
+                            WriteRateLimiter rateLimiter) {
+        this(dynamoDb, retryPolicy, maxInFlight, rateLimiter, System::currentTimeMillis);
+    }
+
+    AsyncBatchWriter(DynamoDbAsyncClient dynamoDb, RetryPolicy retryPolicy, int maxInFlight,
+                     WriteRateLimiter rateLimiter, LongSupplier clock) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1: " + maxInFlight);
+        }
+        this.dynamoDb = dynamoDb;
+        this.retryPolicy = retryPolicy;
+        this.rateLimiter = rateLimiter;
+        this.maxInFlight = maxInFlight;
+        this.clock = clock;
+    }
+
+    public BatchWriteResult write(Map<String, List<WriteRequest>> writesByTable) {
+        long deadline = clock.getAsLong() + retryPolicy.getTimeBudgetMillis();
+        Semaphore permits = new Semaphore(maxInFlight);
+        List<CompletableFuture<BatchWriteResult.RequestOutcome>> futures = new ArrayList<>();
+        for (Map<String, List<WriteRequest>> batch : packer.pack(writesByTable)) {
+            futures.add(dispatch(permits, batch, deadline));
+        }
+        BatchWriteResult result = new BatchWriteResult();
+        try {
+            for (CompletableFuture<BatchWriteResult.RequestOutcome> future : futures) {
+                result.add(future.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return result;
+    }
+
+    CompletableFuture<BatchWriteResult.RequestOutcome> dispatch(Semaphore permits,
+                                                                 Map<String, List<WriteRequest>> requestItems,
+                                                                 long deadline) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<BatchWriteResult.RequestOutcome> future;
+        try {
+            future = submit(requestItems, BatchWriteResult.count(requestItems), 0, clock.getAsLong(), deadline);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        return future.whenComplete((outcome, error) -> permits.release());
+    }
+
+    private CompletableFuture<BatchWriteResult.RequestOutcome> submit(Map<String, List<WriteRequest>> requestItems,
+                                                                      int itemCount, int retries, long start,
+                                                                      long deadline) {
+        long units = ItemSizeEstimator.writeUnits(requestItems);
+        long wait = rateLimiter.reserve(units);
+        if (wait <= 0) {
+            return send(requestItems, units, itemCount, retries, start, deadline);
+        }
+        if (clock.getAsLong() + wait > deadline) {
+            rateLimiter.onConsumed(units, 0);
+            return CompletableFuture.completedFuture(
+                    new BatchWriteResult.RequestOutcome(itemCount, retries, requestItems, clock.getAsLong() - start));
+        }
+        Executor paced = CompletableFuture.delayedExecutor(wait, TimeUnit.MILLISECONDS);
+        return CompletableFuture.runAsync(() -> { }, paced)
+                .thenCompose(ignored -> send(requestItems, units, itemCount, retries, start, deadline));
+    }
+
+    private CompletableFuture<BatchWriteResult.RequestOutcome> send(Map<String, List<WriteRequest>> requestItems,
+                                                                    long units, int itemCount, int retries,
+                                                                    long start, long deadline) {
+        BatchWriteItemRequest request = BatchWriteItemRequest.builder()
+                .requestItems(requestItems)
+                .returnConsumedCapacity(rateLimiter == WriteRateLimiter.NONE ? null : ReturnConsumedCapacity.TOTAL)
+                .build();
+        CompletableFuture<BatchWriteItemResponse> call = dynamoDb.batchWriteItem(request)
+                .whenComplete((response, error) -> {
+                    if (response != null) {
+                        rateLimiter.onConsumed(units, WriteRateLimiter.consumedUnits(response, units));
+                    } else if (error instanceof ProvisionedThroughputExceededException
+                            || (error != null && error.getCause() instanceof ProvisionedThroughputExceededException)) {
+                        rateLimiter.onThrottled();
+                    }
+                });
+        return call.thenCompose(response -> {
+            if (!response.hasUnprocessedItems() || response.unprocessedItems().isEmpty()) {
+                return CompletableFuture.completedFuture(
+                        new BatchWriteResult.RequestOutcome(itemCount, retries, Collections.emptyMap(),
+                                clock.getAsLong() - start));
+            }
+            rateLimiter.onThrottled();
+            Map<String, List<WriteRequest>> pending = response.unprocessedItems();
+            long delay = retryPolicy.backoffMillis(retries);
+            if (clock.getAsLong() + delay > deadline) {
+                return CompletableFuture.completedFuture(
+                        new BatchWriteResult.RequestOutcome(itemCount, retries, pending, clock.getAsLong() - start));
+            }
+            Executor delayed = CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS);
+            return CompletableFuture.runAsync(() -> { }, delayed)
+                    .thenCompose(ignored -> submit(pending, itemCount, retries + 1, start, deadline));
+        });
+    }
+}
@@ -0,0 +1,107 @@
+package com.boycottpro.users.dynamo;
+
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Packs writes for several tables into as few BatchWriteItem requests as possible:
+// each request carries at most 25 items across all tables and stays under the
+// request byte budget. Items larger than the 400 KB item limit are never packed.
+public class BatchPacker {
+
+    public static final long MAX_REQUEST_BYTES = 16L * 1024 * 1024;
+
+    private final int maxItems;
+    private final long maxRequestBytes;
+
+    public BatchPacker() {
+        this(BatchWriter.MAX_BATCH_SIZE, MAX_REQUEST_BYTES);
+    }
+
+    public BatchPacker(int maxItems, long maxRequestBytes) {
+        if (maxItems < 1 || maxItems > BatchWriter.MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("maxItems must be between 1 and 25: " + maxItems);
+        }
+        if (maxRequestBytes < ItemSizeEstimator.MAX_ITEM_BYTES) {
+            throw new IllegalArgumentException("maxRequestBytes is smaller than one item: " + maxRequestBytes);
+        }
+        this.maxItems = maxItems;
+        this.maxRequestBytes = maxRequestBytes;
+    }
+
+    public static class OversizedItem {
+        private final String tableName;
+        private final int index;
+        private final long estimatedBytes;
+
+        public OversizedItem(String tableName, int index, long estimatedBytes) {
+            this.tableName = tableName;
+            this.index = index;
+            this.estimatedBytes = estimatedBytes;
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return tableName + "[" + index + "]=" + estimatedBytes + " bytes";
+        }
+    }
+
+    public List<OversizedItem> findOversized(Map<String, List<WriteRequest>> writesByTable) {
+        List<OversizedItem> oversized = new ArrayList<>();
+        for (Map.Entry<String, List<WriteRequest>> table : writesByTable.entrySet()) {
+            List<WriteRequest> writes = table.getValue();
+            for (int i = 0; i < writes.size(); i++) {
+                long size = ItemSizeEstimator.sizeOf(writes.get(i));
+                if (size > ItemSizeEstimator.MAX_ITEM_BYTES) {
+                    oversized.add(new OversizedItem(table.getKey(), i, size));
+                }
+            }
+        }
+        return oversized;
+    }
+
+    // Tables are packed in iteration order, so pass a LinkedHashMap for a stable layout.
+    public List<Map<String, List<WriteRequest>>> pack(Map<String, List<WriteRequest>> writesByTable) {
+        List<Map<String, List<WriteRequest>>> batches = new ArrayList<>();
+        Map<String, List<WriteRequest>> current = new LinkedHashMap<>();
+        int currentItems = 0;
+        long currentBytes = 0;
+        for (Map.Entry<String, List<WriteRequest>> table : writesByTable.entrySet()) {
+            for (WriteRequest write : table.getValue()) {
+                long size = ItemSizeEstimator.sizeOf(write);
+                if (size > ItemSizeEstimator.MAX_ITEM_BYTES) {
+                    throw new IllegalArgumentException("item in " + table.getKey()
+                            + " exceeds the 400 KB item limit: " + size + " bytes");
+                }
+                if (currentItems == maxItems || currentBytes + size > maxRequestBytes) {
+                    batches.add(current);
+                    current = new LinkedHashMap<>();
+                    currentItems = 0;
+                    currentBytes = 0;
+                }
+                current.computeIfAbsent(table.getKey(), t -> new ArrayList<>()).add(write);
+                currentItems++;
+                currentBytes += size;
+            }
+        }
+        if (currentItems > 0) {
+            batches.add(current);
+        }
+        return batches;
+    }
+}
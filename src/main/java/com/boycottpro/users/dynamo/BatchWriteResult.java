@@ -0,0 +1,135 @@
+package com.boycottpro.users.dynamo;
+
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Outcome of one or more BatchWriteItem requests: how often each request had to be
+// resubmitted and which items were still unprocessed when the time budget ran out.
+public class BatchWriteResult {
+
+    private final List<RequestOutcome> requests = new ArrayList<>();
+
+    public static class RequestOutcome {
+        private final int itemCount;
+        private final int retries;
+        private final Map<String, List<WriteRequest>> unprocessedItems;
+        private final long elapsedMillis;
+
+        public RequestOutcome(int itemCount, int retries, Map<String, List<WriteRequest>> unprocessedItems) {
+            this(itemCount, retries, unprocessedItems, 0);
+        }
+
+        // elapsedMillis covers every attempt of the request, backoff included.
+        public RequestOutcome(int itemCount, int retries, Map<String, List<WriteRequest>> unprocessedItems,
+                              long elapsedMillis) {
+            this.itemCount = itemCount;
+            this.retries = retries;
+            this.unprocessedItems = unprocessedItems;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public int getItemCount() {
+            return itemCount;
+        }
+
+        public int getRetries() {
+            return retries;
+        }
+
+        public Map<String, List<WriteRequest>> getUnprocessedItems() {
+            return unprocessedItems;
+        }
+
+        public int getUnprocessedCount() {
+            return BatchWriteResult.count(unprocessedItems);
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+
+    public void add(RequestOutcome outcome) {
+        requests.add(outcome);
+    }
+
+    public void addAll(BatchWriteResult other) {
+        requests.addAll(other.requests);
+    }
+
+    public List<RequestOutcome> getRequests() {
+        return Collections.unmodifiableList(requests);
+    }
+
+    public int getRequestCount() {
+        return requests.size();
+    }
+
+    public int getItemCount() {
+        int total = 0;
+        for (RequestOutcome outcome : requests) {
+            total += outcome.getItemCount();
+        }
+        return total;
+    }
+
+    public List<Integer> getRetryCounts() {
+        List<Integer> retries = new ArrayList<>(requests.size());
+        for (RequestOutcome outcome : requests) {
+            retries.add(outcome.getRetries());
+        }
+        return retries;
+    }
+
+    public int getTotalRetries() {
+        int total = 0;
+        for (RequestOutcome outcome : requests) {
+            total += outcome.getRetries();
+        }
+        return total;
+    }
+
+    public int getUnprocessedCount() {
+        int total = 0;
+        for (RequestOutcome outcome : requests) {
+            total += outcome.getUnprocessedCount();
+        }
+        return total;
+    }
+
+    public Map<String, List<WriteRequest>> getUnprocessedItems() {
+        Map<String, List<WriteRequest>> merged = new HashMap<>();
+        for (RequestOutcome outcome : requests) {
+            outcome.getUnprocessedItems().forEach((table, writes) ->
+                    merged.computeIfAbsent(table, t -> new ArrayList<>()).addAll(writes));
+        }
+        return merged;
+    }
+
+    public boolean isComplete() {
+        return getUnprocessedCount() == 0;
+    }
+
+    static int count(Map<String, List<WriteRequest>> requestItems) {
+        int total = 0;
+        for (List<WriteRequest> writes : requestItems.values()) {
+            total += writes.size();
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchWriteResult{" +
+                "requests=" + getRequestCount() +
+                ", items=" + getItemCount() +
+                ", retries=" + getRetryCounts() +
+                ", unprocessed=" + getUnprocessedCount() +
+                '}';
+    }
+}
@@ -0,0 +1,126 @@
+package com.boycottpro.users.dynamo;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+// Sends BatchWriteItem requests packed by BatchPacker and resubmits whatever DynamoDB
+// hands back as unprocessed until it succeeds or the retry policy's time budget runs out.
+// Every request, first try or retry, is paced by the WriteRateLimiter.
+public class BatchWriter {
+
+    public static final int MAX_BATCH_SIZE = 25;
+
+    public interface Sleeper {
+        void sleep(long millis) throws InterruptedException;
+    }
+
+    private final DynamoDbClient dynamoDb;
+    private final RetryPolicy retryPolicy;
+    private final WriteRateLimiter rateLimiter;
+    private final BatchPacker packer = new BatchPacker();
+    private final LongSupplier clock;
+    private final Sleeper sleeper;
+
+    public BatchWriter(DynamoDbClient dynamoDb) {
+        this(dynamoDb, RetryPolicy.fromEnvironment(), WriteRateLimiter.shared());
+    }
+
+    public BatchWriter(DynamoDbClient dynamoDb, RetryPolicy retryPolicy) {
+        this(dynamoDb, retryPolicy, WriteRateLimiter.NONE);
+    }
+
+    public BatchWriter(DynamoDbClient dynamoDb, RetryPolicy retryPolicy, WriteRateLimiter rateLimiter) {
+        this(dynamoDb, retryPolicy, rateLimiter, System::currentTimeMillis, Thread::sleep);
+    }
+
+    BatchWriter(DynamoDbClient dynamoDb, RetryPolicy retryPolicy, LongSupplier clock, Sleeper sleeper) {
+        this(dynamoDb, retryPolicy, WriteRateLimiter.NONE, clock, sleeper);
+    }
+
+    BatchWriter(DynamoDbClient dynamoDb, RetryPolicy retryPolicy, WriteRateLimiter rateLimiter, LongSupplier clock,
+                Sleeper sleeper) {
+        this.dynamoDb = dynamoDb;
+        this.retryPolicy = retryPolicy;
+        this.rateLimiter = rateLimiter;
+        this.clock = clock;
+        this.sleeper = sleeper;
+    }
+
+    public BatchWriteResult write(String tableName, List<WriteRequest> writeRequests) {
+        return write(Map.of(tableName, writeRequests));
+    }
+
+    public BatchWriteResult write(Map<String, List<WriteRequest>> writesByTable) {
+        BatchWriteResult result = new BatchWriteResult();
+        long deadline = deadline();
+        for (Map<String, List<WriteRequest>> batch : packer.pack(writesByTable)) {
+            result.add(submit(batch, deadline));
+        }
+        return result;
+    }
+
+    public long deadline() {
+        return clock.getAsLong() + retryPolicy.getTimeBudgetMillis();
+    }
+
+    public BatchWriteResult.RequestOutcome submit(Map<String, List<WriteRequest>> requestItems, long deadline) {
+        int itemCount = BatchWriteResult.count(requestItems);
+        long start = clock.getAsLong();
+        Map<String, List<WriteRequest>> pending = requestItems;
+        int retries = 0;
+        while (true) {
+            long units = ItemSizeEstimator.writeUnits(pending);
+            long wait = rateLimiter.reserve(units);
+            if (wait > 0) {
+                if (clock.getAsLong() + wait > deadline) {
+                    rateLimiter.onConsumed(units, 0);
+                    return new BatchWriteResult.RequestOutcome(itemCount, retries, pending, clock.getAsLong() - start);
+                }
+                try {
+                    sleeper.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    rateLimiter.onConsumed(units, 0);
+                    return new BatchWriteResult.RequestOutcome(itemCount, retries, pending, clock.getAsLong() - start);
+                }
+            }
+            BatchWriteItemResponse response;
+            try {
+                response = dynamoDb.batchWriteItem(BatchWriteItemRequest.builder()
+                        .requestItems(pending)
+                        .returnConsumedCapacity(rateLimiter == WriteRateLimiter.NONE ? null : ReturnConsumedCapacity.TOTAL)
+                        .build());
+            } catch (ProvisionedThroughputExceededException e) {
+                rateLimiter.onThrottled();
+                throw e;
+            }
+            rateLimiter.onConsumed(units, WriteRateLimiter.consumedUnits(response, units));
+            if (!response.hasUnprocessedItems() || response.unprocessedItems().isEmpty()) {
+                return new BatchWriteResult.RequestOutcome(itemCount, retries, Collections.emptyMap(),
+                        clock.getAsLong() - start);
+            }
+            rateLimiter.onThrottled();
+            pending = response.unprocessedItems();
+            long delay = retryPolicy.backoffMillis(retries);
+            if (clock.getAsLong() + delay > deadline) {
+                return new BatchWriteResult.RequestOutcome(itemCount, retries, pending, clock.getAsLong() - start);
+            }
+            try {
+                sleeper.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new BatchWriteResult.RequestOutcome(itemCount, retries, pending, clock.getAsLong() - start);
+            }
+            retries++;
+        }
+    }
+}
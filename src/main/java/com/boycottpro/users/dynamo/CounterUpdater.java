@@ -0,0 +1,209 @@
+package com.boycottpro.users.dynamo;
+
+import com.boycottpro.users.config.Settings;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.Delete;
+import software.amazon.awssdk.services.dynamodb.model.Put;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Keeps companies.boycott_count (users boycotting the company) and causes.follower_count
+// (users following the cause) current. A user counts once per company or cause however
+// many rows they hold for it. Each count is backed by a marker item (user_id, counter_id)
+// in the counter markers table, written in the same transaction as the ADD, so concurrent
+// requests, replays and retries after a partial write never count a user twice.
+// Callers apply counters only once the rows themselves have been written.
+public class CounterUpdater {
+
+    private final DynamoDbClient dynamoDb;
+    private final ExecutorService executor;
+    private final String companiesTable;
+    private final String causesTable;
+    private final String markersTable;
+
+    public CounterUpdater(DynamoDbClient dynamoDb) {
+        this(dynamoDb, Settings.getInt("COUNTER_CONCURRENCY", 8), Settings.getString("COMPANIES_TABLE", "companies"),
+                Settings.getString("CAUSES_TABLE", "causes"),
+                Settings.getString("COUNTER_MARKERS_TABLE", "user_counter_markers"));
+    }
+
+    public CounterUpdater(DynamoDbClient dynamoDb, int concurrency, String companiesTable, String causesTable,
+                          String markersTable) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1: " + concurrency);
+        }
+        this.dynamoDb = dynamoDb;
+        this.companiesTable = companiesTable;
+        this.causesTable = causesTable;
+        this.markersTable = markersTable;
+        this.executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "counter-updates");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Net change per table and id against the user's markers: +1 for a sent id not yet
+    // counted and, when the form replaces the user's whole list, -1 for a counted id it
+    // no longer has.
+    public Map<String, Map<String, Long>> deltas(String userId, Map<String, List<WriteRequest>> writesByTable,
+                                                boolean replaces) {
+        Map<String, Set<String>> counted = markers(userId);
+        Map<String, Map<String, Long>> deltas = new LinkedHashMap<>();
+        delta(companiesTable, counted.getOrDefault(companiesTable, Set.of()),
+                ids(puts(writesByTable.get("user_boycotts")), "company_id"),
+                replaces, deltas);
+        delta(causesTable, counted.getOrDefault(causesTable, Set.of()),
+                ids(puts(writesByTable.get("user_causes")), "cause_id"),
+                replaces, deltas);
+        return deltas;
+    }
+
+    private Map<String, Set<String>> markers(String userId) {
+        Map<String, Set<String>> counted = new HashMap<>();
+        Map<String, AttributeValue> startKey = null;
+        do {
+            QueryResponse response = dynamoDb.query(QueryRequest.builder()
+                    .tableName(markersTable)
+                    .keyConditionExpression("user_id = :uid")
+                    .expressionAttributeValues(Map.of(":uid", AttributeValue.fromS(userId)))
+                    .consistentRead(true)
+                    .exclusiveStartKey(startKey)
+                    .build());
+            for (Map<String, AttributeValue> item : response.items()) {
+                String[] counter = item.get("counter_id").s().split("#", 2);
+                counted.computeIfAbsent(counter[0], t -> new HashSet<>()).add(counter[1]);
+            }
+            startKey = response.hasLastEvaluatedKey() && !response.lastEvaluatedKey().isEmpty()
+                    ? response.lastEvaluatedKey() : null;
+        } while (startKey != null);
+        return counted;
+    }
+
+    private static void delta(String table, Set<String> before, Set<String> sent, boolean replaces,
+                              Map<String, Map<String, Long>> deltas) {
+        Map<String, Long> changes = new LinkedHashMap<>();
+        for (String id : sent) {
+            if (!before.contains(id)) {
+                changes.put(id, 1L);
+            }
+        }
+        if (replaces) {
+            for (String id : before) {
+                if (!sent.contains(id)) {
+                    changes.put(id, -1L);
+                }
+            }
+        }
+        if (!changes.isEmpty()) {
+            deltas.put(table, changes);
+        }
+    }
+
+    private static List<Map<String, AttributeValue>> puts(List<WriteRequest> writes) {
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        if (writes != null) {
+            for (WriteRequest write : writes) {
+                if (write.putRequest() != null) {
+                    items.add(write.putRequest().item());
+                }
+            }
+        }
+        return items;
+    }
+
+    private static Set<String> ids(Iterable<Map<String, AttributeValue>> items, String attribute) {
+        Set<String> ids = new HashSet<>();
+        for (Map<String, AttributeValue> item : items) {
+            AttributeValue id = item.get(attribute);
+            if (id != null) {
+                ids.add(id.s());
+            }
+        }
+        return ids;
+    }
+
+    // Applies the deltas and returns how many updates failed. Ids whose record doesn't
+    // exist are skipped rather than created, as are changes another request already made.
+    public int apply(String userId, Map<String, Map<String, Long>> deltas) {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Long>> table : deltas.entrySet()) {
+            for (Map.Entry<String, Long> change : table.getValue().entrySet()) {
+                futures.add(CompletableFuture.supplyAsync(
+                        () -> update(userId, table.getKey(), change.getKey(), change.getValue()), executor));
+            }
+        }
+        int failed = 0;
+        for (CompletableFuture<Boolean> future : futures) {
+            try {
+                future.join();
+            } catch (Exception e) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    // The marker put (or delete) and the ADD go through together or not at all.
+    private boolean update(String userId, String table, String id, long delta) {
+        String idAttribute = companiesTable.equals(table) ? "company_id" : "cause_id";
+        String counter = companiesTable.equals(table) ? "boycott_count" : "follower_count";
+        Map<String, AttributeValue> marker = new HashMap<>();
+        marker.put("user_id", AttributeValue.fromS(userId));
+        marker.put("counter_id", AttributeValue.fromS(table + "#" + id));
+        TransactWriteItem mark = delta > 0
+                ? TransactWriteItem.builder()
+                        .put(Put.builder()
+                                .tableName(markersTable)
+                                .item(marker)
+                                .conditionExpression("attribute_not_exists(user_id)")
+                                .build())
+                        .build()
+                : TransactWriteItem.builder()
+                        .delete(Delete.builder()
+                                .tableName(markersTable)
+                                .key(marker)
+                                .conditionExpression("attribute_exists(user_id)")
+                                .build())
+                        .build();
+        TransactWriteItem add = TransactWriteItem.builder()
+                .update(Update.builder()
+                        .tableName(table)
+                        .key(Map.of(idAttribute, AttributeValue.fromS(id)))
+                        .updateExpression("ADD #count :delta")
+                        .conditionExpression("attribute_exists(#id)")
+                        .expressionAttributeNames(Map.of("#count", counter, "#id", idAttribute))
+                        .expressionAttributeValues(Map.of(":delta", AttributeValue.fromN(Long.toString(delta))))
+                        .build())
+                .build();
+        try {
+            dynamoDb.transactWriteItems(TransactWriteItemsRequest.builder()
+                    .transactItems(mark, add)
+                    .build());
+            return true;
+        } catch (TransactionCanceledException e) {
+            if (e.hasCancellationReasons() && e.cancellationReasons().stream()
+                    .anyMatch(reason -> "ConditionalCheckFailed".equals(reason.code()))) {
+                return false;
+            }
+            throw e;
+        }
+    }
+}
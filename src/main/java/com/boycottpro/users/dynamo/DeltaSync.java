@@ -0,0 +1,103 @@
+package com.boycottpro.users.dynamo;
+
+import com.boycottpro.users.mapping.UserItems;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.DeleteRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Trims a user's boycott and cause puts down to the items that are new or differ from
+// what is stored, using one strongly consistent Query per table on user_id. With deletes
+// on, stored items the form no longer contains are removed too.
+public class DeltaSync {
+
+    private final DynamoDbClient dynamoDb;
+
+    public DeltaSync(DynamoDbClient dynamoDb) {
+        this.dynamoDb = dynamoDb;
+    }
+
+    public Map<String, List<WriteRequest>> diff(String userId, Map<String, List<WriteRequest>> writesByTable,
+                                                boolean deletes) {
+        return diff(userId, writesByTable, deletes, null);
+    }
+
+    // Same, against items already read with load() instead of querying again.
+    public Map<String, List<WriteRequest>> diff(String userId, Map<String, List<WriteRequest>> writesByTable,
+                                                boolean deletes,
+                                                Map<String, Map<AttributeValue, Map<String, AttributeValue>>> loaded) {
+        Map<String, List<WriteRequest>> changed = new LinkedHashMap<>();
+        for (String tableName : List.of("user_boycotts", "user_causes")) {
+            List<WriteRequest> writes = writesByTable.getOrDefault(tableName, List.of());
+            if (writes.isEmpty() && !deletes) {
+                continue;
+            }
+            String sortKey = UserItems.SORT_KEYS.get(tableName);
+            Map<AttributeValue, Map<String, AttributeValue>> stored = loaded != null
+                    ? new HashMap<>(loaded.get(tableName)) : query(tableName, userId, sortKey);
+            List<WriteRequest> tableWrites = new ArrayList<>();
+            for (WriteRequest write : writes) {
+                Map<String, AttributeValue> item = write.putRequest().item();
+                Map<String, AttributeValue> current = stored.remove(item.get(sortKey));
+                if (!item.equals(current)) {
+                    tableWrites.add(write);
+                }
+            }
+            if (deletes) {
+                for (AttributeValue staleKey : stored.keySet()) {
+                    tableWrites.add(WriteRequest.builder()
+                            .deleteRequest(DeleteRequest.builder()
+                                    .key(Map.of("user_id", AttributeValue.fromS(userId), sortKey, staleKey))
+                                    .build())
+                            .build());
+                }
+            }
+            if (!tableWrites.isEmpty()) {
+                changed.put(tableName, tableWrites);
+            }
+        }
+        return changed;
+    }
+
+    // The user's stored user_boycotts and user_causes items, each keyed by sort key.
+    public Map<String, Map<AttributeValue, Map<String, AttributeValue>>> load(String userId) {
+        Map<String, Map<AttributeValue, Map<String, AttributeValue>>> loaded = new LinkedHashMap<>();
+        for (String tableName : List.of("user_boycotts", "user_causes")) {
+            loaded.put(tableName, query(tableName, userId, UserItems.SORT_KEYS.get(tableName)));
+        }
+        return loaded;
+    }
+
+    // One table's stored items, keyed by sort key.
+    public Map<AttributeValue, Map<String, AttributeValue>> load(String userId, String tableName) {
+        return query(tableName, userId, UserItems.SORT_KEYS.get(tableName));
+    }
+
+    private Map<AttributeValue, Map<String, AttributeValue>> query(String tableName, String userId, String sortKey) {
+        Map<AttributeValue, Map<String, AttributeValue>> stored = new HashMap<>();
+        Map<String, AttributeValue> startKey = null;
+        do {
+            QueryResponse response = dynamoDb.query(QueryRequest.builder()
+                    .tableName(tableName)
+                    .keyConditionExpression("user_id = :uid")
+                    .expressionAttributeValues(Map.of(":uid", AttributeValue.fromS(userId)))
+                    .consistentRead(true)
+                    .exclusiveStartKey(startKey)
+                    .build());
+            for (Map<String, AttributeValue> item : response.items()) {
+                stored.put(item.get(sortKey), item);
+            }
+            startKey = response.hasLastEvaluatedKey() && !response.lastEvaluatedKey().isEmpty()
+                    ? response.lastEvaluatedKey() : null;
+        } while (startKey != null);
+        return stored;
+    }
+}
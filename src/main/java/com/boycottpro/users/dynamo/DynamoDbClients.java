@@ -0,0 +1,33 @@
+package com.boycottpro.users.dynamo;
+
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+import java.util.List;
+
+// Builds the DynamoDB clients with an explicit HTTP transport. Naming the transport
+// skips the SDK's classpath scan for one, and UrlConnectionHttpClient initialises far
+// faster than the Apache client, which is excluded from the build.
+public final class DynamoDbClients {
+
+    private DynamoDbClients() {
+    }
+
+    public static DynamoDbClient sync(ExecutionInterceptor... interceptors) {
+        return DynamoDbClient.builder()
+                .httpClient(UrlConnectionHttpClient.create())
+                .overrideConfiguration(config -> config.executionInterceptors(List.of(interceptors)))
+                .build();
+    }
+
+    // Only used when ASYNC_WRITES is on; Netty is the one async transport kept in the jar.
+    public static DynamoDbAsyncClient async(ExecutionInterceptor... interceptors) {
+        return DynamoDbAsyncClient.builder()
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder())
+                .overrideConfiguration(config -> config.executionInterceptors(List.of(interceptors)))
+                .build();
+    }
+}
@@ -0,0 +1,126 @@
+package com.boycottpro.users.dynamo;
+
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.List;
+import java.util.Map;
+
+// Estimates item sizes the way DynamoDB accounts for them: attribute names plus
+// UTF-8 strings, ~1 byte per two digits for numbers, and 3 + 1 per element for
+// lists and maps. Good enough to stay under the 400 KB item and 16 MB request limits.
+public final class ItemSizeEstimator {
+
+    public static final long MAX_ITEM_BYTES = 400 * 1024;
+
+    private ItemSizeEstimator() {
+    }
+
+    public static long sizeOf(WriteRequest writeRequest) {
+        if (writeRequest.putRequest() != null) {
+            return sizeOf(writeRequest.putRequest().item());
+        }
+        if (writeRequest.deleteRequest() != null) {
+            return sizeOf(writeRequest.deleteRequest().key());
+        }
+        return 0;
+    }
+
+    // Write capacity units for a BatchWriteItem request: one per started KB of each put or delete.
+    public static long writeUnits(Map<String, List<WriteRequest>> requestItems) {
+        long units = 0;
+        for (List<WriteRequest> writes : requestItems.values()) {
+            for (WriteRequest write : writes) {
+                units += Math.max(1, (sizeOf(write) + 1023) / 1024);
+            }
+        }
+        return units;
+    }
+
+    public static long sizeOf(Map<String, AttributeValue> item) {
+        long size = 0;
+        for (Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+            size += utf8Length(attribute.getKey()) + sizeOf(attribute.getValue());
+        }
+        return size;
+    }
+
+    public static long sizeOf(AttributeValue value) {
+        if (value == null) {
+            return 0;
+        }
+        switch (value.type()) {
+            case S:
+                return utf8Length(value.s());
+            case N:
+                return numberSize(value.n());
+            case B:
+                return value.b().asByteArrayUnsafe().length;
+            case BOOL:
+            case NUL:
+                return 1;
+            case SS: {
+                long size = 0;
+                for (String s : value.ss()) {
+                    size += utf8Length(s);
+                }
+                return size;
+            }
+            case NS: {
+                long size = 0;
+                for (String n : value.ns()) {
+                    size += numberSize(n);
+                }
+                return size;
+            }
+            case BS: {
+                long size = 0;
+                for (SdkBytes b : value.bs()) {
+                    size += b.asByteArrayUnsafe().length;
+                }
+                return size;
+            }
+            case L: {
+                List<AttributeValue> list = value.l();
+                long size = 3 + list.size();
+                for (AttributeValue element : list) {
+                    size += sizeOf(element);
+                }
+                return size;
+            }
+            case M: {
+                Map<String, AttributeValue> map = value.m();
+                return 3 + map.size() + sizeOf(map);
+            }
+            default:
+                return 0;
+        }
+    }
+
+    static long numberSize(String number) {
+        return number == null ? 0 : (number.length() + 1) / 2 + 1;
+    }
+
+    static long utf8Length(String s) {
+        if (s == null) {
+            return 0;
+        }
+        long length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
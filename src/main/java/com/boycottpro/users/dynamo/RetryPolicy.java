@@ -0,0 +1,54 @@
+package com.boycottpro.users.dynamo;
+
+import com.boycottpro.users.config.Settings;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Capped exponential backoff with full jitter for resubmitting unprocessed items.
+public class RetryPolicy {
+
+    private static final int MAX_SHIFT = 20;
+
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final long timeBudgetMillis;
+
+    public RetryPolicy(long baseDelayMillis, long maxDelayMillis, long timeBudgetMillis) {
+        if (baseDelayMillis < 1 || maxDelayMillis < baseDelayMillis || timeBudgetMillis < 0) {
+            throw new IllegalArgumentException("invalid retry policy: base=" + baseDelayMillis
+                    + " max=" + maxDelayMillis + " budget=" + timeBudgetMillis);
+        }
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    public static RetryPolicy fromEnvironment() {
+        return new RetryPolicy(
+                Settings.getLong("BATCH_WRITE_BASE_DELAY_MS", 25),
+                Settings.getLong("BATCH_WRITE_MAX_DELAY_MS", 1000),
+                Settings.getLong("BATCH_WRITE_TIME_BUDGET_MS", 5000));
+    }
+
+    // Ceiling for the given retry (0-based): base * 2^retry, capped at maxDelayMillis.
+    public long ceilingMillis(int retry) {
+        long ceiling = baseDelayMillis << Math.min(Math.max(retry, 0), MAX_SHIFT);
+        return Math.min(ceiling, maxDelayMillis);
+    }
+
+    public long backoffMillis(int retry) {
+        return ThreadLocalRandom.current().nextLong(ceilingMillis(retry) + 1);
+    }
+
+    public long getBaseDelayMillis() {
+        return baseDelayMillis;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    public long getTimeBudgetMillis() {
+        return timeBudgetMillis;
+    }
+}
@@ -0,0 +1,116 @@
+package com.boycottpro.users.dynamo;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Flips paying_user and writes every user_boycotts/user_causes item in a single
+// TransactWriteItems call, so small upgrades cost one round trip and either fully
+// apply or not at all. Callers check fits() and fall back to BatchWriter otherwise.
+public class TransactUpgradeWriter {
+
+    public static final int MAX_TRANSACT_ITEMS = 100;
+    public static final long MAX_TRANSACT_BYTES = 4L * 1024 * 1024;
+
+    private final DynamoDbClient dynamoDb;
+
+    public TransactUpgradeWriter(DynamoDbClient dynamoDb) {
+        this.dynamoDb = dynamoDb;
+    }
+
+    public boolean fits(Map<String, List<WriteRequest>> writesByTable) {
+        int items = 1;
+        long bytes = 0;
+        for (List<WriteRequest> writes : writesByTable.values()) {
+            items += writes.size();
+            if (items > MAX_TRANSACT_ITEMS) {
+                return false;
+            }
+            for (WriteRequest write : writes) {
+                bytes += ItemSizeEstimator.sizeOf(write);
+            }
+        }
+        return bytes <= MAX_TRANSACT_BYTES;
+    }
+
+    // Same condition as UserUpgrader: only an existing, not yet paying user is updated. An
+    // already premium user still gets the items, in a second transaction that only checks
+    // the user exists. Nothing is written for a missing user.
+    public UserUpgrader.Outcome upgrade(String userId, Map<String, List<WriteRequest>> writesByTable) {
+        Map<String, AttributeValue> key = Map.of("user_id", AttributeValue.fromS(userId));
+        TransactWriteItem update = TransactWriteItem.builder()
+                .update(Update.builder()
+                        .tableName("users")
+                        .key(key)
+                        .updateExpression("SET paying_user = :paying")
+                        .conditionExpression("attribute_exists(user_id) AND "
+                                + "(attribute_not_exists(paying_user) OR paying_user <> :paying)")
+                        .expressionAttributeValues(Map.of(":paying", AttributeValue.fromBool(true)))
+                        .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+                        .build())
+                .build();
+        CancellationReason reason = transact(update, writesByTable);
+        if (reason == null) {
+            return UserUpgrader.Outcome.UPGRADED;
+        }
+        if (!reason.hasItem() || reason.item().isEmpty()) {
+            return UserUpgrader.Outcome.NOT_FOUND;
+        }
+        if (writesByTable.values().stream().allMatch(List::isEmpty)) {
+            return UserUpgrader.Outcome.ALREADY_PREMIUM;
+        }
+        TransactWriteItem exists = TransactWriteItem.builder()
+                .conditionCheck(ConditionCheck.builder()
+                        .tableName("users")
+                        .key(key)
+                        .conditionExpression("attribute_exists(user_id)")
+                        .build())
+                .build();
+        return transact(exists, writesByTable) == null
+                ? UserUpgrader.Outcome.ALREADY_PREMIUM : UserUpgrader.Outcome.NOT_FOUND;
+    }
+
+    // Returns null when the transaction went through, or the users item's cancellation
+    // reason when its condition failed.
+    private CancellationReason transact(TransactWriteItem user, Map<String, List<WriteRequest>> writesByTable) {
+        List<TransactWriteItem> items = new ArrayList<>();
+        items.add(user);
+        for (Map.Entry<String, List<WriteRequest>> table : writesByTable.entrySet()) {
+            for (WriteRequest write : table.getValue()) {
+                items.add(toTransactItem(table.getKey(), write));
+            }
+        }
+        try {
+            dynamoDb.transactWriteItems(TransactWriteItemsRequest.builder()
+                    .transactItems(items)
+                    .build());
+            return null;
+        } catch (TransactionCanceledException e) {
+            if (e.hasCancellationReasons() && !e.cancellationReasons().isEmpty()
+                    && "ConditionalCheckFailed".equals(e.cancellationReasons().get(0).code())) {
+                return e.cancellationReasons().get(0);
+            }
+            throw e;
+        }
+    }
+
+    static TransactWriteItem toTransactItem(String tableName, WriteRequest write) {
+        if (write.putRequest() != null) {
+            return TransactWriteItem.builder()
+                    .put(Put.builder()
+                            .tableName(tableName)
+                            .item(write.putRequest().item())
+                            .build())
+                    .build();
+        }
+        return TransactWriteItem.builder()
+                .delete(Delete.builder()
+                        .tableName(tableName)
+                        .key(write.deleteRequest().key())
+                        .build())
+                .build();
+    }
+}
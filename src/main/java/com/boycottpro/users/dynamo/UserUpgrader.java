@@ -0,0 +1,51 @@
+package com.boycottpro.users.dynamo;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+import java.util.Map;
+
+// Sets paying_user on the users item only when the user exists and isn't paying yet, and
+// reads back nothing but paying_user. A failed condition returns the old item, which tells
+// a missing user apart from one that is already premium without a second read.
+public class UserUpgrader {
+
+    public enum Outcome {
+        UPGRADED,
+        ALREADY_PREMIUM,
+        NOT_FOUND
+    }
+
+    private final DynamoDbClient dynamoDb;
+
+    public UserUpgrader(DynamoDbClient dynamoDb) {
+        this.dynamoDb = dynamoDb;
+    }
+
+    public Outcome upgrade(String userId) {
+        try {
+            UpdateItemResponse response = dynamoDb.updateItem(UpdateItemRequest.builder()
+                    .tableName("users")
+                    .key(Map.of("user_id", AttributeValue.fromS(userId)))
+                    .updateExpression("SET paying_user = :paying")
+                    .conditionExpression("attribute_exists(user_id) AND "
+                            + "(attribute_not_exists(paying_user) OR paying_user <> :paying)")
+                    .expressionAttributeValues(Map.of(":paying", AttributeValue.fromBool(true)))
+                    .returnValues(ReturnValue.UPDATED_NEW)
+                    .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+                    .build());
+            AttributeValue paying = response.attributes().get("paying_user");
+            if (paying == null || !Boolean.TRUE.equals(paying.bool())) {
+                throw new IllegalStateException("users update for " + userId + " did not return paying_user");
+            }
+            return Outcome.UPGRADED;
+        } catch (ConditionalCheckFailedException e) {
+            return e.hasItem() && !e.item().isEmpty() ? Outcome.ALREADY_PREMIUM : Outcome.NOT_FOUND;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.boycottpro.users.dynamo;
+
+import com.boycottpro.users.config.Settings;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+
+// Paces BatchWriteItem requests from one container. Writers reserve the write capacity
+// they expect to use, wait the returned delay, then report what DynamoDB actually
+// consumed and whether it pushed back.
+public interface WriteRateLimiter {
+
+    WriteRateLimiter NONE = new WriteRateLimiter() {
+        @Override
+        public long reserve(double units) {
+            return 0;
+        }
+
+        @Override
+        public void onConsumed(double reservedUnits, double consumedUnits) {
+        }
+
+        @Override
+        public void onThrottled() {
+        }
+    };
+
+    // Milliseconds to wait before sending a request expected to consume the given WCU.
+    long reserve(double units);
+
+    void onConsumed(double reservedUnits, double consumedUnits);
+
+    void onThrottled();
+
+    // The container's limiter. Every writer built from the environment (the handler's sync
+    // and async writers, the boycott page writer, the queue and drain handlers) paces against
+    // this one bucket, so together they stay within WRITE_RATE_LIMIT_WCU.
+    static WriteRateLimiter shared() {
+        return Shared.INSTANCE;
+    }
+
+    // WRITE_RATE_LIMIT_WCU is this container's share of the table's write capacity; 0 turns pacing off.
+    static WriteRateLimiter fromEnvironment() {
+        long maxRate = Settings.getLong("WRITE_RATE_LIMIT_WCU", 0);
+        if (maxRate <= 0) {
+            return NONE;
+        }
+        return new AdaptiveRateLimiter(
+                Settings.getLong("WRITE_RATE_LIMIT_MIN_WCU", Math.max(1, maxRate / 20)),
+                maxRate,
+                Settings.getLong("WRITE_RATE_LIMIT_INCREASE_WCU", Math.max(1, maxRate / 10)),
+                0.5,
+                System::currentTimeMillis);
+    }
+
+    // ConsumedCapacity when DynamoDB returned it, otherwise the estimate minus what came back unprocessed.
+    static double consumedUnits(BatchWriteItemResponse response, double sentUnits) {
+        if (response.hasConsumedCapacity() && !response.consumedCapacity().isEmpty()) {
+            double units = 0;
+            for (ConsumedCapacity capacity : response.consumedCapacity()) {
+                units += capacity.capacityUnits() == null ? 0 : capacity.capacityUnits();
+            }
+            return units;
+        }
+        if (response.hasUnprocessedItems()) {
+            return Math.max(0, sentUnits - ItemSizeEstimator.writeUnits(response.unprocessedItems()));
+        }
+        return sentUnits;
+    }
+
+    final class Shared {
+
+        private static final WriteRateLimiter INSTANCE = fromEnvironment();
+
+        private Shared() {
+        }
+    }
+}
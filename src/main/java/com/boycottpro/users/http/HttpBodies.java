@@ -0,0 +1,123 @@
+package com.boycottpro.users.http;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.boycottpro.users.parse.InvalidUpgradeBodyException;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+// Request and response bodies as they cross API Gateway. Compressed request bodies
+// arrive base64-encoded; they are decoded and inflated as a stream under the JSON parser,
+// never materialised as a String. Responses are compressed when the client accepts it
+// and the body is big enough to gain from it; binary media types must then include
+// application/json (or */*) so API Gateway decodes the base64 body.
+public final class HttpBodies {
+
+    private HttpBodies() {
+    }
+
+    // A header's trimmed value, matched case-insensitively; null when absent or blank.
+    public static String header(APIGatewayProxyRequestEvent event, String name) {
+        if (event.getHeaders() == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> header : event.getHeaders().entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && header.getValue() != null && !header.getValue().isBlank()) {
+                return header.getValue().trim();
+            }
+        }
+        return null;
+    }
+
+    public static InputStream openRequestBody(APIGatewayProxyRequestEvent event, long maxInflatedBytes)
+            throws IOException {
+        String body = event.getBody();
+        if (body == null || body.isEmpty()) {
+            throw new InvalidUpgradeBodyException("request body is empty");
+        }
+        String encoding = header(event, "Content-Encoding");
+        ContentCoding coding = ContentCoding.fromContentEncoding(encoding);
+        if (coding == null) {
+            throw new UnsupportedContentEncodingException("unsupported Content-Encoding: " + encoding);
+        }
+        boolean base64 = Boolean.TRUE.equals(event.getIsBase64Encoded());
+        if (!base64) {
+            if (coding != ContentCoding.IDENTITY) {
+                throw new InvalidUpgradeBodyException(coding.getToken() + " request bodies must be base64-encoded");
+            }
+            return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+        }
+        // base64 text is ASCII, so ISO-8859-1 hands the decoder the bytes without a charset pass
+        InputStream raw = Base64.getMimeDecoder().wrap(new ByteArrayInputStream(body.getBytes(StandardCharsets.ISO_8859_1)));
+        if (coding == ContentCoding.IDENTITY) {
+            return raw;
+        }
+        return new LimitedInputStream(coding.decode(raw), maxInflatedBytes);
+    }
+
+    // Returns the response with its body compressed for the given coding, or unchanged.
+    public static APIGatewayProxyResponseEvent compress(APIGatewayProxyResponseEvent response, ContentCoding coding,
+                                                        int minBytes) {
+        if (coding == ContentCoding.IDENTITY || response.getBody() == null
+                || Boolean.TRUE.equals(response.getIsBase64Encoded())) {
+            return response;
+        }
+        byte[] body = response.getBody().getBytes(StandardCharsets.UTF_8);
+        if (body.length < minBytes) {
+            return response;
+        }
+        Map<String, String> headers = response.getHeaders() == null ? new HashMap<>() : new HashMap<>(response.getHeaders());
+        headers.put("Content-Encoding", coding.getToken());
+        headers.put("Vary", "Accept-Encoding");
+        return new APIGatewayProxyResponseEvent()
+                .withStatusCode(response.getStatusCode())
+                .withHeaders(headers)
+                .withMultiValueHeaders(response.getMultiValueHeaders())
+                .withIsBase64Encoded(true)
+                .withBody(Base64.getEncoder().encodeToString(coding.encode(body)));
+    }
+
+    // Stops a small compressed body from inflating into an unbounded one.
+    private static class LimitedInputStream extends FilterInputStream {
+
+        private final long limit;
+        private long read;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        private void count(int n) throws IOException {
+            read += n;
+            if (read > limit) {
+                throw new InvalidUpgradeBodyException("decompressed request body exceeds " + limit + " bytes");
+            }
+        }
+    }
+}
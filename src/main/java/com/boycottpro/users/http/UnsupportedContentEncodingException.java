@@ -0,0 +1,11 @@
+package com.boycottpro.users.http;
+
+import java.io.IOException;
+
+// The request's Content-Encoding is not gzip, deflate or identity.
+public class UnsupportedContentEncodingException extends IOException {
+
+    public UnsupportedContentEncodingException(String message) {
+        super(message);
+    }
+}
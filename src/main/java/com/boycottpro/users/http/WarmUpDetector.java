@@ -0,0 +1,40 @@
+package com.boycottpro.users.http;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.boycottpro.users.config.Settings;
+
+// Recognises keep-warm pings so they skip authentication and the upgrade path. A ping is
+// what a scheduled rule sends as constant input, {"resource": "/warmup"} (WARMUP_RESOURCE):
+// an event with that resource and no requestContext or httpMethod, which API Gateway
+// always sets, so no client request can pass for one. A marker header (WARMUP_HEADER, any
+// value but "false") is also accepted only when configured, for callers that can't reach
+// the function except through API Gateway; it is off by default.
+public class WarmUpDetector {
+
+    private final String header;
+    private final String resource;
+
+    public WarmUpDetector(String header, String resource) {
+        this.header = header;
+        this.resource = resource;
+    }
+
+    public static WarmUpDetector fromEnvironment() {
+        return new WarmUpDetector(Settings.getString("WARMUP_HEADER", ""),
+                Settings.getString("WARMUP_RESOURCE", "/warmup"));
+    }
+
+    public boolean isWarmUp(APIGatewayProxyRequestEvent event) {
+        if (event == null) {
+            return false;
+        }
+        if (header != null && !header.isEmpty()) {
+            String marker = HttpBodies.header(event, header);
+            if (marker != null && !"false".equalsIgnoreCase(marker)) {
+                return true;
+            }
+        }
+        return resource != null && !resource.isEmpty() && resource.equals(event.getResource())
+                && event.getRequestContext() == null && event.getHttpMethod() == null;
+    }
+}
@@ -0,0 +1,149 @@
+package com.boycottpro.users.idempotency;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.boycottpro.models.ResponseMessage;
+import com.boycottpro.users.config.Settings;
+import com.boycottpro.users.http.HttpBodies;
+import com.boycottpro.utilities.JwtUtility;
+import com.boycottpro.utilities.Logger;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+// Runs an upgrade request at most once per idempotency key. The key is the caller's
+// Idempotency-Key header, or a hash of sub plus body when there is none, scoped to the
+// user. Successful responses are kept in a per-container LRU and in DynamoDB; a retry
+// gets the stored response back without any user_boycotts or user_causes writes.
+// If the idempotency table can't be reached the request runs unguarded.
+public class IdempotencyGuard {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final IdempotencyStore store;
+    private final ResponseCache cache;
+    private final long ttlSeconds;
+    private final long inProgressSeconds;
+    private final LongSupplier clock;
+
+    public IdempotencyGuard(IdempotencyStore store) {
+        this(store, new ResponseCache(Settings.getInt("IDEMPOTENCY_CACHE_SIZE", 256)),
+                Settings.getLong("IDEMPOTENCY_TTL_SECONDS", 86400),
+                Settings.getLong("IDEMPOTENCY_IN_PROGRESS_SECONDS", 60),
+                () -> System.currentTimeMillis() / 1000);
+    }
+
+    // inProgressSeconds should cover the Lambda timeout, so a crashed request frees its key.
+    public IdempotencyGuard(IdempotencyStore store, ResponseCache cache, long ttlSeconds, long inProgressSeconds,
+                            LongSupplier clock) {
+        this.store = store;
+        this.cache = cache;
+        this.ttlSeconds = ttlSeconds;
+        this.inProgressSeconds = inProgressSeconds;
+        this.clock = clock;
+    }
+
+    public APIGatewayProxyResponseEvent handle(APIGatewayProxyRequestEvent event,
+                                               Function<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> upgrade) {
+        String sub = JwtUtility.getSubFromRestEvent(event);
+        if (sub == null) {
+            return upgrade.apply(event);
+        }
+        String requestHash = sha256(sub + "\n" + (event.getBody() == null ? "" : event.getBody()));
+        String header = HttpBodies.header(event, HEADER);
+        String key = sub + "#" + (header == null ? "body:" + requestHash : "key:" + header);
+        long now = clock.getAsLong();
+
+        IdempotencyRecord cached = cache.get(key, now);
+        if (cached != null) {
+            return replay(cached, requestHash);
+        }
+        IdempotencyRecord existing;
+        try {
+            existing = store.claim(new IdempotencyRecord(key, IdempotencyRecord.IN_PROGRESS, requestHash, 0, null,
+                    now + inProgressSeconds), now);
+        } catch (Exception e) {
+            Logger.error(75, sub, "idempotency claim failed, running unguarded: " + e.getMessage());
+            return upgrade.apply(event);
+        }
+        if (existing != null) {
+            if (!existing.isCompleted()) {
+                return error(409, "an identical upgrade request is already in progress");
+            }
+            cache.put(existing);
+            return replay(existing, requestHash);
+        }
+
+        APIGatewayProxyResponseEvent response;
+        try {
+            response = upgrade.apply(event);
+        } catch (RuntimeException e) {
+            release(key, sub);
+            throw e;
+        }
+        if (response.getStatusCode() == null || response.getStatusCode() / 100 != 2) {
+            // failures are not remembered, so the client's retry runs for real
+            release(key, sub);
+            return response;
+        }
+        IdempotencyRecord completed = new IdempotencyRecord(key, IdempotencyRecord.COMPLETED, requestHash,
+                response.getStatusCode(), response.getBody(), now + ttlSeconds);
+        cache.put(completed);
+        try {
+            store.put(completed);
+        } catch (Exception e) {
+            Logger.error(104, sub, "idempotency record not saved: " + e.getMessage());
+        }
+        return response;
+    }
+
+    private void release(String key, String sub) {
+        try {
+            store.release(key);
+        } catch (Exception e) {
+            Logger.error(113, sub, "idempotency key not released: " + e.getMessage());
+        }
+    }
+
+    private APIGatewayProxyResponseEvent replay(IdempotencyRecord record, String requestHash) {
+        if (!record.getRequestHash().equals(requestHash)) {
+            return error(422, "Idempotency-Key was already used with a different request body");
+        }
+        return new APIGatewayProxyResponseEvent()
+                .withStatusCode(record.getStatusCode())
+                .withHeaders(Map.of("Content-Type", "application/json", "Idempotent-Replayed", "true"))
+                .withBody(record.getBody());
+    }
+
+    private APIGatewayProxyResponseEvent error(int status, String devMsg) {
+        String body;
+        try {
+            body = objectMapper.writeValueAsString(new ResponseMessage(status,
+                    "sorry, there was an error processing your request", devMsg));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+        return new APIGatewayProxyResponseEvent()
+                .withStatusCode(status)
+                .withHeaders(Map.of("Content-Type", "application/json"))
+                .withBody(body);
+    }
+
+    static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
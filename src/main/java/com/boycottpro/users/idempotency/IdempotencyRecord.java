@@ -0,0 +1,90 @@
+package com.boycottpro.users.idempotency;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// One idempotency table item. IN_PROGRESS claims a key while the first request runs;
+// COMPLETED holds the response that retries get back.
+public class IdempotencyRecord {
+
+    public static final String IN_PROGRESS = "IN_PROGRESS";
+    public static final String COMPLETED = "COMPLETED";
+
+    private final String key;
+    private final String status;
+    private final String requestHash;
+    private final int statusCode;
+    private final String body;
+    private final long expiresAt;
+
+    public IdempotencyRecord(String key, String status, String requestHash, int statusCode, String body,
+                             long expiresAt) {
+        this.key = key;
+        this.status = status;
+        this.requestHash = requestHash;
+        this.statusCode = statusCode;
+        this.body = body;
+        this.expiresAt = expiresAt;
+    }
+
+    public static IdempotencyRecord fromItem(Map<String, AttributeValue> item) {
+        AttributeValue statusCode = item.get("status_code");
+        AttributeValue body = item.get("response_body");
+        AttributeValue expiresAt = item.get("expires_at");
+        return new IdempotencyRecord(
+                item.get("idempotency_key").s(),
+                item.get("status").s(),
+                item.containsKey("request_hash") ? item.get("request_hash").s() : null,
+                statusCode == null ? 0 : Integer.parseInt(statusCode.n()),
+                body == null ? null : body.s(),
+                expiresAt == null ? 0 : Long.parseLong(expiresAt.n()));
+    }
+
+    public Map<String, AttributeValue> toItem() {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("idempotency_key", AttributeValue.fromS(key));
+        item.put("status", AttributeValue.fromS(status));
+        item.put("request_hash", AttributeValue.fromS(requestHash));
+        item.put("expires_at", AttributeValue.fromN(Long.toString(expiresAt)));
+        if (COMPLETED.equals(status)) {
+            item.put("status_code", AttributeValue.fromN(Integer.toString(statusCode)));
+            item.put("response_body", AttributeValue.fromS(body));
+        }
+        return item;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getRequestHash() {
+        return requestHash;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public boolean isCompleted() {
+        return COMPLETED.equals(status);
+    }
+
+    // TTL deletion can lag by days, so expiry is checked on read as well.
+    public boolean isExpired(long nowSeconds) {
+        return expiresAt <= nowSeconds;
+    }
+}
@@ -0,0 +1,95 @@
+package com.boycottpro.users.idempotency;
+
+import com.boycottpro.users.config.Settings;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
+
+import java.util.Map;
+
+// Idempotency records in DynamoDB. A conditional put claims a key for one request across
+// all containers; expires_at doubles as the table's TTL attribute.
+public class IdempotencyStore {
+
+    private final DynamoDbClient dynamoDb;
+    private final String tableName;
+
+    public IdempotencyStore(DynamoDbClient dynamoDb) {
+        this(dynamoDb, Settings.getString("IDEMPOTENCY_TABLE", "upgrade_idempotency"));
+    }
+
+    public IdempotencyStore(DynamoDbClient dynamoDb, String tableName) {
+        this.dynamoDb = dynamoDb;
+        this.tableName = tableName;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    // Returns null when the claim succeeded, otherwise the live record that holds the key.
+    public IdempotencyRecord claim(IdempotencyRecord inProgress, long nowSeconds) {
+        try {
+            dynamoDb.putItem(PutItemRequest.builder()
+                    .tableName(tableName)
+                    .item(inProgress.toItem())
+                    .conditionExpression("attribute_not_exists(idempotency_key)")
+                    .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+                    .build());
+            return null;
+        } catch (ConditionalCheckFailedException e) {
+            if (!e.hasItem() || e.item().isEmpty()) {
+                throw e;
+            }
+            IdempotencyRecord existing = IdempotencyRecord.fromItem(e.item());
+            if (!existing.isExpired(nowSeconds)) {
+                return existing;
+            }
+            // expired but not yet removed by TTL; only the container whose view of the old
+            // record is still current gets to replace it
+            return reclaim(inProgress, e.item());
+        }
+    }
+
+    private IdempotencyRecord reclaim(IdempotencyRecord inProgress, Map<String, AttributeValue> expired) {
+        PutItemRequest.Builder put = PutItemRequest.builder()
+                .tableName(tableName)
+                .item(inProgress.toItem())
+                .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD);
+        AttributeValue expiresAt = expired.get("expires_at");
+        if (expiresAt == null) {
+            put.conditionExpression("attribute_exists(idempotency_key) AND attribute_not_exists(expires_at)");
+        } else {
+            put.conditionExpression("expires_at = :expires")
+                    .expressionAttributeValues(Map.of(":expires", expiresAt));
+        }
+        try {
+            dynamoDb.putItem(put.build());
+            return null;
+        } catch (ConditionalCheckFailedException e) {
+            if (!e.hasItem() || e.item().isEmpty()) {
+                throw e;
+            }
+            // another container reclaimed it first
+            return IdempotencyRecord.fromItem(e.item());
+        }
+    }
+
+    public void put(IdempotencyRecord record) {
+        dynamoDb.putItem(PutItemRequest.builder()
+                .tableName(tableName)
+                .item(record.toItem())
+                .build());
+    }
+
+    // Frees the key so a retry can run the request again.
+    public void release(String key) {
+        dynamoDb.deleteItem(DeleteItemRequest.builder()
+                .tableName(tableName)
+                .key(Map.of("idempotency_key", AttributeValue.fromS(key)))
+                .build());
+    }
+}
@@ -0,0 +1,37 @@
+package com.boycottpro.users.idempotency;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Per-container LRU of completed responses, so a retry that lands on the same warm
+// container is answered without a DynamoDB round trip.
+public class ResponseCache {
+
+    private final Map<String, IdempotencyRecord> records;
+
+    public ResponseCache(int capacity) {
+        this.records = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, IdempotencyRecord> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public synchronized IdempotencyRecord get(String key, long nowSeconds) {
+        IdempotencyRecord record = records.get(key);
+        if (record != null && record.isExpired(nowSeconds)) {
+            records.remove(key);
+            return null;
+        }
+        return record;
+    }
+
+    public synchronized void put(IdempotencyRecord record) {
+        records.put(record.getKey(), record);
+    }
+
+    public synchronized int size() {
+        return records.size();
+    }
+}
@@ -0,0 +1,84 @@
+package com.boycottpro.users.mapping;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Collapses puts that target the same item, which DynamoDB rejects when they share a
+// BatchWriteItem or TransactWriteItems call. The entry with the newest timestamp wins;
+// on a tie, or when timestamps are missing, the one later in the form wins. Survivors
+// keep the position of the first entry for their key.
+public final class DuplicateCoalescer {
+
+    public static class Result {
+        private final Map<String, List<WriteRequest>> writesByTable;
+        private final int droppedDuplicates;
+
+        public Result(Map<String, List<WriteRequest>> writesByTable, int droppedDuplicates) {
+            this.writesByTable = writesByTable;
+            this.droppedDuplicates = droppedDuplicates;
+        }
+
+        public Map<String, List<WriteRequest>> getWritesByTable() {
+            return writesByTable;
+        }
+
+        public int getDroppedDuplicates() {
+            return droppedDuplicates;
+        }
+    }
+
+    private DuplicateCoalescer() {
+    }
+
+    public static Result coalesce(Map<String, List<WriteRequest>> writesByTable) {
+        Map<String, List<WriteRequest>> coalesced = new LinkedHashMap<>();
+        int dropped = 0;
+        for (Map.Entry<String, List<WriteRequest>> table : writesByTable.entrySet()) {
+            String sortKey = UserItems.SORT_KEYS.get(table.getKey());
+            Map<List<AttributeValue>, WriteRequest> byKey = new LinkedHashMap<>();
+            List<WriteRequest> passThrough = new ArrayList<>();
+            for (WriteRequest write : table.getValue()) {
+                if (sortKey == null || write.putRequest() == null) {
+                    passThrough.add(write);
+                    continue;
+                }
+                Map<String, AttributeValue> item = write.putRequest().item();
+                List<AttributeValue> key = List.of(item.get("user_id"), item.get(sortKey));
+                WriteRequest current = byKey.get(key);
+                if (current == null) {
+                    byKey.put(key, write);
+                    continue;
+                }
+                dropped++;
+                if (timestamp(item) >= timestamp(current.putRequest().item())) {
+                    byKey.put(key, write);
+                }
+            }
+            if (passThrough.isEmpty() && byKey.size() == table.getValue().size()) {
+                coalesced.put(table.getKey(), table.getValue());
+            } else {
+                List<WriteRequest> writes = new ArrayList<>(byKey.values());
+                writes.addAll(passThrough);
+                coalesced.put(table.getKey(), writes);
+            }
+        }
+        return new Result(coalesced, dropped);
+    }
+
+    private static long timestamp(Map<String, AttributeValue> item) {
+        AttributeValue timestamp = item.get("timestamp");
+        if (timestamp == null || timestamp.s() == null) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            return Long.parseLong(timestamp.s().trim());
+        } catch (NumberFormatException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.boycottpro.users.mapping;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.Map;
+
+// Converts one model class to and from its DynamoDB item. Implementations are stateless
+// and shared, in the spirit of a static TableSchema, so nothing is looked up reflectively.
+public interface ItemMapper<T> {
+
+    Map<String, AttributeValue> toItem(T value);
+
+    // Attributes missing from the item come back as null (or false/0 for primitives).
+    T fromItem(Map<String, AttributeValue> item);
+}
@@ -0,0 +1,104 @@
+package com.boycottpro.users.mapping;
+
+import com.boycottpro.models.UserBoycotts;
+import com.boycottpro.models.UserCauses;
+import com.boycottpro.models.Users;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.Map;
+
+// Hand-written mappers for the common models, written out the way a generated static
+// TableSchema would be: one field at a time, no bean introspection, and null-safe in both
+// directions for optional attributes. A missing key attribute is rejected when building an
+// item instead of by DynamoDB at write time. Boycott and cause items go through UserItems
+// so they keep the same layout as the items the streaming decoder builds.
+public final class ItemMappers {
+
+    public static final ItemMapper<UserBoycotts> USER_BOYCOTTS = new ItemMapper<>() {
+        @Override
+        public Map<String, AttributeValue> toItem(UserBoycotts boycott) {
+            requireKey("user_id", boycott.getUser_id());
+            requireKey("company_id", boycott.getCompany_id());
+            String companyCauseId = boycott.getCompany_cause_id() != null ? boycott.getCompany_cause_id()
+                    : UserItems.companyCauseId(boycott.getCompany_id(), boycott.getCause_id(),
+                    boycott.getPersonal_reason());
+            return UserItems.boycottItem(boycott.getUser_id(), boycott.getCompany_id(), boycott.getCompany_name(),
+                    boycott.getCause_id(), boycott.getCause_desc(), boycott.getPersonal_reason(),
+                    boycott.getTimestamp(), companyCauseId);
+        }
+
+        @Override
+        public UserBoycotts fromItem(Map<String, AttributeValue> item) {
+            return new UserBoycotts(string(item, "user_id"), string(item, "company_id"),
+                    string(item, "company_name"), string(item, "cause_id"), string(item, "cause_desc"),
+                    string(item, "company_cause_id"), string(item, "personal_reason"), string(item, "timestamp"));
+        }
+    };
+
+    public static final ItemMapper<UserCauses> USER_CAUSES = new ItemMapper<>() {
+        @Override
+        public Map<String, AttributeValue> toItem(UserCauses cause) {
+            requireKey("user_id", cause.getUser_id());
+            requireKey("cause_id", cause.getCause_id());
+            return UserItems.causeItem(cause.getUser_id(), cause.getCause_id(), cause.getCause_desc(),
+                    cause.getTimestamp());
+        }
+
+        @Override
+        public UserCauses fromItem(Map<String, AttributeValue> item) {
+            return new UserCauses(string(item, "user_id"), string(item, "cause_id"), string(item, "cause_desc"),
+                    string(item, "timestamp"));
+        }
+    };
+
+    public static final ItemMapper<Users> USERS = new ItemMapper<>() {
+        @Override
+        public Map<String, AttributeValue> toItem(Users user) {
+            Map<String, AttributeValue> item = UserItems.sized(6);
+            item.put("user_id", AttributeValue.fromS(requireKey("user_id", user.getUser_id())));
+            putString(item, "email_addr", user.getEmail_addr());
+            putString(item, "username", user.getUsername());
+            putString(item, "password_hash", user.getPassword_hash());
+            item.put("created_ts", AttributeValue.fromN(Long.toString(user.getCreated_ts())));
+            item.put("paying_user", AttributeValue.fromBool(user.isPaying_user()));
+            return item;
+        }
+
+        @Override
+        public Users fromItem(Map<String, AttributeValue> item) {
+            Users user = new Users();
+            user.setUser_id(string(item, "user_id"));
+            user.setEmail_addr(string(item, "email_addr"));
+            user.setUsername(string(item, "username"));
+            user.setPassword_hash(string(item, "password_hash"));
+            AttributeValue created = item.get("created_ts");
+            if (created != null && created.n() != null) {
+                user.setCreated_ts(Long.parseLong(created.n()));
+            }
+            AttributeValue paying = item.get("paying_user");
+            user.setPaying_user(paying != null && Boolean.TRUE.equals(paying.bool()));
+            return user;
+        }
+    };
+
+    private ItemMappers() {
+    }
+
+    private static String requireKey(String name, String value) {
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException(name + " is required to build an item");
+        }
+        return value;
+    }
+
+    private static String string(Map<String, AttributeValue> item, String name) {
+        AttributeValue value = item.get(name);
+        return value == null ? null : value.s();
+    }
+
+    private static void putString(Map<String, AttributeValue> item, String name, String value) {
+        if (value != null) {
+            item.put(name, AttributeValue.fromS(value));
+        }
+    }
+}
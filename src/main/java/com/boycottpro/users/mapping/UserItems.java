@@ -0,0 +1,93 @@
+package com.boycottpro.users.mapping;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Item layout of user_boycotts and user_causes, kept in one place so every write
+// path produces exactly the same attributes.
+public final class UserItems {
+
+    // Sort key of each table whose items belong to a user_id partition.
+    public static final Map<String, String> SORT_KEYS = Map.of(
+            "user_boycotts", "company_cause_id",
+            "user_causes", "cause_id");
+
+    // Most attributes an item of each table can carry.
+    static final int BOYCOTT_ATTRIBUTES = 8;
+    static final int CAUSE_ATTRIBUTES = 4;
+
+    private UserItems() {
+    }
+
+    // A personal reason replaces the cause in the sort key.
+    public static String companyCauseId(String companyId, String causeId, String personalReason) {
+        if (personalReason != null && !personalReason.isEmpty()) {
+            return personalReason + "#" + companyId;
+        }
+        return companyId + "#" + causeId;
+    }
+
+    public static Map<String, AttributeValue> boycottItem(String userId, String companyId, String companyName,
+                                                          String causeId, String causeDesc,
+                                                          String personalReason, String timestamp) {
+        return boycottItem(userId, companyId, companyName, causeId, causeDesc, personalReason, timestamp,
+                companyCauseId(companyId, causeId, personalReason));
+    }
+
+    // For callers that already hold the derived sort key.
+    public static Map<String, AttributeValue> boycottItem(String userId, String companyId, String companyName,
+                                                          String causeId, String causeDesc,
+                                                          String personalReason, String timestamp,
+                                                          String companyCauseId) {
+        Map<String, AttributeValue> item = sized(BOYCOTT_ATTRIBUTES);
+        item.put("user_id", AttributeValue.fromS(userId));
+        item.put("company_id", AttributeValue.fromS(companyId));
+        if (causeId != null) {
+            item.put("cause_id", AttributeValue.fromS(causeId));
+        }
+        item.put("company_cause_id", AttributeValue.fromS(companyCauseId));
+        if (companyName != null) {
+            item.put("company_name", AttributeValue.fromS(companyName));
+        }
+        if (causeDesc != null) {
+            item.put("cause_desc", AttributeValue.fromS(causeDesc));
+        }
+        if (personalReason != null) {
+            item.put("personal_reason", AttributeValue.fromS(personalReason));
+        }
+        if (timestamp != null) {
+            item.put("timestamp", AttributeValue.fromS(timestamp));
+        }
+        return item;
+    }
+
+    public static Map<String, AttributeValue> causeItem(String userId, String causeId, String causeDesc,
+                                                        String timestamp) {
+        Map<String, AttributeValue> item = sized(CAUSE_ATTRIBUTES);
+        item.put("user_id", AttributeValue.fromS(userId));
+        item.put("cause_id", AttributeValue.fromS(causeId));
+        if (causeDesc != null) {
+            item.put("cause_desc", AttributeValue.fromS(causeDesc));
+        }
+        if (timestamp != null) {
+            item.put("timestamp", AttributeValue.fromS(timestamp));
+        }
+        return item;
+    }
+
+    // A HashMap that holds the given number of attributes without resizing; the default
+    // 16 buckets is twice what a cause item needs.
+    static <V> Map<String, V> sized(int attributes) {
+        return new HashMap<>((int) Math.ceil(attributes / 0.75));
+    }
+
+    public static WriteRequest put(Map<String, AttributeValue> item) {
+        return WriteRequest.builder()
+                .putRequest(PutRequest.builder().item(item).build())
+                .build();
+    }
+}
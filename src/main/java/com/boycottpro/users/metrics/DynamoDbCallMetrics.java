@@ -0,0 +1,112 @@
+package com.boycottpro.users.metrics;
+
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.SdkResponse;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.List;
+
+// SDK interceptor on the handler's DynamoDB clients. It asks every call for
+// ReturnConsumedCapacity=TOTAL and records the call's latency and consumed capacity
+// into the RequestMetrics bound for the current invocation. A Lambda container runs one
+// invocation at a time, so a single bound instance also covers async write callbacks.
+public class DynamoDbCallMetrics implements ExecutionInterceptor {
+
+    private static final ExecutionAttribute<Long> START = new ExecutionAttribute<>("UpgradeMetricsStart");
+
+    private volatile RequestMetrics current = RequestMetrics.disabled();
+
+    public void bind(RequestMetrics metrics) {
+        current = metrics;
+    }
+
+    public void unbind() {
+        current = RequestMetrics.disabled();
+    }
+
+    @Override
+    public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes attributes) {
+        attributes.putAttribute(START, System.nanoTime());
+    }
+
+    @Override
+    public SdkRequest modifyRequest(Context.ModifyRequest context, ExecutionAttributes attributes) {
+        SdkRequest request = context.request();
+        if (!current.isEnabled()) {
+            return request;
+        }
+        if (request instanceof UpdateItemRequest) {
+            return ((UpdateItemRequest) request).toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        }
+        if (request instanceof PutItemRequest) {
+            return ((PutItemRequest) request).toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        }
+        if (request instanceof DeleteItemRequest) {
+            return ((DeleteItemRequest) request).toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        }
+        if (request instanceof GetItemRequest) {
+            return ((GetItemRequest) request).toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        }
+        if (request instanceof QueryRequest) {
+            return ((QueryRequest) request).toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        }
+        if (request instanceof BatchWriteItemRequest) {
+            return ((BatchWriteItemRequest) request).toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        }
+        if (request instanceof BatchGetItemRequest) {
+            return ((BatchGetItemRequest) request).toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        }
+        if (request instanceof TransactWriteItemsRequest) {
+            return ((TransactWriteItemsRequest) request).toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        }
+        return request;
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes attributes) {
+        RequestMetrics metrics = current;
+        if (!metrics.isEnabled()) {
+            return;
+        }
+        String operation = attributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+        metrics.timeSince(operation + "Millis", attributes.getAttribute(START));
+        record(metrics, context.response());
+    }
+
+    @Override
+    public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes attributes) {
+        RequestMetrics metrics = current;
+        Long start = attributes.getAttribute(START);
+        if (!metrics.isEnabled() || start == null) {
+            return;
+        }
+        String operation = attributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+        metrics.timeSince(operation + "Millis", start);
+        metrics.count(operation + "Errors", 1);
+    }
+
+    // Single-item calls return one ConsumedCapacity, batch and transact calls a list.
+    static void record(RequestMetrics metrics, SdkResponse response) {
+        Object consumed = response.getValueForField("ConsumedCapacity", Object.class).orElse(null);
+        if (consumed instanceof ConsumedCapacity) {
+            record(metrics, (ConsumedCapacity) consumed);
+        } else if (consumed instanceof List) {
+            for (Object capacity : (List<?>) consumed) {
+                if (capacity instanceof ConsumedCapacity) {
+                    record(metrics, (ConsumedCapacity) capacity);
+                }
+            }
+        }
+    }
+
+    private static void record(RequestMetrics metrics, ConsumedCapacity capacity) {
+        if (capacity.capacityUnits() != null) {
+            metrics.count("ConsumedCapacity." + capacity.tableName(), capacity.capacityUnits());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.boycottpro.users.metrics;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Metrics gathered while one request runs, printed as a single CloudWatch Embedded
+// Metric Format line when it finishes. Recording is a map update; the JSON is built once,
+// by hand, at the end. Async write callbacks record from other threads, hence the locking.
+public class RequestMetrics {
+
+    public static final String MILLISECONDS = "Milliseconds";
+    public static final String COUNT = "Count";
+
+    // EMF accepts at most 100 values per metric in one line.
+    private static final int MAX_VALUES = 100;
+
+    private static final RequestMetrics DISABLED = new RequestMetrics(false);
+
+    private static class Metric {
+        final String unit;
+        final List<Double> values = new ArrayList<>(1);
+
+        Metric(String unit) {
+            this.unit = unit;
+        }
+    }
+
+    private final boolean enabled;
+    private final Map<String, Metric> metrics = new LinkedHashMap<>();
+
+    public RequestMetrics() {
+        this(true);
+    }
+
+    private RequestMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public static RequestMetrics disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void timeSince(String name, long startNanos) {
+        if (enabled) {
+            put(name, MILLISECONDS, (System.nanoTime() - startNanos) / 1_000_000.0);
+        }
+    }
+
+    public void millis(String name, double millis) {
+        if (enabled) {
+            put(name, MILLISECONDS, millis);
+        }
+    }
+
+    public void count(String name, double value) {
+        if (enabled) {
+            put(name, COUNT, value);
+        }
+    }
+
+    private synchronized void put(String name, String unit, double value) {
+        Metric metric = metrics.computeIfAbsent(name, n -> new Metric(unit));
+        if (metric.values.size() < MAX_VALUES) {
+            metric.values.add(value);
+        }
+    }
+
+    public synchronized List<Double> values(String name) {
+        Metric metric = metrics.get(name);
+        return metric == null ? List.of() : new ArrayList<>(metric.values);
+    }
+
+    public void emit(PrintStream out, String namespace, String status) {
+        if (enabled) {
+            out.println(toEmf(namespace, status, System.currentTimeMillis()));
+        }
+    }
+
+    public synchronized String toEmf(String namespace, String status, long timestampMillis) {
+        StringBuilder definitions = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+            String name = escape(entry.getKey());
+            Metric metric = entry.getValue();
+            if (definitions.length() > 0) {
+                definitions.append(',');
+            }
+            definitions.append("{\"Name\":\"").append(name).append("\",\"Unit\":\"").append(metric.unit).append("\"}");
+            values.append(",\"").append(name).append("\":");
+            if (metric.values.size() == 1) {
+                values.append(metric.values.get(0));
+            } else {
+                values.append('[');
+                for (int i = 0; i < metric.values.size(); i++) {
+                    if (i > 0) {
+                        values.append(',');
+                    }
+                    values.append(metric.values.get(i));
+                }
+                values.append(']');
+            }
+        }
+        return "{\"_aws\":{\"Timestamp\":" + timestampMillis
+                + ",\"CloudWatchMetrics\":[{\"Namespace\":\"" + escape(namespace)
+                + "\",\"Dimensions\":[[\"Status\"]],\"Metrics\":[" + definitions + "]}]}"
+                + ",\"Status\":\"" + escape(status) + "\"" + values + "}";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,31 @@
+package com.boycottpro.users.outbox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Keeps encoded messages in the container, for local runs and tests. Messages go through
+// OutboxCodec just as they would on SQS, so the drain side sees the same bodies.
+public class InMemoryOutbox implements WriteOutbox {
+
+    private final ConcurrentLinkedQueue<String> bodies = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void publish(OutboxMessage message) {
+        bodies.add(OutboxCodec.encode(message));
+    }
+
+    // Removes and returns everything published so far.
+    public List<String> take() {
+        List<String> taken = new ArrayList<>();
+        String body;
+        while ((body = bodies.poll()) != null) {
+            taken.add(body);
+        }
+        return taken;
+    }
+
+    public int size() {
+        return bodies.size();
+    }
+}
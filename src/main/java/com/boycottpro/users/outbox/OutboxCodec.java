@@ -0,0 +1,195 @@
+package com.boycottpro.users.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.DeleteRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Message body for an OutboxMessage. Items are in DynamoDB JSON ({"S": ...}, {"N": ...})
+// so they come back as the exact AttributeValues that were built:
+// {"user_id":"...","writes":{"user_boycotts":[{"put":{...}},{"delete":{...}}]}}
+public final class OutboxCodec {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private OutboxCodec() {
+    }
+
+    public static String encode(OutboxMessage message) {
+        ObjectNode root = objectMapper.createObjectNode();
+        root.put("user_id", message.getUserId());
+        ObjectNode writes = root.putObject("writes");
+        for (Map.Entry<String, List<WriteRequest>> table : message.getWritesByTable().entrySet()) {
+            ArrayNode requests = writes.putArray(table.getKey());
+            for (WriteRequest write : table.getValue()) {
+                ObjectNode request = requests.addObject();
+                if (write.putRequest() != null) {
+                    request.set("put", item(write.putRequest().item()));
+                } else if (write.deleteRequest() != null) {
+                    request.set("delete", item(write.deleteRequest().key()));
+                }
+            }
+        }
+        try {
+            return objectMapper.writeValueAsString(root);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static OutboxMessage decode(String body) throws JsonProcessingException {
+        JsonNode root = objectMapper.readTree(body);
+        if (root == null || !root.path("user_id").isTextual() || !root.path("writes").isObject()) {
+            throw new IllegalArgumentException("not an outbox message");
+        }
+        Map<String, List<WriteRequest>> writesByTable = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> tables = root.get("writes").fields();
+        while (tables.hasNext()) {
+            Map.Entry<String, JsonNode> table = tables.next();
+            List<WriteRequest> writes = new ArrayList<>();
+            for (JsonNode request : table.getValue()) {
+                if (request.has("put")) {
+                    writes.add(WriteRequest.builder()
+                            .putRequest(PutRequest.builder().item(item(request.get("put"))).build())
+                            .build());
+                } else if (request.has("delete")) {
+                    writes.add(WriteRequest.builder()
+                            .deleteRequest(DeleteRequest.builder().key(item(request.get("delete"))).build())
+                            .build());
+                } else {
+                    throw new IllegalArgumentException("write for " + table.getKey() + " is neither put nor delete");
+                }
+            }
+            writesByTable.put(table.getKey(), writes);
+        }
+        return new OutboxMessage(root.get("user_id").asText(), writesByTable);
+    }
+
+    private static ObjectNode item(Map<String, AttributeValue> item) {
+        ObjectNode node = objectMapper.createObjectNode();
+        for (Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+            node.set(attribute.getKey(), value(attribute.getValue()));
+        }
+        return node;
+    }
+
+    private static ObjectNode value(AttributeValue value) {
+        ObjectNode node = objectMapper.createObjectNode();
+        switch (value.type()) {
+            case S:
+                node.put("S", value.s());
+                break;
+            case N:
+                node.put("N", value.n());
+                break;
+            case B:
+                node.put("B", Base64.getEncoder().encodeToString(value.b().asByteArray()));
+                break;
+            case BOOL:
+                node.put("BOOL", value.bool());
+                break;
+            case NUL:
+                node.put("NULL", true);
+                break;
+            case SS:
+                value.ss().forEach(node.putArray("SS")::add);
+                break;
+            case NS:
+                value.ns().forEach(node.putArray("NS")::add);
+                break;
+            case BS: {
+                ArrayNode array = node.putArray("BS");
+                for (SdkBytes b : value.bs()) {
+                    array.add(Base64.getEncoder().encodeToString(b.asByteArray()));
+                }
+                break;
+            }
+            case L: {
+                ArrayNode array = node.putArray("L");
+                for (AttributeValue element : value.l()) {
+                    array.add(value(element));
+                }
+                break;
+            }
+            case M:
+                node.set("M", item(value.m()));
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported attribute type: " + value.type());
+        }
+        return node;
+    }
+
+    private static Map<String, AttributeValue> item(JsonNode node) {
+        Map<String, AttributeValue> item = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> attributes = node.fields();
+        while (attributes.hasNext()) {
+            Map.Entry<String, JsonNode> attribute = attributes.next();
+            item.put(attribute.getKey(), value(attribute.getValue()));
+        }
+        return item;
+    }
+
+    private static AttributeValue value(JsonNode node) {
+        if (!node.isObject() || node.size() != 1) {
+            throw new IllegalArgumentException("attribute value must have exactly one type: " + node);
+        }
+        Map.Entry<String, JsonNode> typed = node.fields().next();
+        JsonNode v = typed.getValue();
+        switch (typed.getKey()) {
+            case "S":
+                return AttributeValue.fromS(v.asText());
+            case "N":
+                return AttributeValue.fromN(v.asText());
+            case "B":
+                return AttributeValue.fromB(SdkBytes.fromByteArray(Base64.getDecoder().decode(v.asText())));
+            case "BOOL":
+                return AttributeValue.fromBool(v.asBoolean());
+            case "NULL":
+                return AttributeValue.fromNul(true);
+            case "SS":
+                return AttributeValue.fromSs(strings(v));
+            case "NS":
+                return AttributeValue.fromNs(strings(v));
+            case "BS": {
+                List<SdkBytes> bytes = new ArrayList<>();
+                for (String s : strings(v)) {
+                    bytes.add(SdkBytes.fromByteArray(Base64.getDecoder().decode(s)));
+                }
+                return AttributeValue.fromBs(bytes);
+            }
+            case "L": {
+                List<AttributeValue> list = new ArrayList<>();
+                for (JsonNode element : v) {
+                    list.add(value(element));
+                }
+                return AttributeValue.fromL(list);
+            }
+            case "M":
+                return AttributeValue.fromM(item(v));
+            default:
+                throw new IllegalArgumentException("unsupported attribute type: " + typed.getKey());
+        }
+    }
+
+    private static List<String> strings(JsonNode array) {
+        List<String> strings = new ArrayList<>();
+        for (JsonNode element : array) {
+            strings.add(element.asText());
+        }
+        return strings;
+    }
+}
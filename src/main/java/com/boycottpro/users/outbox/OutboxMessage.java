@@ -0,0 +1,34 @@
+package com.boycottpro.users.outbox;
+
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.List;
+import java.util.Map;
+
+// The user_boycotts and user_causes writes of one upgrade, handed off after paying_user is set.
+public class OutboxMessage {
+
+    private final String userId;
+    private final Map<String, List<WriteRequest>> writesByTable;
+
+    public OutboxMessage(String userId, Map<String, List<WriteRequest>> writesByTable) {
+        this.userId = userId;
+        this.writesByTable = writesByTable;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public Map<String, List<WriteRequest>> getWritesByTable() {
+        return writesByTable;
+    }
+
+    public int getItemCount() {
+        int count = 0;
+        for (List<WriteRequest> writes : writesByTable.values()) {
+            count += writes.size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,152 @@
+package com.boycottpro.users.outbox;
+
+import com.boycottpro.users.config.Settings;
+import com.boycottpro.users.dynamo.BatchPacker;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Publishes deferred writes to the OUTBOX_QUEUE_URL queue. Each message holds one
+// BatchWriteItem's worth (at most 25 writes), so the drain side writes a message with a
+// single request; messages over the SQS size limit are halved until they fit. Up to ten
+// messages go out per SendMessageBatch call.
+// The queue has to be FIFO: messages are grouped by user, so one user's publishes drain in
+// the order they were sent and an older list can't overwrite a newer one.
+public class SqsOutbox implements WriteOutbox {
+
+    static final int MAX_MESSAGE_BYTES = 256 * 1024;
+    static final int MAX_BATCH_ENTRIES = 10;
+    static final int MAX_SEND_ATTEMPTS = 3;
+
+    private final SqsClient sqs;
+    private final String queueUrl;
+    private final BatchPacker packer = new BatchPacker();
+
+    public SqsOutbox(SqsClient sqs, String queueUrl) {
+        if (!queueUrl.endsWith(".fifo")) {
+            throw new IllegalArgumentException("the outbox queue must be a FIFO queue: " + queueUrl);
+        }
+        this.sqs = sqs;
+        this.queueUrl = queueUrl;
+    }
+
+    public static SqsOutbox fromEnvironment() {
+        String queueUrl = Settings.getString("OUTBOX_QUEUE_URL", null);
+        if (queueUrl == null) {
+            throw new IllegalStateException("DEFERRED_WRITES needs OUTBOX_QUEUE_URL");
+        }
+        return new SqsOutbox(SqsClient.builder().httpClient(UrlConnectionHttpClient.create()).build(), queueUrl);
+    }
+
+    @Override
+    public void publish(OutboxMessage message) {
+        List<String> bodies = new ArrayList<>();
+        for (Map<String, List<WriteRequest>> batch : packer.pack(message.getWritesByTable())) {
+            encode(message.getUserId(), batch, bodies);
+        }
+        // deduplication ids are stable across resends, so an entry SQS accepted but didn't
+        // acknowledge isn't queued twice
+        String publishId = UUID.randomUUID().toString();
+        List<SendMessageBatchRequestEntry> entries = new ArrayList<>();
+        int batchBytes = 0;
+        for (int i = 0; i < bodies.size(); i++) {
+            String body = bodies.get(i);
+            int bytes = body.getBytes(StandardCharsets.UTF_8).length;
+            // the batch as a whole is held to the same size limit as one message
+            if (entries.size() == MAX_BATCH_ENTRIES || batchBytes + bytes > MAX_MESSAGE_BYTES) {
+                send(entries);
+                entries = new ArrayList<>();
+                batchBytes = 0;
+            }
+            entries.add(SendMessageBatchRequestEntry.builder()
+                    .id(String.valueOf(entries.size()))
+                    .messageBody(body)
+                    .messageGroupId(message.getUserId())
+                    .messageDeduplicationId(publishId + "-" + i)
+                    .build());
+            batchBytes += bytes;
+        }
+        if (!entries.isEmpty()) {
+            send(entries);
+        }
+    }
+
+    private void encode(String userId, Map<String, List<WriteRequest>> batch, List<String> bodies) {
+        String body = OutboxCodec.encode(new OutboxMessage(userId, batch));
+        int bytes = body.getBytes(StandardCharsets.UTF_8).length;
+        if (bytes <= MAX_MESSAGE_BYTES) {
+            bodies.add(body);
+            return;
+        }
+        List<Map.Entry<String, WriteRequest>> writes = new ArrayList<>();
+        for (Map.Entry<String, List<WriteRequest>> table : batch.entrySet()) {
+            for (WriteRequest write : table.getValue()) {
+                writes.add(Map.entry(table.getKey(), write));
+            }
+        }
+        if (writes.size() == 1) {
+            throw new IllegalArgumentException("a single " + writes.get(0).getKey() + " write encodes to "
+                    + bytes + " bytes, over the " + MAX_MESSAGE_BYTES + " byte SQS limit");
+        }
+        int half = writes.size() / 2;
+        encode(userId, group(writes.subList(0, half)), bodies);
+        encode(userId, group(writes.subList(half, writes.size())), bodies);
+    }
+
+    private static Map<String, List<WriteRequest>> group(List<Map.Entry<String, WriteRequest>> writes) {
+        Map<String, List<WriteRequest>> grouped = new LinkedHashMap<>();
+        for (Map.Entry<String, WriteRequest> write : writes) {
+            grouped.computeIfAbsent(write.getKey(), t -> new ArrayList<>()).add(write.getValue());
+        }
+        return grouped;
+    }
+
+    // Resends only the entries SQS reported as failed. Entries of one publish write distinct
+    // items, so a resent entry landing after its neighbours doesn't change the outcome.
+    private void send(List<SendMessageBatchRequestEntry> entries) {
+        List<SendMessageBatchRequestEntry> pending = entries;
+        List<String> failures = new ArrayList<>();
+        for (int attempt = 0; attempt < MAX_SEND_ATTEMPTS && !pending.isEmpty(); attempt++) {
+            SendMessageBatchResponse response;
+            try {
+                response = sqs.sendMessageBatch(SendMessageBatchRequest.builder()
+                        .queueUrl(queueUrl)
+                        .entries(pending)
+                        .build());
+            } catch (SdkException e) {
+                failures = List.of(e.getMessage());
+                continue;
+            }
+            if (!response.hasFailed() || response.failed().isEmpty()) {
+                return;
+            }
+            Map<String, SendMessageBatchRequestEntry> byId = new LinkedHashMap<>();
+            for (SendMessageBatchRequestEntry entry : pending) {
+                byId.put(entry.id(), entry);
+            }
+            List<SendMessageBatchRequestEntry> failed = new ArrayList<>();
+            failures = new ArrayList<>();
+            for (BatchResultErrorEntry error : response.failed()) {
+                failed.add(byId.get(error.id()));
+                failures.add(error.id() + ":" + error.code());
+            }
+            pending = failed;
+        }
+        if (!pending.isEmpty()) {
+            throw new IllegalStateException("outbox send failed for " + pending.size() + " of "
+                    + entries.size() + " messages after " + MAX_SEND_ATTEMPTS + " attempts: " + failures);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.boycottpro.users.outbox;
+
+// Where deferred writes go. publish returns once the message is durable enough for the
+// caller to answer 202; it throws if it isn't. Some messages may already be queued by then,
+// so the caller answers 503 rather than writing the same lists synchronously.
+public interface WriteOutbox {
+
+    void publish(OutboxMessage message);
+}
@@ -0,0 +1,124 @@
+package com.boycottpro.users.pages;
+
+import com.boycottpro.users.mapping.UserItems;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Page payload: a gzipped JSON array with one positional array per boycott,
+// [company_id, company_name, cause_id, cause_desc, personal_reason, timestamp, company_cause_id],
+// nulls included. user_id lives on the page item, so decoding rebuilds the same items
+// UserItems.boycottItem builds for user_boycotts.
+public final class BoycottPageCodec {
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    private static final String[] FIELDS = {"company_id", "company_name", "cause_id", "cause_desc",
+            "personal_reason", "timestamp", "company_cause_id"};
+
+    // Raw JSON bytes per compressed byte assumed when filling a page; a page that still
+    // compresses past the cap is split in two.
+    private static final int ASSUMED_RATIO = 4;
+
+    private BoycottPageCodec() {
+    }
+
+    public static byte[] encode(List<Map<String, AttributeValue>> boycotts) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JsonGenerator generator = jsonFactory.createGenerator(new GZIPOutputStream(bytes))) {
+            generator.writeStartArray();
+            for (Map<String, AttributeValue> boycott : boycotts) {
+                generator.writeStartArray();
+                for (String field : FIELDS) {
+                    AttributeValue value = boycott.get(field);
+                    if (value == null || value.s() == null) {
+                        generator.writeNull();
+                    } else {
+                        generator.writeString(value.s());
+                    }
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static List<Map<String, AttributeValue>> decode(String userId, byte[] page) {
+        List<Map<String, AttributeValue>> boycotts = new ArrayList<>();
+        try (JsonParser parser = jsonFactory.createParser(new GZIPInputStream(new ByteArrayInputStream(page)))) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("boycott page is not a JSON array");
+            }
+            String[] values = new String[FIELDS.length];
+            while (parser.nextToken() == JsonToken.START_ARRAY) {
+                int field = 0;
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (field < values.length) {
+                        values[field] = parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getText();
+                    }
+                    field++;
+                }
+                boycotts.add(UserItems.boycottItem(userId, values[0], values[1], values[2], values[3], values[4],
+                        values[5], values[6]));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return boycotts;
+    }
+
+    // Splits the boycotts into encoded pages of at most maxPageBytes each.
+    public static List<byte[]> paginate(List<Map<String, AttributeValue>> boycotts, int maxPageBytes) {
+        List<byte[]> pages = new ArrayList<>();
+        long rawBudget = (long) maxPageBytes * ASSUMED_RATIO;
+        int from = 0;
+        long raw = 0;
+        for (int i = 0; i < boycotts.size(); i++) {
+            long size = rawSize(boycotts.get(i));
+            if (i > from && raw + size > rawBudget) {
+                addPages(boycotts.subList(from, i), maxPageBytes, pages);
+                from = i;
+                raw = 0;
+            }
+            raw += size;
+        }
+        if (from < boycotts.size() || pages.isEmpty()) {
+            addPages(boycotts.subList(from, boycotts.size()), maxPageBytes, pages);
+        }
+        return pages;
+    }
+
+    private static void addPages(List<Map<String, AttributeValue>> boycotts, int maxPageBytes, List<byte[]> pages) {
+        byte[] page = encode(boycotts);
+        if (page.length <= maxPageBytes || boycotts.size() < 2) {
+            pages.add(page);
+            return;
+        }
+        int half = boycotts.size() / 2;
+        addPages(boycotts.subList(0, half), maxPageBytes, pages);
+        addPages(boycotts.subList(half, boycotts.size()), maxPageBytes, pages);
+    }
+
+    private static long rawSize(Map<String, AttributeValue> boycott) {
+        long size = 2;
+        for (String field : FIELDS) {
+            AttributeValue value = boycott.get(field);
+            size += value == null || value.s() == null ? 5 : value.s().length() + 3;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,298 @@
+package com.boycottpro.users.pages;
+
+import com.boycottpro.users.config.Settings;
+import com.boycottpro.users.dynamo.BatchWriteResult;
+import com.boycottpro.users.dynamo.BatchWriter;
+import com.boycottpro.users.dynamo.RetryPolicy;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DeleteRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Paged layout for large boycott lists: a user's boycotts are packed into a few gzipped
+// page items in user_boycott_pages (user_id, page), next to an "index" item naming the
+// current page set. A write puts the new pages first, then swaps the index with a
+// version check, then deletes the previous pages, so readers always see one whole list.
+// 2,000 boycotts fit in one or two pages instead of 2,000 items over 80 BatchWriteItem calls.
+public class BoycottPages {
+
+    static final int MAX_ATTEMPTS = 4;
+    static final int MAX_KEYS_PER_GET = 100;
+
+    public static class Written {
+
+        public enum Status { COMMITTED, CONFLICT, INCOMPLETE }
+
+        private final Status status;
+        private final PageIndex index;
+        private final long pageBytes;
+        private final BatchWriteResult batchResult;
+
+        Written(Status status, PageIndex index, long pageBytes, BatchWriteResult batchResult) {
+            this.status = status;
+            this.index = index;
+            this.pageBytes = pageBytes;
+            this.batchResult = batchResult;
+        }
+
+        // CONFLICT: another write swapped the index first. INCOMPLETE: pages were still
+        // unprocessed when the retry budget ran out. Either way the old list is untouched.
+        public Status getStatus() {
+            return status;
+        }
+
+        public PageIndex getIndex() {
+            return index;
+        }
+
+        public long getPageBytes() {
+            return pageBytes;
+        }
+
+        public BatchWriteResult getBatchResult() {
+            return batchResult;
+        }
+    }
+
+    public static class Snapshot {
+
+        private final PageIndex index;
+        private final Map<AttributeValue, Map<String, AttributeValue>> boycotts;
+
+        Snapshot(PageIndex index, Map<AttributeValue, Map<String, AttributeValue>> boycotts) {
+            this.index = index;
+            this.boycotts = boycotts;
+        }
+
+        // The index the boycotts were read under; pass it to write as current.
+        public PageIndex getIndex() {
+            return index;
+        }
+
+        public Map<AttributeValue, Map<String, AttributeValue>> getBoycotts() {
+            return boycotts;
+        }
+    }
+
+    private final DynamoDbClient dynamoDb;
+    private final BatchWriter batchWriter;
+    private final RetryPolicy retryPolicy;
+    private final String tableName;
+    private final int maxPageBytes;
+
+    public BoycottPages(DynamoDbClient dynamoDb) {
+        this(dynamoDb, new BatchWriter(dynamoDb), RetryPolicy.fromEnvironment(),
+                Settings.getString("BOYCOTT_PAGES_TABLE", "user_boycott_pages"),
+                Settings.getInt("BOYCOTT_PAGE_MAX_BYTES", 300_000));
+    }
+
+    public BoycottPages(DynamoDbClient dynamoDb, BatchWriter batchWriter, RetryPolicy retryPolicy, String tableName,
+                        int maxPageBytes) {
+        if (maxPageBytes < 1024 || maxPageBytes > 380 * 1024) {
+            throw new IllegalArgumentException("maxPageBytes must be between 1 KB and 380 KB: " + maxPageBytes);
+        }
+        this.dynamoDb = dynamoDb;
+        this.batchWriter = batchWriter;
+        this.retryPolicy = retryPolicy;
+        this.tableName = tableName;
+        this.maxPageBytes = maxPageBytes;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    // The user's page index, or null when their boycotts are stored as user_boycotts items.
+    public PageIndex index(String userId) {
+        Map<String, AttributeValue> item = dynamoDb.getItem(GetItemRequest.builder()
+                .tableName(tableName)
+                .key(key(userId, PageIndex.INDEX_KEY))
+                .consistentRead(true)
+                .build()).item();
+        return item == null || item.isEmpty() ? null : PageIndex.fromItem(item);
+    }
+
+    // The user's current list, or null when they aren't paged. A concurrent write deletes the
+    // old pages right after swapping the index, so a missing page means the index moved on:
+    // it is read again once before giving up.
+    public Snapshot read(String userId) {
+        PageIndex index = index(userId);
+        for (int attempt = 0; index != null; attempt++) {
+            Map<AttributeValue, Map<String, AttributeValue>> boycotts = pages(userId, index);
+            if (boycotts != null) {
+                return new Snapshot(index, boycotts);
+            }
+            PageIndex latest = index(userId);
+            if (attempt == 1 || latest != null && latest.getVersion() == index.getVersion()) {
+                throw new IllegalStateException("page set " + index.getPageSet() + " of user " + userId
+                        + " is missing pages");
+            }
+            index = latest;
+        }
+        return null;
+    }
+
+    // Every boycott on the index's pages, keyed by company_cause_id in page order.
+    public Map<AttributeValue, Map<String, AttributeValue>> read(String userId, PageIndex index) {
+        Map<AttributeValue, Map<String, AttributeValue>> boycotts = pages(userId, index);
+        if (boycotts == null) {
+            throw new IllegalStateException("page set " + index.getPageSet() + " of user " + userId
+                    + " is missing pages");
+        }
+        return boycotts;
+    }
+
+    // null when a page of the set is gone.
+    private Map<AttributeValue, Map<String, AttributeValue>> pages(String userId, PageIndex index) {
+        Map<String, byte[]> pages = new HashMap<>();
+        for (int from = 0; from < index.getPageCount(); from += MAX_KEYS_PER_GET) {
+            List<Map<String, AttributeValue>> keys = new ArrayList<>();
+            for (int page = from; page < Math.min(index.getPageCount(), from + MAX_KEYS_PER_GET); page++) {
+                keys.add(key(userId, index.pageKey(page)));
+            }
+            fetch(keys, pages);
+        }
+        Map<AttributeValue, Map<String, AttributeValue>> boycotts = new LinkedHashMap<>();
+        for (int page = 0; page < index.getPageCount(); page++) {
+            byte[] data = pages.get(index.pageKey(page));
+            if (data == null) {
+                return null;
+            }
+            for (Map<String, AttributeValue> boycott : BoycottPageCodec.decode(userId, data)) {
+                boycotts.put(boycott.get("company_cause_id"), boycott);
+            }
+        }
+        return boycotts;
+    }
+
+    private void fetch(List<Map<String, AttributeValue>> keys, Map<String, byte[]> pages) {
+        Map<String, KeysAndAttributes> request = Map.of(tableName, KeysAndAttributes.builder()
+                .keys(keys)
+                .consistentRead(true)
+                .build());
+        for (int attempt = 0; !request.isEmpty(); attempt++) {
+            if (attempt == MAX_ATTEMPTS) {
+                throw new IllegalStateException("BatchGetItem left boycott pages unprocessed after "
+                        + MAX_ATTEMPTS + " attempts");
+            }
+            if (attempt > 0) {
+                sleep(retryPolicy.backoffMillis(attempt - 1));
+            }
+            BatchGetItemResponse response = dynamoDb.batchGetItem(BatchGetItemRequest.builder()
+                    .requestItems(request)
+                    .build());
+            for (Map<String, AttributeValue> item : response.responses().getOrDefault(tableName, List.of())) {
+                pages.put(item.get("page").s(), item.get("data").b().asByteArray());
+            }
+            request = response.hasUnprocessedKeys() ? response.unprocessedKeys() : Map.of();
+        }
+    }
+
+    // The list after applying a request's writes to the stored one. With replace the writes'
+    // puts become the whole list, as with delta sync deletes on user_boycotts items.
+    public static Map<AttributeValue, Map<String, AttributeValue>> merge(
+            Map<AttributeValue, Map<String, AttributeValue>> stored, List<WriteRequest> writes, boolean replace) {
+        Map<AttributeValue, Map<String, AttributeValue>> merged = replace ? new LinkedHashMap<>()
+                : new LinkedHashMap<>(stored);
+        for (WriteRequest write : writes) {
+            if (write.putRequest() != null) {
+                Map<String, AttributeValue> item = write.putRequest().item();
+                merged.put(item.get("company_cause_id"), item);
+            } else if (write.deleteRequest() != null) {
+                merged.remove(write.deleteRequest().key().get("company_cause_id"));
+            }
+        }
+        return merged;
+    }
+
+    // Stores boycotts as the user's new page set. current is the index the list was read
+    // under (null for a user not yet paged); if it changed meanwhile nothing is replaced.
+    public Written write(String userId, PageIndex current, List<Map<String, AttributeValue>> boycotts) {
+        List<byte[]> encoded = BoycottPageCodec.paginate(boycotts, maxPageBytes);
+        long version = current == null ? 1 : current.getVersion() + 1;
+        PageIndex next = new PageIndex(version,
+                version + "-" + Integer.toHexString(ThreadLocalRandom.current().nextInt()),
+                encoded.size(), boycotts.size());
+        List<WriteRequest> puts = new ArrayList<>();
+        long pageBytes = 0;
+        for (int page = 0; page < encoded.size(); page++) {
+            Map<String, AttributeValue> item = key(userId, next.pageKey(page));
+            item.put("version", AttributeValue.fromN(Long.toString(version)));
+            item.put("data", AttributeValue.fromB(SdkBytes.fromByteArray(encoded.get(page))));
+            puts.add(WriteRequest.builder().putRequest(PutRequest.builder().item(item).build()).build());
+            pageBytes += encoded.get(page).length;
+        }
+        // pages of a write that doesn't commit are never named by an index, so readers can't see them
+        BatchWriteResult written = batchWriter.write(tableName, puts);
+        if (!written.isComplete()) {
+            return new Written(Written.Status.INCOMPLETE, current, pageBytes, written);
+        }
+        try {
+            PutItemRequest.Builder swap = PutItemRequest.builder()
+                    .tableName(tableName)
+                    .item(next.toItem(userId, System.currentTimeMillis()));
+            if (current == null) {
+                swap.conditionExpression("attribute_not_exists(user_id)");
+            } else {
+                swap.conditionExpression("#version = :version")
+                        .expressionAttributeNames(Map.of("#version", "version"))
+                        .expressionAttributeValues(Map.of(":version",
+                                AttributeValue.fromN(Long.toString(current.getVersion()))));
+            }
+            dynamoDb.putItem(swap.build());
+        } catch (ConditionalCheckFailedException e) {
+            deletePages(userId, next);
+            return new Written(Written.Status.CONFLICT, current, pageBytes, written);
+        }
+        if (current != null) {
+            deletePages(userId, current);
+        }
+        return new Written(Written.Status.COMMITTED, next, pageBytes, written);
+    }
+
+    // Best effort: a page left behind is unreachable and only costs storage.
+    private void deletePages(String userId, PageIndex index) {
+        List<WriteRequest> deletes = new ArrayList<>();
+        for (int page = 0; page < index.getPageCount(); page++) {
+            deletes.add(WriteRequest.builder()
+                    .deleteRequest(DeleteRequest.builder().key(key(userId, index.pageKey(page))).build())
+                    .build());
+        }
+        try {
+            batchWriter.write(tableName, deletes);
+        } catch (RuntimeException e) {
+            // the new index is already in place
+        }
+    }
+
+    private static Map<String, AttributeValue> key(String userId, String page) {
+        Map<String, AttributeValue> key = new HashMap<>();
+        key.put("user_id", AttributeValue.fromS(userId));
+        key.put("page", AttributeValue.fromS(page));
+        return key;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while retrying BatchGetItem", e);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.boycottpro.users.pages;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// The "index" item of a paged user: which page set is current and how many pages it has.
+// version goes up by one per write and is the optimistic lock; pageSet is unique per
+// write, so two concurrent writers never overwrite each other's pages.
+public class PageIndex {
+
+    public static final String INDEX_KEY = "index";
+
+    private final long version;
+    private final String pageSet;
+    private final int pageCount;
+    private final int boycottCount;
+
+    public PageIndex(long version, String pageSet, int pageCount, int boycottCount) {
+        this.version = version;
+        this.pageSet = pageSet;
+        this.pageCount = pageCount;
+        this.boycottCount = boycottCount;
+    }
+
+    public static PageIndex fromItem(Map<String, AttributeValue> item) {
+        return new PageIndex(Long.parseLong(item.get("version").n()), item.get("page_set").s(),
+                Integer.parseInt(item.get("page_count").n()), Integer.parseInt(item.get("boycott_count").n()));
+    }
+
+    public Map<String, AttributeValue> toItem(String userId, long updatedMillis) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("user_id", AttributeValue.fromS(userId));
+        item.put("page", AttributeValue.fromS(INDEX_KEY));
+        item.put("version", AttributeValue.fromN(Long.toString(version)));
+        item.put("page_set", AttributeValue.fromS(pageSet));
+        item.put("page_count", AttributeValue.fromN(Integer.toString(pageCount)));
+        item.put("boycott_count", AttributeValue.fromN(Integer.toString(boycottCount)));
+        item.put("updated_ts", AttributeValue.fromN(Long.toString(updatedMillis)));
+        return item;
+    }
+
+    // Sort key of page n of this index's page set.
+    public String pageKey(int page) {
+        return pageSet + "#" + page;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getPageSet() {
+        return pageSet;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    public int getBoycottCount() {
+        return boycottCount;
+    }
+
+    @Override
+    public String toString() {
+        return "PageIndex{version=" + version + ", pageSet='" + pageSet + "', pageCount=" + pageCount
+                + ", boycottCount=" + boycottCount + '}';
+    }
+}
@@ -0,0 +1,44 @@
+package com.boycottpro.users.parse;
+
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Writes decoded from an upgrade request body. A list is null when the body
+// left it out or sent null, which the handler rejects as a missing field.
+public class DecodedUpgrade {
+
+    private final List<WriteRequest> boycottWrites;
+    private final List<WriteRequest> causeWrites;
+
+    public DecodedUpgrade(List<WriteRequest> boycottWrites, List<WriteRequest> causeWrites) {
+        this.boycottWrites = boycottWrites;
+        this.causeWrites = causeWrites;
+    }
+
+    public List<WriteRequest> getBoycottWrites() {
+        return boycottWrites;
+    }
+
+    public List<WriteRequest> getCauseWrites() {
+        return causeWrites;
+    }
+
+    public boolean isComplete() {
+        return boycottWrites != null && causeWrites != null;
+    }
+
+    // Both tables go into one map so their writes can share BatchWriteItem requests.
+    public Map<String, List<WriteRequest>> toWritesByTable() {
+        Map<String, List<WriteRequest>> writesByTable = new LinkedHashMap<>();
+        if (boycottWrites != null && !boycottWrites.isEmpty()) {
+            writesByTable.put("user_boycotts", boycottWrites);
+        }
+        if (causeWrites != null && !causeWrites.isEmpty()) {
+            writesByTable.put("user_causes", causeWrites);
+        }
+        return writesByTable;
+    }
+}
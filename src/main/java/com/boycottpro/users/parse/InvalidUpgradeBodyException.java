@@ -0,0 +1,11 @@
+package com.boycottpro.users.parse;
+
+import java.io.IOException;
+
+// The request body is well-formed JSON but not an acceptable upgrade form.
+public class InvalidUpgradeBodyException extends IOException {
+
+    public InvalidUpgradeBodyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,204 @@
+package com.boycottpro.users.parse;
+
+import com.boycottpro.users.config.Settings;
+import com.boycottpro.users.dynamo.ItemSizeEstimator;
+import com.boycottpro.users.mapping.UserItems;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// Decodes an UpgradeUserForm body token by token straight into user_boycotts and
+// user_causes WriteRequests, without building UserBoycotts/UserCauses objects first.
+// user_id comes from the caller, company_cause_id is derived as each entry is read,
+// and arrays or strings over the configured limits are rejected on the spot.
+public class UpgradeBodyDecoder {
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private final int maxEntries;
+    private final int maxFieldLength;
+
+    public UpgradeBodyDecoder() {
+        this(Settings.getInt("MAX_FORM_ENTRIES", 5000), Settings.getInt("MAX_FIELD_LENGTH", (int) ItemSizeEstimator.MAX_ITEM_BYTES));
+    }
+
+    public UpgradeBodyDecoder(int maxEntries, int maxFieldLength) {
+        this.maxEntries = maxEntries;
+        this.maxFieldLength = maxFieldLength;
+    }
+
+    private interface EntryReader {
+        WriteRequest read(JsonParser parser, String userId) throws IOException;
+    }
+
+    public DecodedUpgrade decode(String body, String userId) throws IOException {
+        if (body == null || body.isEmpty()) {
+            throw new InvalidUpgradeBodyException("request body is empty");
+        }
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            return decode(parser, userId);
+        }
+    }
+
+    public DecodedUpgrade decode(InputStream body, String userId) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            return decode(parser, userId);
+        }
+    }
+
+    // A top-level string such as the user_id of a queued upgrade, or null; the lists are
+    // skipped, not decoded.
+    public String readTopLevelString(String body, String name) throws IOException {
+        if (body == null || body.isEmpty()) {
+            throw new InvalidUpgradeBodyException("request body is empty");
+        }
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new InvalidUpgradeBodyException("request body must be a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if (name.equals(field)) {
+                    return readString(parser, field);
+                }
+                parser.skipChildren();
+            }
+        }
+        return null;
+    }
+
+    private DecodedUpgrade decode(JsonParser parser, String userId) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new InvalidUpgradeBodyException("request body must be a JSON object");
+        }
+        List<WriteRequest> boycotts = null;
+        List<WriteRequest> causes = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "user_boycotts":
+                    boycotts = readArray(parser, field, userId, this::readBoycott);
+                    break;
+                case "user_causes":
+                    causes = readArray(parser, field, userId, this::readCause);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return new DecodedUpgrade(boycotts, causes);
+    }
+
+    private List<WriteRequest> readArray(JsonParser parser, String field, String userId, EntryReader reader)
+            throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new InvalidUpgradeBodyException(field + " must be an array");
+        }
+        List<WriteRequest> writes = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (writes.size() == maxEntries) {
+                throw new InvalidUpgradeBodyException(field + " has more than " + maxEntries + " entries");
+            }
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                throw new InvalidUpgradeBodyException(field + " entries must be objects");
+            }
+            writes.add(reader.read(parser, userId));
+        }
+        return writes;
+    }
+
+    private WriteRequest readBoycott(JsonParser parser, String userId) throws IOException {
+        String companyId = null;
+        String companyName = null;
+        String causeId = null;
+        String causeDesc = null;
+        String personalReason = null;
+        String timestamp = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "company_id":
+                    companyId = readString(parser, field);
+                    break;
+                case "company_name":
+                    companyName = readString(parser, field);
+                    break;
+                case "cause_id":
+                    causeId = readString(parser, field);
+                    break;
+                case "cause_desc":
+                    causeDesc = readString(parser, field);
+                    break;
+                case "personal_reason":
+                    personalReason = readString(parser, field);
+                    break;
+                case "timestamp":
+                    timestamp = readString(parser, field);
+                    break;
+                default:
+                    // user_id and company_cause_id are always set server-side
+                    parser.skipChildren();
+            }
+        }
+        if (companyId == null) {
+            throw new InvalidUpgradeBodyException("user_boycotts entry is missing company_id");
+        }
+        return UserItems.put(UserItems.boycottItem(userId, companyId, companyName, causeId, causeDesc,
+                personalReason, timestamp));
+    }
+
+    private WriteRequest readCause(JsonParser parser, String userId) throws IOException {
+        String causeId = null;
+        String causeDesc = null;
+        String timestamp = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "cause_id":
+                    causeId = readString(parser, field);
+                    break;
+                case "cause_desc":
+                    causeDesc = readString(parser, field);
+                    break;
+                case "timestamp":
+                    timestamp = readString(parser, field);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        if (causeId == null) {
+            throw new InvalidUpgradeBodyException("user_causes entry is missing cause_id");
+        }
+        return UserItems.put(UserItems.causeItem(userId, causeId, causeDesc, timestamp));
+    }
+
+    // The parser has already buffered the token; checking its length before getText()
+    // rejects an oversized value before a String is built from it.
+    private String readString(JsonParser parser, String field) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!token.isScalarValue()) {
+            throw new InvalidUpgradeBodyException(field + " must be a string");
+        }
+        if (parser.getTextLength() > maxFieldLength) {
+            throw new InvalidUpgradeBodyException(field + " is longer than " + maxFieldLength + " characters");
+        }
+        return parser.getText();
+    }
+}
@@ -0,0 +1,105 @@
+package com.boycottpro.users.reference;
+
+import com.boycottpro.users.config.Settings;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+// Per-container LRU of company and cause records, so popular references are resolved
+// without a read on warm invocations. Entries expire after a TTL so renames reach every
+// container; ids that don't exist are remembered for a shorter time.
+public class ReferenceCache {
+
+    // A looked-up record: whether it exists and its display name, which may be absent.
+    public static final class Reference {
+
+        static final Reference MISSING = new Reference(false, null);
+
+        private final boolean exists;
+        private final String name;
+
+        private Reference(boolean exists, String name) {
+            this.exists = exists;
+            this.name = name;
+        }
+
+        public static Reference of(String name) {
+            return new Reference(true, name);
+        }
+
+        public boolean exists() {
+            return exists;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private static final class Entry {
+        final Reference reference;
+        final long expiresAt;
+
+        Entry(Reference reference, long expiresAt) {
+            this.reference = reference;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Map<String, Entry> entries;
+    private final long ttlMillis;
+    private final long missingTtlMillis;
+    private final LongSupplier clock;
+
+    public ReferenceCache(int capacity, long ttlMillis, long missingTtlMillis, LongSupplier clock) {
+        if (capacity < 1 || ttlMillis < 0 || missingTtlMillis < 0) {
+            throw new IllegalArgumentException("invalid reference cache: capacity=" + capacity
+                    + " ttl=" + ttlMillis + " missingTtl=" + missingTtlMillis);
+        }
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.ttlMillis = ttlMillis;
+        this.missingTtlMillis = missingTtlMillis;
+        this.clock = clock;
+    }
+
+    public static ReferenceCache fromEnvironment() {
+        return new ReferenceCache(
+                Settings.getInt("REFERENCE_CACHE_SIZE", 10000),
+                Settings.getLong("REFERENCE_CACHE_TTL_MS", 300000),
+                Settings.getLong("REFERENCE_CACHE_MISSING_TTL_MS", 30000),
+                System::currentTimeMillis);
+    }
+
+    // The cached record, or null when there is none or it has expired.
+    public synchronized Reference get(String table, String id) {
+        String key = key(table, id);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (clock.getAsLong() >= entry.expiresAt) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.reference;
+    }
+
+    public synchronized void put(String table, String id, Reference reference) {
+        long ttl = reference.exists() ? ttlMillis : missingTtlMillis;
+        entries.put(key(table, id), new Entry(reference, clock.getAsLong() + ttl));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static String key(String table, String id) {
+        return table + '\u0000' + id;
+    }
+}
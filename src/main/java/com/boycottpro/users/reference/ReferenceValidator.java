@@ -0,0 +1,254 @@
+package com.boycottpro.users.reference;
+
+import com.boycottpro.users.config.Settings;
+import com.boycottpro.users.dynamo.RetryPolicy;
+import com.boycottpro.users.mapping.UserItems;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Checks every company_id and cause_id an upgrade refers to against the companies and
+// causes tables, and rewrites company_name and cause_desc to the stored names so a client
+// can't denormalize stale or made-up names into user_boycotts and user_causes. Ids missing
+// from the cache are fetched with BatchGetItem, 100 keys per call across both tables.
+public class ReferenceValidator {
+
+    static final int MAX_BATCH_GET_KEYS = 100;
+    static final int MAX_ATTEMPTS = 4;
+
+    private final DynamoDbClient dynamoDb;
+    private final ReferenceCache cache;
+    private final RetryPolicy retryPolicy;
+    private final String companiesTable;
+    private final String causesTable;
+
+    public ReferenceValidator(DynamoDbClient dynamoDb, ReferenceCache cache) {
+        this(dynamoDb, cache, RetryPolicy.fromEnvironment(), Settings.getString("COMPANIES_TABLE", "companies"),
+                Settings.getString("CAUSES_TABLE", "causes"));
+    }
+
+    public ReferenceValidator(DynamoDbClient dynamoDb, ReferenceCache cache, RetryPolicy retryPolicy,
+                              String companiesTable, String causesTable) {
+        this.dynamoDb = dynamoDb;
+        this.cache = cache;
+        this.retryPolicy = retryPolicy;
+        this.companiesTable = companiesTable;
+        this.causesTable = causesTable;
+    }
+
+    public static class Result {
+        private final Map<String, List<WriteRequest>> writesByTable;
+        private final List<String> unknown;
+        private final int fetched;
+        private final int rewritten;
+
+        Result(Map<String, List<WriteRequest>> writesByTable, List<String> unknown, int fetched, int rewritten) {
+            this.writesByTable = writesByTable;
+            this.unknown = unknown;
+            this.fetched = fetched;
+            this.rewritten = rewritten;
+        }
+
+        public boolean isValid() {
+            return unknown.isEmpty();
+        }
+
+        // The writes with canonical names; only meaningful when isValid().
+        public Map<String, List<WriteRequest>> getWritesByTable() {
+            return writesByTable;
+        }
+
+        // "company_id c1" / "cause_id k1" for every reference that doesn't exist.
+        public List<String> getUnknown() {
+            return unknown;
+        }
+
+        // Ids read from DynamoDB rather than the cache.
+        public int getFetched() {
+            return fetched;
+        }
+
+        // Items whose names were replaced.
+        public int getRewritten() {
+            return rewritten;
+        }
+    }
+
+    public Result validate(Map<String, List<WriteRequest>> writesByTable) {
+        Set<String> companyIds = new LinkedHashSet<>();
+        Set<String> causeIds = new LinkedHashSet<>();
+        for (WriteRequest write : writesByTable.getOrDefault("user_boycotts", List.of())) {
+            Map<String, AttributeValue> item = write.putRequest().item();
+            companyIds.add(item.get("company_id").s());
+            if (item.containsKey("cause_id")) {
+                causeIds.add(item.get("cause_id").s());
+            }
+        }
+        for (WriteRequest write : writesByTable.getOrDefault("user_causes", List.of())) {
+            causeIds.add(write.putRequest().item().get("cause_id").s());
+        }
+        Map<String, ReferenceCache.Reference> companies = new HashMap<>();
+        Map<String, ReferenceCache.Reference> causes = new HashMap<>();
+        int fetched = resolve(companyIds, causeIds, companies, causes);
+
+        Set<String> unknown = new LinkedHashSet<>();
+        int rewritten = 0;
+        Map<String, List<WriteRequest>> canonical = new LinkedHashMap<>();
+        for (Map.Entry<String, List<WriteRequest>> table : writesByTable.entrySet()) {
+            boolean boycotts = "user_boycotts".equals(table.getKey());
+            List<WriteRequest> writes = new ArrayList<>(table.getValue().size());
+            for (WriteRequest write : table.getValue()) {
+                Map<String, AttributeValue> item = write.putRequest().item();
+                Map<String, String> names = new HashMap<>(4);
+                if (boycotts) {
+                    ReferenceCache.Reference company = companies.get(item.get("company_id").s());
+                    if (!company.exists()) {
+                        unknown.add("company_id " + item.get("company_id").s());
+                    }
+                    names.put("company_name", company.getName());
+                }
+                if (item.containsKey("cause_id")) {
+                    ReferenceCache.Reference cause = causes.get(item.get("cause_id").s());
+                    if (!cause.exists()) {
+                        unknown.add("cause_id " + item.get("cause_id").s());
+                    }
+                    names.put("cause_desc", cause.getName());
+                }
+                Map<String, AttributeValue> fixed = canonicalize(item, names);
+                if (fixed != item) {
+                    rewritten++;
+                    write = UserItems.put(fixed);
+                }
+                writes.add(write);
+            }
+            canonical.put(table.getKey(), writes);
+        }
+        return new Result(canonical, new ArrayList<>(unknown), fetched, rewritten);
+    }
+
+    // The item itself when every name already matches, otherwise a copy with the stored names.
+    private static Map<String, AttributeValue> canonicalize(Map<String, AttributeValue> item,
+                                                            Map<String, String> names) {
+        Map<String, AttributeValue> fixed = item;
+        for (Map.Entry<String, String> name : names.entrySet()) {
+            AttributeValue current = item.get(name.getKey());
+            String sent = current == null ? null : current.s();
+            if (sent == null ? name.getValue() == null : sent.equals(name.getValue())) {
+                continue;
+            }
+            if (fixed == item) {
+                fixed = new HashMap<>(item);
+            }
+            if (name.getValue() == null) {
+                fixed.remove(name.getKey());
+            } else {
+                fixed.put(name.getKey(), AttributeValue.fromS(name.getValue()));
+            }
+        }
+        return fixed;
+    }
+
+    // Fills in every id from the cache or DynamoDB and returns how many were read.
+    private int resolve(Set<String> companyIds, Set<String> causeIds,
+                        Map<String, ReferenceCache.Reference> companies,
+                        Map<String, ReferenceCache.Reference> causes) {
+        List<String[]> misses = new ArrayList<>();
+        collectMisses(companiesTable, companyIds, companies, misses);
+        collectMisses(causesTable, causeIds, causes, misses);
+        for (int start = 0; start < misses.size(); start += MAX_BATCH_GET_KEYS) {
+            List<String[]> chunk = misses.subList(start, Math.min(start + MAX_BATCH_GET_KEYS, misses.size()));
+            Set<String> found = fetch(chunk, companies, causes);
+            for (String[] miss : chunk) {
+                if (!found.contains(miss[0] + '\u0000' + miss[1])) {
+                    cache.put(miss[0], miss[1], ReferenceCache.Reference.MISSING);
+                    (companiesTable.equals(miss[0]) ? companies : causes).put(miss[1], ReferenceCache.Reference.MISSING);
+                }
+            }
+        }
+        return misses.size();
+    }
+
+    private void collectMisses(String table, Set<String> ids, Map<String, ReferenceCache.Reference> resolved,
+                               List<String[]> misses) {
+        for (String id : ids) {
+            ReferenceCache.Reference cached = cache.get(table, id);
+            if (cached != null) {
+                resolved.put(id, cached);
+            } else {
+                misses.add(new String[] {table, id});
+            }
+        }
+    }
+
+    // One BatchGetItem for up to 100 keys, resubmitting unprocessed keys with backoff.
+    private Set<String> fetch(List<String[]> keys, Map<String, ReferenceCache.Reference> companies,
+                              Map<String, ReferenceCache.Reference> causes) {
+        Map<String, KeysAndAttributes> request = new LinkedHashMap<>();
+        Map<String, List<Map<String, AttributeValue>>> keysByTable = new LinkedHashMap<>();
+        for (String[] key : keys) {
+            keysByTable.computeIfAbsent(key[0], t -> new ArrayList<>())
+                    .add(Map.of(idAttribute(key[0]), AttributeValue.fromS(key[1])));
+        }
+        for (Map.Entry<String, List<Map<String, AttributeValue>>> table : keysByTable.entrySet()) {
+            request.put(table.getKey(), KeysAndAttributes.builder()
+                    .keys(table.getValue())
+                    .projectionExpression("#id, #name")
+                    .expressionAttributeNames(Map.of("#id", idAttribute(table.getKey()),
+                            "#name", nameAttribute(table.getKey())))
+                    .build());
+        }
+        Set<String> found = new LinkedHashSet<>();
+        for (int attempt = 0; !request.isEmpty(); attempt++) {
+            if (attempt == MAX_ATTEMPTS) {
+                throw new IllegalStateException("BatchGetItem left " + request.size()
+                        + " tables unprocessed after " + MAX_ATTEMPTS + " attempts");
+            }
+            if (attempt > 0) {
+                sleep(retryPolicy.backoffMillis(attempt - 1));
+            }
+            BatchGetItemResponse response = dynamoDb.batchGetItem(BatchGetItemRequest.builder()
+                    .requestItems(request)
+                    .build());
+            for (Map.Entry<String, List<Map<String, AttributeValue>>> table : response.responses().entrySet()) {
+                for (Map<String, AttributeValue> item : table.getValue()) {
+                    String id = item.get(idAttribute(table.getKey())).s();
+                    AttributeValue name = item.get(nameAttribute(table.getKey()));
+                    ReferenceCache.Reference reference = ReferenceCache.Reference.of(name == null ? null : name.s());
+                    cache.put(table.getKey(), id, reference);
+                    (companiesTable.equals(table.getKey()) ? companies : causes).put(id, reference);
+                    found.add(table.getKey() + '\u0000' + id);
+                }
+            }
+            request = response.hasUnprocessedKeys() ? response.unprocessedKeys() : Map.of();
+        }
+        return found;
+    }
+
+    private String idAttribute(String table) {
+        return companiesTable.equals(table) ? "company_id" : "cause_id";
+    }
+
+    private String nameAttribute(String table) {
+        return companiesTable.equals(table) ? "company_name" : "cause_desc";
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while retrying BatchGetItem", e);
+        }
+    }
+}
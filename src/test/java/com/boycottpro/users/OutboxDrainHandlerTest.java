@@ -0,0 +1,111 @@
+package com.boycottpro.users;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.boycottpro.users.config.UpgradeOptions;
+import com.boycottpro.users.harness.Events;
+import com.boycottpro.users.harness.InMemoryDynamoDb;
+import com.boycottpro.users.mapping.UserItems;
+import com.boycottpro.users.outbox.InMemoryOutbox;
+import com.boycottpro.users.outbox.OutboxMessage;
+import com.boycottpro.users.outbox.WriteOutbox;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OutboxDrainHandlerTest {
+
+    private InMemoryDynamoDb dynamoDb;
+    private UpgradeOptions options;
+
+    @BeforeEach
+    public void setUp() {
+        dynamoDb = new InMemoryDynamoDb();
+        dynamoDb.seed("users", Map.of("user_id", AttributeValue.fromS("u1"), "paying_user", AttributeValue.fromBool(false)));
+        options = new UpgradeOptions();
+        options.setDeferredWrites(true);
+    }
+
+    private static APIGatewayProxyRequestEvent event() {
+        return Events.authorized("u1", "{\"user_boycotts\":[{\"company_id\":\"c1\",\"cause_id\":\"k1\"},"
+                + "{\"company_id\":\"c2\",\"cause_id\":\"k1\"}],\"user_causes\":[{\"cause_id\":\"k1\"}]}");
+    }
+
+    private static SQSEvent sqsEvent(List<String> bodies) {
+        List<SQSEvent.SQSMessage> records = new ArrayList<>();
+        for (int i = 0; i < bodies.size(); i++) {
+            SQSEvent.SQSMessage record = new SQSEvent.SQSMessage();
+            record.setMessageId("m" + i);
+            record.setBody(bodies.get(i));
+            records.add(record);
+        }
+        SQSEvent event = new SQSEvent();
+        event.setRecords(records);
+        return event;
+    }
+
+    @Test
+    public void testDeferred_acknowledgesThenDrainWritesTheLists() {
+        InMemoryOutbox outbox = new InMemoryOutbox();
+        UpgradeUserHandler handler = new UpgradeUserHandler(dynamoDb, null, options, outbox);
+
+        APIGatewayProxyResponseEvent response = handler.handleRequest(event(), null);
+
+        assertEquals(202, response.getStatusCode());
+        assertTrue(dynamoDb.item("users", Map.of("user_id", AttributeValue.fromS("u1"))).get("paying_user").bool());
+        assertNull(dynamoDb.getStats().get("BatchWriteItem"));
+        assertEquals(1, outbox.size());
+
+        SQSBatchResponse drained = new OutboxDrainHandler(dynamoDb).handleRequest(sqsEvent(outbox.take()), null);
+
+        assertTrue(drained.getBatchItemFailures().isEmpty());
+        assertEquals(2, dynamoDb.items("user_boycotts").size());
+        assertEquals(1, dynamoDb.items("user_causes").size());
+    }
+
+    @Test
+    public void testDeferred_answers503WithoutWritingWhenPublishFails() {
+        WriteOutbox broken = message -> {
+            throw new IllegalStateException("queue unavailable");
+        };
+        UpgradeUserHandler handler = new UpgradeUserHandler(dynamoDb, null, options, broken);
+
+        assertEquals(503, handler.handleRequest(event(), null).getStatusCode());
+        assertNull(dynamoDb.getStats().get("BatchWriteItem"));
+    }
+
+    @Test
+    public void testDeferred_refusesDeltaSync() {
+        options.setDeltaSync(true);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new UpgradeUserHandler(dynamoDb, null, options, new InMemoryOutbox()));
+    }
+
+    @Test
+    public void testDrain_dropsUndecodableMessagesAndReportsFailuresInOrder() {
+        InMemoryOutbox outbox = new InMemoryOutbox();
+        outbox.publish(new OutboxMessage("u1", Map.of("unknown_table", List.of(
+                UserItems.put(Map.of("id", AttributeValue.fromS("x")))))));
+        outbox.publish(new OutboxMessage("u1", Map.of("user_causes", List.of(
+                UserItems.put(Map.of("user_id", AttributeValue.fromS("u1"), "cause_id", AttributeValue.fromS("k1")))))));
+        List<String> bodies = new ArrayList<>();
+        bodies.add("not json");
+        bodies.addAll(outbox.take());
+
+        SQSBatchResponse drained = new OutboxDrainHandler(dynamoDb).handleRequest(sqsEvent(bodies), null);
+
+        // m2 comes after the failed m1 in the same group, so it waits for redelivery
+        assertEquals(List.of("m1", "m2"), drained.getBatchItemFailures().stream()
+                .map(SQSBatchResponse.BatchItemFailure::getItemIdentifier).toList());
+        assertTrue(dynamoDb.items("user_causes").isEmpty());
+    }
+}
@@ -0,0 +1,120 @@
+package com.boycottpro.users;
+
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.boycottpro.users.harness.InMemoryDynamoDb;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UpgradeQueueHandlerTest {
+
+    private InMemoryDynamoDb dynamoDb;
+
+    @BeforeEach
+    public void setUp() {
+        dynamoDb = new InMemoryDynamoDb() {
+            @Override
+            public UpdateItemResponse updateItem(UpdateItemRequest request) {
+                if ("broken".equals(request.key().get("user_id").s())) {
+                    throw new IllegalStateException("update failed");
+                }
+                return super.updateItem(request);
+            }
+
+            @Override
+            public BatchWriteItemResponse batchWriteItem(BatchWriteItemRequest request) {
+                for (List<WriteRequest> writes : request.requestItems().values()) {
+                    for (WriteRequest write : writes) {
+                        if ("unlucky".equals(write.putRequest().item().get("user_id").s())) {
+                            throw new IllegalStateException("chunk failed");
+                        }
+                    }
+                }
+                return super.batchWriteItem(request);
+            }
+        };
+        for (String user : List.of("u1", "u2", "u3", "broken", "unlucky")) {
+            dynamoDb.seed("users", Map.of("user_id", AttributeValue.fromS(user), "paying_user", AttributeValue.fromBool(false)));
+        }
+    }
+
+    private static String form(String userId, int boycotts) {
+        return form(userId, boycotts, true);
+    }
+
+    private static String form(String userId, int boycotts, boolean cause) {
+        StringBuilder body = new StringBuilder("{");
+        if (userId != null) {
+            body.append("\"user_id\":\"").append(userId).append("\",");
+        }
+        body.append("\"user_boycotts\":[");
+        for (int i = 0; i < boycotts; i++) {
+            body.append(i > 0 ? "," : "").append("{\"company_id\":\"c").append(i).append("\",\"cause_id\":\"k1\"}");
+        }
+        return body.append("],\"user_causes\":[").append(cause ? "{\"cause_id\":\"k1\"}" : "").append("]}").toString();
+    }
+
+    private static SQSEvent.SQSMessage message(String id, String body) {
+        SQSEvent.SQSMessage message = new SQSEvent.SQSMessage();
+        message.setMessageId(id);
+        message.setBody(body);
+        return message;
+    }
+
+    private static SQSEvent event(SQSEvent.SQSMessage... messages) {
+        SQSEvent event = new SQSEvent();
+        event.setRecords(new ArrayList<>(List.of(messages)));
+        return event;
+    }
+
+    private static List<String> failed(SQSBatchResponse response) {
+        List<String> ids = new ArrayList<>();
+        for (SQSBatchResponse.BatchItemFailure failure : response.getBatchItemFailures()) {
+            ids.add(failure.getItemIdentifier());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testHandle_mergesUsersIntoSharedChunks() {
+        SQSEvent.SQSMessage byAttribute = message("m3", form(null, 3));
+        SQSEvent.MessageAttribute userId = new SQSEvent.MessageAttribute();
+        userId.setStringValue("u3");
+        byAttribute.setMessageAttributes(Map.of("user_id", userId));
+
+        SQSBatchResponse response = new UpgradeQueueHandler(dynamoDb, 4)
+                .handleRequest(event(message("m1", form("u1", 3)), message("m2", form("u2", 3)), byAttribute), null);
+
+        assertTrue(response.getBatchItemFailures().isEmpty());
+        assertEquals(9, dynamoDb.items("user_boycotts").size());
+        assertEquals(3, dynamoDb.items("user_causes").size());
+        assertEquals(1L, dynamoDb.getStats().get("BatchWriteItem"));
+        assertTrue(dynamoDb.item("users", Map.of("user_id", AttributeValue.fromS("u3"))).get("paying_user").bool());
+    }
+
+    @Test
+    public void testHandle_reportsOnlyTheMessagesThatFailed() {
+        SQSBatchResponse response = new UpgradeQueueHandler(dynamoDb, 4).handleRequest(event(
+                message("ok", form("u1", 25, false)),
+                message("upgrade-failed", form("broken", 1)),
+                message("write-failed", form("unlucky", 24, false)),
+                message("no-user", form("nobody", 1)),
+                message("garbage", "not json")), null);
+
+        assertEquals(List.of("upgrade-failed", "write-failed"), failed(response));
+        // u1 filled the first chunk on its own, so the failed chunk only held unlucky's items
+        assertEquals(25, dynamoDb.items("user_boycotts").size());
+    }
+}
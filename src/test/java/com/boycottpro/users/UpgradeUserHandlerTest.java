@@ -5,14 +5,17 @@ import com.boycottpro.models.ResponseMessage;
 import com.boycottpro.models.UserBoycotts;
 import com.boycottpro.models.UserCauses;
 import com.boycottpro.models.Users;
+import com.boycottpro.users.config.UpgradeOptions;
 import com.boycottpro.users.model.UpgradeUserForm;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 
@@ -20,6 +23,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -99,8 +104,8 @@ public class UpgradeUserHandlerTest {
         ResponseMessage message = new ObjectMapper().readValue(response.getBody(), ResponseMessage.class);
         assertEquals("User upgraded to premium successfully!", message.getMessage());
 
-        // Verify DynamoDB was called for both batchWriteItem and updateItem
-        verify(dynamoDb, times(2)).batchWriteItem(any(BatchWriteItemRequest.class));
+        // Boycotts and causes share a single batchWriteItem request
+        verify(dynamoDb, times(1)).batchWriteItem(any(BatchWriteItemRequest.class));
         verify(dynamoDb, times(1)).updateItem(any(UpdateItemRequest.class));
     }
 
@@ -629,4 +634,224 @@ public class UpgradeUserHandlerTest {
         assertEquals("User upgraded to premium successfully!", message.getMessage());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testUpgradeUserHandler_asyncWritePath() throws Exception {
+        DynamoDbAsyncClient dynamoDbAsync = mock(DynamoDbAsyncClient.class);
+        UpgradeUserHandler asyncHandler = new UpgradeUserHandler(dynamoDb, dynamoDbAsync);
+
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        Map<String, String> claims = Map.of("sub", "11111111-2222-3333-4444-555555555555");
+        Map<String, Object> authorizer = new HashMap<>();
+        authorizer.put("claims", claims);
+
+        APIGatewayProxyRequestEvent.ProxyRequestContext rc = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        rc.setAuthorizer(authorizer);
+        event.setRequestContext(rc);
+        event.setPathParameters(Map.of("user_id", "s"));
+
+        UpgradeUserForm form = new UpgradeUserForm();
+        form.setUser_boycotts(List.of(
+                new UserBoycotts("user123", "comp123", "company name", "cause123",
+                        "cause desc", "comp123-cause123", null,
+                        "1754141635140")
+        ));
+        form.setUser_causes(List.of(
+                new UserCauses("user123", "cause123", "cause desc", "1754141635140")
+        ));
+        event.setBody(objectMapper.writeValueAsString(form));
+
+        when(dynamoDbAsync.batchWriteItem(any(BatchWriteItemRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(
+                        BatchWriteItemResponse.builder().unprocessedItems(Collections.emptyMap()).build()));
+
+        Map<String, AttributeValue> attributes = Map.of(
+                "user_id", AttributeValue.fromS("user123"),
+                "email_addr", AttributeValue.fromS("email@email.com"),
+                "username", AttributeValue.fromS("username"),
+                "created_ts", AttributeValue.fromN("100"),
+                "paying_user", AttributeValue.fromBool(true)
+        );
+        when(dynamoDb.updateItem(any(UpdateItemRequest.class)))
+                .thenReturn(UpdateItemResponse.builder().attributes(attributes).build());
+
+        APIGatewayProxyResponseEvent response = asyncHandler.handleRequest(event, context);
+
+        assertEquals(200, response.getStatusCode());
+        verify(dynamoDbAsync, times(1)).batchWriteItem(any(BatchWriteItemRequest.class));
+        verify(dynamoDb, never()).batchWriteItem(any(BatchWriteItemRequest.class));
+    }
+
+    @Test
+    public void testUpgradeUserHandler_oversizedItemRejectedBeforeUpgrade() throws Exception {
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        Map<String, String> claims = Map.of("sub", "11111111-2222-3333-4444-555555555555");
+        Map<String, Object> authorizer = new HashMap<>();
+        authorizer.put("claims", claims);
+
+        APIGatewayProxyRequestEvent.ProxyRequestContext rc = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        rc.setAuthorizer(authorizer);
+        event.setRequestContext(rc);
+        event.setPathParameters(Map.of("user_id", "s"));
+
+        UpgradeUserForm form = new UpgradeUserForm();
+        // each field is under the per-field limit, but together they exceed 400 KB
+        form.setUser_boycotts(List.of(
+                new UserBoycotts("user123", "comp123", "x".repeat(250 * 1024), "cause123",
+                        "y".repeat(250 * 1024), null, null, "1754141635140")
+        ));
+        form.setUser_causes(Collections.emptyList());
+        event.setBody(objectMapper.writeValueAsString(form));
+
+        APIGatewayProxyResponseEvent response = handler.handleRequest(event, context);
+
+        assertEquals(400, response.getStatusCode());
+        ResponseMessage message = objectMapper.readValue(response.getBody(), ResponseMessage.class);
+        assertTrue(message.getDevMsg().contains("too large"));
+        verify(dynamoDb, never()).updateItem(any(UpdateItemRequest.class));
+        verify(dynamoDb, never()).batchWriteItem(any(BatchWriteItemRequest.class));
+    }
+
+    @Test
+    public void testUpgradeUserHandler_duplicateEntriesCoalesced() throws Exception {
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        Map<String, String> claims = Map.of("sub", "11111111-2222-3333-4444-555555555555");
+        Map<String, Object> authorizer = new HashMap<>();
+        authorizer.put("claims", claims);
+
+        APIGatewayProxyRequestEvent.ProxyRequestContext rc = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        rc.setAuthorizer(authorizer);
+        event.setRequestContext(rc);
+        event.setPathParameters(Map.of("user_id", "s"));
+
+        // both boycotts map to comp123#cause123, both causes to cause123
+        UpgradeUserForm form = new UpgradeUserForm();
+        form.setUser_boycotts(List.of(
+                new UserBoycotts(null, "comp123", "newer name", "cause123", "cause desc", null, null, "1754141635140"),
+                new UserBoycotts(null, "comp123", "older name", "cause123", "cause desc", null, null, "1754141635000")
+        ));
+        form.setUser_causes(List.of(
+                new UserCauses(null, "cause123", "cause desc", "1754141635140"),
+                new UserCauses(null, "cause123", "cause desc", "1754141635140")
+        ));
+        event.setBody(objectMapper.writeValueAsString(form));
+
+        when(dynamoDb.batchWriteItem(any(BatchWriteItemRequest.class)))
+                .thenReturn(BatchWriteItemResponse.builder().unprocessedItems(Collections.emptyMap()).build());
+        when(dynamoDb.updateItem(any(UpdateItemRequest.class)))
+                .thenReturn(UpdateItemResponse.builder()
+                        .attributes(Map.of("paying_user", AttributeValue.fromBool(true)))
+                        .build());
+
+        APIGatewayProxyResponseEvent response = handler.handleRequest(event, context);
+
+        assertEquals(200, response.getStatusCode());
+        ArgumentCaptor<BatchWriteItemRequest> captor = ArgumentCaptor.forClass(BatchWriteItemRequest.class);
+        verify(dynamoDb).batchWriteItem(captor.capture());
+        List<WriteRequest> boycotts = captor.getValue().requestItems().get("user_boycotts");
+        assertEquals(1, boycotts.size());
+        assertEquals("newer name", boycotts.get(0).putRequest().item().get("company_name").s());
+        assertEquals(1, captor.getValue().requestItems().get("user_causes").size());
+    }
+
+    @Test
+    public void testUpgradeUserHandler_transactWritePath() throws Exception {
+        UpgradeOptions options = new UpgradeOptions();
+        options.setTransactWrites(true);
+        UpgradeUserHandler transactHandler = new UpgradeUserHandler(dynamoDb, null, options);
+
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        Map<String, String> claims = Map.of("sub", "11111111-2222-3333-4444-555555555555");
+        Map<String, Object> authorizer = new HashMap<>();
+        authorizer.put("claims", claims);
+
+        APIGatewayProxyRequestEvent.ProxyRequestContext rc = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        rc.setAuthorizer(authorizer);
+        event.setRequestContext(rc);
+
+        UpgradeUserForm form = new UpgradeUserForm();
+        form.setUser_boycotts(List.of(
+                new UserBoycotts("user123", "comp123", "company name", "cause123",
+                        "cause desc", "comp123-cause123", null,
+                        "1754141635140")
+        ));
+        form.setUser_causes(List.of(
+                new UserCauses("user123", "cause123", "cause desc", "1754141635140")
+        ));
+        event.setBody(objectMapper.writeValueAsString(form));
+
+        when(dynamoDb.transactWriteItems(any(TransactWriteItemsRequest.class)))
+                .thenReturn(TransactWriteItemsResponse.builder().build());
+
+        APIGatewayProxyResponseEvent response = transactHandler.handleRequest(event, context);
+
+        assertEquals(200, response.getStatusCode());
+        verify(dynamoDb, times(1)).transactWriteItems(any(TransactWriteItemsRequest.class));
+        verify(dynamoDb, never()).updateItem(any(UpdateItemRequest.class));
+        verify(dynamoDb, never()).batchWriteItem(any(BatchWriteItemRequest.class));
+    }
+
+    @Test
+    public void testUpgradeUserHandler_transactUserNotFound() throws Exception {
+        UpgradeOptions options = new UpgradeOptions();
+        options.setTransactWrites(true);
+        UpgradeUserHandler transactHandler = new UpgradeUserHandler(dynamoDb, null, options);
+
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        Map<String, String> claims = Map.of("sub", "11111111-2222-3333-4444-555555555555");
+        Map<String, Object> authorizer = new HashMap<>();
+        authorizer.put("claims", claims);
+
+        APIGatewayProxyRequestEvent.ProxyRequestContext rc = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        rc.setAuthorizer(authorizer);
+        event.setRequestContext(rc);
+
+        UpgradeUserForm form = new UpgradeUserForm();
+        form.setUser_boycotts(Collections.emptyList());
+        form.setUser_causes(List.of(
+                new UserCauses("user123", "cause123", "cause desc", "1754141635140")
+        ));
+        event.setBody(objectMapper.writeValueAsString(form));
+
+        when(dynamoDb.transactWriteItems(any(TransactWriteItemsRequest.class)))
+                .thenThrow(TransactionCanceledException.builder()
+                        .cancellationReasons(
+                                CancellationReason.builder().code("ConditionalCheckFailed").build(),
+                                CancellationReason.builder().code("None").build())
+                        .build());
+
+        APIGatewayProxyResponseEvent response = transactHandler.handleRequest(event, context);
+
+        assertEquals(404, response.getStatusCode());
+        assertTrue(response.getBody().contains("User not found or upgrade failed"));
+    }
+
+    @Test
+    public void testBeforeCheckpoint_primesWithoutWrites() {
+        handler.beforeCheckpoint(null);
+
+        verify(dynamoDb).describeEndpoints(any(DescribeEndpointsRequest.class));
+        verify(dynamoDb).getItem(any(GetItemRequest.class));
+        verify(dynamoDb, never()).updateItem(any(UpdateItemRequest.class));
+        verify(dynamoDb, never()).batchWriteItem(any(BatchWriteItemRequest.class));
+    }
+
+    @Test
+    public void testWarmUp_connectsWithoutAuthenticating() throws Exception {
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent().withResource("/warmup");
+
+        APIGatewayProxyResponseEvent first = handler.handleRequest(event, context);
+        APIGatewayProxyResponseEvent second = handler.handleRequest(new APIGatewayProxyRequestEvent()
+                .withResource("/warmup"), context);
+
+        assertEquals(200, first.getStatusCode());
+        Map<?, ?> body = objectMapper.readValue(first.getBody(), Map.class);
+        assertEquals(true, body.get("warm"));
+        assertEquals(true, body.get("cold_start"));
+        Map<?, ?> again = objectMapper.readValue(second.getBody(), Map.class);
+        assertEquals(false, again.get("cold_start"));
+        assertEquals(Set.of("warm", "cold_start"), body.keySet());
+        verify(dynamoDb, times(2)).describeEndpoints(any(DescribeEndpointsRequest.class));
+        verifyNoMoreInteractions(dynamoDb);
+    }
+
+}
@@ -0,0 +1,145 @@
+package com.boycottpro.users.cli;
+
+import com.boycottpro.users.harness.InMemoryDynamoDb;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BulkUpgradeTest {
+
+    @TempDir
+    Path dir;
+
+    private InMemoryDynamoDb dynamoDb;
+
+    @BeforeEach
+    public void setUp() {
+        dynamoDb = new InMemoryDynamoDb() {
+            @Override
+            public BatchWriteItemResponse batchWriteItem(BatchWriteItemRequest request) {
+                for (List<WriteRequest> writes : request.requestItems().values()) {
+                    for (WriteRequest write : writes) {
+                        if ("unlucky".equals(write.putRequest().item().get("user_id").s())) {
+                            throw new IllegalStateException("chunk failed");
+                        }
+                    }
+                }
+                return super.batchWriteItem(request);
+            }
+        };
+        for (int i = 0; i < 20; i++) {
+            seed("u" + i);
+        }
+        seed("unlucky");
+    }
+
+    private void seed(String userId) {
+        dynamoDb.seed("users", Map.of("user_id", AttributeValue.fromS(userId), "paying_user", AttributeValue.fromBool(false)));
+    }
+
+    private static String record(String sub, int boycotts) {
+        StringBuilder line = new StringBuilder("{\"sub\":\"").append(sub).append("\",\"user_boycotts\":[");
+        for (int i = 0; i < boycotts; i++) {
+            line.append(i > 0 ? "," : "").append("{\"company_id\":\"c").append(i).append("\",\"cause_id\":\"k1\"}");
+        }
+        return line.append("],\"user_causes\":[]}").toString();
+    }
+
+    private Path input(List<String> lines) throws Exception {
+        Path file = dir.resolve("export.jsonl");
+        Files.write(file, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void testRun_writesEveryRecordAndCheckpointsTheWholeFile() throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            lines.add(record("u" + i, 3));
+        }
+        Path file = input(lines);
+        Path checkpoint = dir.resolve("export.checkpoint");
+
+        BulkUpgrade.Summary summary = new BulkUpgrade(dynamoDb, 3, 4, 10, 60_000)
+                .run(file, checkpoint, dir.resolve("export.failed"));
+
+        assertEquals(20, summary.getUpgraded());
+        assertEquals(60, summary.getItemsWritten());
+        assertEquals(60, dynamoDb.items("user_boycotts").size());
+        assertEquals(Files.size(file), Checkpoint.read(checkpoint));
+        assertEquals(0, Files.size(dir.resolve("export.failed")));
+    }
+
+    @Test
+    public void testRun_resumesFromTheCheckpointedOffset() throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            lines.add(record("u" + i, 2));
+        }
+        Path file = input(lines);
+        Path checkpoint = dir.resolve("export.checkpoint");
+        long offset = 0;
+        for (int i = 0; i < 6; i++) {
+            offset += lines.get(i).length() + 1;
+        }
+        Files.writeString(checkpoint, Long.toString(offset));
+
+        BulkUpgrade.Summary summary = new BulkUpgrade(dynamoDb, 2, 4, 10, 60_000)
+                .run(file, checkpoint, dir.resolve("export.failed"));
+
+        assertEquals(4, summary.getLines());
+        assertEquals(8, dynamoDb.items("user_boycotts").size());
+        assertFalse(dynamoDb.item("users", Map.of("user_id", AttributeValue.fromS("u5"))).get("paying_user").bool());
+        assertTrue(dynamoDb.item("users", Map.of("user_id", AttributeValue.fromS("u6"))).get("paying_user").bool());
+        assertEquals(Files.size(file), Checkpoint.read(checkpoint));
+    }
+
+    @Test
+    public void testRun_copiesFailedLinesAndStillAdvances() throws Exception {
+        String failedWrite = record("unlucky", 2);
+        String unknownUser = record("nobody", 1);
+        Path file = input(List.of(record("u1", 1), "not json", failedWrite, unknownUser, record("u2", 1)));
+        Path failures = dir.resolve("export.failed");
+
+        BulkUpgrade.Summary summary = new BulkUpgrade(dynamoDb, 1, 4, 1, 60_000)
+                .run(file, dir.resolve("export.checkpoint"), failures);
+
+        assertEquals(3, summary.getFailed());
+        assertEquals(List.of("not json", failedWrite, unknownUser), Files.readAllLines(failures));
+        assertEquals(2, dynamoDb.items("user_boycotts").size());
+        assertEquals(Files.size(file), Checkpoint.read(dir.resolve("export.checkpoint")));
+    }
+
+    @Test
+    public void testReader_reportsLineEndOffsetsAndSkipsBlankLines() throws Exception {
+        Path file = dir.resolve("lines.jsonl");
+        Files.write(file, "{\"a\":1}\n\n{\"b\":2}\r\n{\"c\":3}".getBytes(StandardCharsets.UTF_8));
+
+        try (JsonlReader reader = new JsonlReader(file, 0, 4, 64)) {
+            JsonlReader.Line first = reader.next();
+            assertEquals("{\"a\":1}", first.getText());
+            assertEquals(8, first.getEndOffset());
+            JsonlReader.Line second = reader.next();
+            assertEquals("{\"b\":2}", second.getText());
+            assertEquals(1, second.getNumber());
+            assertEquals(18, second.getEndOffset());
+            JsonlReader.Line last = reader.next();
+            assertEquals("{\"c\":3}", last.getText());
+            assertEquals(Files.size(file), last.getEndOffset());
+            assertNull(reader.next());
+        }
+    }
+}
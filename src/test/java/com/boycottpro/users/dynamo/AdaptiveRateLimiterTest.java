@@ -0,0 +1,129 @@
+package com.boycottpro.users.dynamo;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class AdaptiveRateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    private AdaptiveRateLimiter limiter() {
+        return new AdaptiveRateLimiter(10, 100, 10, 0.5, now::get);
+    }
+
+    @Test
+    public void testReserve_pacesOnceTheBurstIsSpent() {
+        AdaptiveRateLimiter limiter = limiter();
+
+        assertEquals(0, limiter.reserve(100));
+        assertEquals(250, limiter.reserve(25));
+        now.addAndGet(250);
+        assertEquals(250, limiter.reserve(25));
+    }
+
+    @Test
+    public void testOnThrottled_halvesTheRateOncePerCooldown() {
+        AdaptiveRateLimiter limiter = limiter();
+
+        limiter.onThrottled();
+        limiter.onThrottled();
+        assertEquals(50.0, limiter.getRate());
+
+        now.addAndGet(AdaptiveRateLimiter.DECREASE_COOLDOWN_MILLIS);
+        limiter.onThrottled();
+        now.addAndGet(AdaptiveRateLimiter.DECREASE_COOLDOWN_MILLIS);
+        limiter.onThrottled();
+        now.addAndGet(AdaptiveRateLimiter.DECREASE_COOLDOWN_MILLIS);
+        limiter.onThrottled();
+        assertEquals(10.0, limiter.getRate());
+    }
+
+    @Test
+    public void testOnConsumed_recoversAdditivelyUpToTheShare() {
+        AdaptiveRateLimiter limiter = limiter();
+        limiter.onThrottled();
+
+        // 50 WCU written at 50 WCU/s is one second's worth: +10
+        limiter.onConsumed(50, 50);
+        assertEquals(60.0, limiter.getRate());
+        for (int i = 0; i < 100; i++) {
+            limiter.onConsumed(50, 50);
+        }
+        assertEquals(100.0, limiter.getRate());
+    }
+
+    @Test
+    public void testOnConsumed_refundsOverestimatedUnits() {
+        AdaptiveRateLimiter limiter = limiter();
+        limiter.reserve(100);
+        limiter.onConsumed(100, 40);
+
+        assertEquals(0, limiter.reserve(60));
+    }
+
+    @Test
+    public void testBatchWriter_spreadsChunksAtTheConfiguredShare() {
+        DynamoDbClient dynamoDb = mock(DynamoDbClient.class);
+        when(dynamoDb.batchWriteItem(any(BatchWriteItemRequest.class)))
+                .thenReturn(BatchWriteItemResponse.builder().build());
+        List<Long> sleeps = new ArrayList<>();
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(5, 25, 0, 0.5, now::get);
+        BatchWriter writer = new BatchWriter(dynamoDb, new RetryPolicy(10, 80, 10_000), limiter, now::get, millis -> {
+            sleeps.add(millis);
+            now.addAndGet(millis);
+        });
+        List<WriteRequest> writes = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            writes.add(WriteRequest.builder()
+                    .putRequest(PutRequest.builder().item(Map.of("user_id", AttributeValue.fromS("u" + i))).build())
+                    .build());
+        }
+
+        BatchWriteResult result = writer.write("user_boycotts", writes);
+
+        assertTrue(result.isComplete());
+        assertEquals(List.of(1000L, 1000L, 1000L), sleeps);
+        ArgumentCaptor<BatchWriteItemRequest> captor = ArgumentCaptor.forClass(BatchWriteItemRequest.class);
+        verify(dynamoDb, times(4)).batchWriteItem(captor.capture());
+        assertEquals(ReturnConsumedCapacity.TOTAL, captor.getValue().returnConsumedCapacity());
+    }
+
+    @Test
+    public void testBatchWriter_backsOffWhenItemsComeBackUnprocessed() {
+        DynamoDbClient dynamoDb = mock(DynamoDbClient.class);
+        WriteRequest write = WriteRequest.builder()
+                .putRequest(PutRequest.builder().item(Map.of("user_id", AttributeValue.fromS("u1"))).build())
+                .build();
+        when(dynamoDb.batchWriteItem(any(BatchWriteItemRequest.class)))
+                .thenReturn(BatchWriteItemResponse.builder()
+                        .unprocessedItems(Map.of("user_boycotts", List.of(write))).build())
+                .thenReturn(BatchWriteItemResponse.builder().build());
+        AdaptiveRateLimiter limiter = limiter();
+        BatchWriter writer = new BatchWriter(dynamoDb, new RetryPolicy(10, 80, 10_000), limiter, now::get,
+                now::addAndGet);
+
+        assertTrue(writer.write("user_boycotts", List.of(write, write)).isComplete());
+        assertTrue(limiter.getRate() < 100.0);
+    }
+
+    @Test
+    public void testNone_neverWaits() {
+        assertEquals(0, WriteRateLimiter.NONE.reserve(1_000_000));
+    }
+
+    @Test
+    public void testShared_isOneLimiterPerContainer() {
+        assertSame(WriteRateLimiter.shared(), WriteRateLimiter.shared());
+    }
+}
@@ -0,0 +1,112 @@
+package com.boycottpro.users.dynamo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class AsyncBatchWriterTest {
+
+    @Mock
+    private DynamoDbAsyncClient dynamoDbAsync;
+
+    private static List<WriteRequest> writes(int count) {
+        List<WriteRequest> writes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            writes.add(WriteRequest.builder()
+                    .putRequest(PutRequest.builder()
+                            .item(Map.of("user_id", AttributeValue.fromS("user" + i)))
+                            .build())
+                    .build());
+        }
+        return writes;
+    }
+
+    private static BatchWriteItemResponse done() {
+        return BatchWriteItemResponse.builder().unprocessedItems(Collections.emptyMap()).build();
+    }
+
+    @Test
+    public void testWrite_dispatchesChunksOfBothTables() {
+        when(dynamoDbAsync.batchWriteItem(any(BatchWriteItemRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(done()));
+        Map<String, List<WriteRequest>> writesByTable = new LinkedHashMap<>();
+        writesByTable.put("user_boycotts", writes(30));
+        writesByTable.put("user_causes", writes(5));
+
+        BatchWriteResult result = new AsyncBatchWriter(dynamoDbAsync, new RetryPolicy(1, 10, 1000), 4)
+                .write(writesByTable);
+
+        verify(dynamoDbAsync, times(2)).batchWriteItem(any(BatchWriteItemRequest.class));
+        assertEquals(2, result.getRequestCount());
+        assertEquals(35, result.getItemCount());
+        assertTrue(result.isComplete());
+    }
+
+    @Test
+    public void testWrite_boundsRequestsInFlight() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxSeen = new AtomicInteger();
+        Executor later = CompletableFuture.delayedExecutor(20, TimeUnit.MILLISECONDS);
+        when(dynamoDbAsync.batchWriteItem(any(BatchWriteItemRequest.class))).thenAnswer(invocation -> {
+            maxSeen.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return CompletableFuture.supplyAsync(() -> {
+                inFlight.decrementAndGet();
+                return done();
+            }, later);
+        });
+
+        BatchWriteResult result = new AsyncBatchWriter(dynamoDbAsync, new RetryPolicy(1, 10, 1000), 2)
+                .write(Map.of("user_boycotts", writes(25 * 6)));
+
+        assertEquals(6, result.getRequestCount());
+        assertTrue(maxSeen.get() <= 2, "max in flight was " + maxSeen.get());
+    }
+
+    @Test
+    public void testWrite_resubmitsUnprocessedItems() {
+        List<WriteRequest> writes = writes(4);
+        when(dynamoDbAsync.batchWriteItem(any(BatchWriteItemRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(BatchWriteItemResponse.builder()
+                        .unprocessedItems(Map.of("user_causes", writes.subList(2, 4)))
+                        .build()))
+                .thenReturn(CompletableFuture.completedFuture(done()));
+
+        BatchWriteResult result = new AsyncBatchWriter(dynamoDbAsync, new RetryPolicy(1, 10, 1000), 2)
+                .write(Map.of("user_causes", writes));
+
+        verify(dynamoDbAsync, times(2)).batchWriteItem(any(BatchWriteItemRequest.class));
+        assertEquals(List.of(1), result.getRetryCounts());
+        assertTrue(result.isComplete());
+    }
+
+    @Test
+    public void testWrite_rethrowsClientFailure() {
+        when(dynamoDbAsync.batchWriteItem(any(BatchWriteItemRequest.class)))
+                .thenReturn(CompletableFuture.failedFuture(
+                        ResourceNotFoundException.builder().message("no such table").build()));
+
+        AsyncBatchWriter writer = new AsyncBatchWriter(dynamoDbAsync, new RetryPolicy(1, 10, 1000), 2);
+
+        ResourceNotFoundException e = assertThrows(ResourceNotFoundException.class,
+                () -> writer.write(Map.of("user_causes", writes(1))));
+        assertEquals("no such table", e.getMessage());
+    }
+}
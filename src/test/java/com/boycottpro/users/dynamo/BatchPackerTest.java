@@ -0,0 +1,102 @@
+package com.boycottpro.users.dynamo;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchPackerTest {
+
+    private static WriteRequest put(String userId, String text) {
+        return WriteRequest.builder()
+                .putRequest(PutRequest.builder()
+                        .item(Map.of(
+                                "user_id", AttributeValue.fromS(userId),
+                                "cause_desc", AttributeValue.fromS(text)))
+                        .build())
+                .build();
+    }
+
+    private static List<WriteRequest> puts(int count, String text) {
+        List<WriteRequest> writes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            writes.add(put("user" + i, text));
+        }
+        return writes;
+    }
+
+    @Test
+    public void testPack_mixesTablesInOneRequest() {
+        Map<String, List<WriteRequest>> writesByTable = new LinkedHashMap<>();
+        writesByTable.put("user_boycotts", puts(3, "a"));
+        writesByTable.put("user_causes", puts(2, "b"));
+
+        List<Map<String, List<WriteRequest>>> batches = new BatchPacker().pack(writesByTable);
+
+        assertEquals(1, batches.size());
+        assertEquals(3, batches.get(0).get("user_boycotts").size());
+        assertEquals(2, batches.get(0).get("user_causes").size());
+    }
+
+    @Test
+    public void testPack_capsItemCountAcrossTables() {
+        Map<String, List<WriteRequest>> writesByTable = new LinkedHashMap<>();
+        writesByTable.put("user_boycotts", puts(20, "a"));
+        writesByTable.put("user_causes", puts(10, "b"));
+
+        List<Map<String, List<WriteRequest>>> batches = new BatchPacker().pack(writesByTable);
+
+        assertEquals(2, batches.size());
+        assertEquals(20, batches.get(0).get("user_boycotts").size());
+        assertEquals(5, batches.get(0).get("user_causes").size());
+        assertNull(batches.get(1).get("user_boycotts"));
+        assertEquals(5, batches.get(1).get("user_causes").size());
+    }
+
+    @Test
+    public void testPack_respectsRequestByteBudget() {
+        String large = "x".repeat(300 * 1024);
+        BatchPacker packer = new BatchPacker(25, 1024 * 1024);
+
+        List<Map<String, List<WriteRequest>>> batches = packer.pack(Map.of("user_boycotts", puts(7, large)));
+
+        assertEquals(3, batches.size());
+        assertEquals(3, batches.get(0).get("user_boycotts").size());
+        assertEquals(3, batches.get(1).get("user_boycotts").size());
+        assertEquals(1, batches.get(2).get("user_boycotts").size());
+    }
+
+    @Test
+    public void testFindOversized_flagsItemsOver400Kb() {
+        Map<String, List<WriteRequest>> writesByTable = new LinkedHashMap<>();
+        writesByTable.put("user_boycotts", List.of(put("u1", "ok"), put("u2", "x".repeat(401 * 1024))));
+
+        BatchPacker packer = new BatchPacker();
+        List<BatchPacker.OversizedItem> oversized = packer.findOversized(writesByTable);
+
+        assertEquals(1, oversized.size());
+        assertEquals("user_boycotts", oversized.get(0).getTableName());
+        assertEquals(1, oversized.get(0).getIndex());
+        assertThrows(IllegalArgumentException.class, () -> packer.pack(writesByTable));
+    }
+
+    @Test
+    public void testItemSizeEstimator() {
+        assertEquals(7 + 5, ItemSizeEstimator.sizeOf(Map.of("user_id", AttributeValue.fromS("abcde"))));
+        assertEquals(1 + 2, ItemSizeEstimator.sizeOf(Map.of("n", AttributeValue.fromS("é"))));
+        assertEquals(2 + 3, ItemSizeEstimator.sizeOf(Map.of("ts", AttributeValue.fromN("1234"))));
+        assertEquals(1 + 1, ItemSizeEstimator.sizeOf(Map.of("b", AttributeValue.fromBool(true))));
+        assertEquals(1 + 4, ItemSizeEstimator.sizeOf(Map.of("b",
+                AttributeValue.fromB(SdkBytes.fromByteArray(new byte[4])))));
+        assertEquals(1 + 3 + 2 + 2, ItemSizeEstimator.sizeOf(Map.of("l",
+                AttributeValue.fromL(List.of(AttributeValue.fromS("a"), AttributeValue.fromS("b"))))));
+    }
+}
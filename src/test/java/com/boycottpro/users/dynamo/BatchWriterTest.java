@@ -0,0 +1,123 @@
+package com.boycottpro.users.dynamo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BatchWriterTest {
+
+    @Mock
+    private DynamoDbClient dynamoDb;
+
+    private final AtomicLong now = new AtomicLong();
+    private final List<Long> sleeps = new ArrayList<>();
+
+    private BatchWriter writer(long timeBudgetMillis) {
+        return new BatchWriter(dynamoDb, new RetryPolicy(10, 80, timeBudgetMillis), now::get, millis -> {
+            sleeps.add(millis);
+            now.addAndGet(millis);
+        });
+    }
+
+    private static List<WriteRequest> writes(int count) {
+        List<WriteRequest> writes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            writes.add(WriteRequest.builder()
+                    .putRequest(PutRequest.builder()
+                            .item(Map.of("user_id", AttributeValue.fromS("user" + i)))
+                            .build())
+                    .build());
+        }
+        return writes;
+    }
+
+    private static BatchWriteItemResponse unprocessed(String table, List<WriteRequest> writes) {
+        return BatchWriteItemResponse.builder().unprocessedItems(Map.of(table, writes)).build();
+    }
+
+    private static BatchWriteItemResponse done() {
+        return BatchWriteItemResponse.builder().unprocessedItems(Collections.emptyMap()).build();
+    }
+
+    @Test
+    public void testWrite_splitsIntoChunksOf25() {
+        when(dynamoDb.batchWriteItem(any(BatchWriteItemRequest.class))).thenReturn(done());
+
+        BatchWriteResult result = writer(1000).write("user_boycotts", writes(60));
+
+        verify(dynamoDb, times(3)).batchWriteItem(any(BatchWriteItemRequest.class));
+        assertEquals(3, result.getRequestCount());
+        assertEquals(60, result.getItemCount());
+        assertEquals(List.of(0, 0, 0), result.getRetryCounts());
+        assertTrue(result.isComplete());
+        assertTrue(sleeps.isEmpty());
+    }
+
+    @Test
+    public void testWrite_resubmitsUnprocessedItems() {
+        List<WriteRequest> writes = writes(3);
+        when(dynamoDb.batchWriteItem(any(BatchWriteItemRequest.class)))
+                .thenReturn(unprocessed("user_causes", writes.subList(1, 3)))
+                .thenReturn(unprocessed("user_causes", writes.subList(2, 3)))
+                .thenReturn(done());
+
+        BatchWriteResult result = writer(1000).write("user_causes", writes);
+
+        verify(dynamoDb, times(3)).batchWriteItem(any(BatchWriteItemRequest.class));
+        verify(dynamoDb).batchWriteItem(BatchWriteItemRequest.builder()
+                .requestItems(Map.of("user_causes", writes.subList(2, 3)))
+                .build());
+        assertEquals(List.of(2), result.getRetryCounts());
+        assertEquals(0, result.getUnprocessedCount());
+        assertEquals(2, sleeps.size());
+        assertTrue(sleeps.get(0) <= 10);
+        assertTrue(sleeps.get(1) <= 20);
+    }
+
+    @Test
+    public void testWrite_stopsWhenTimeBudgetIsSpent() {
+        List<WriteRequest> writes = writes(2);
+        when(dynamoDb.batchWriteItem(any(BatchWriteItemRequest.class)))
+                .thenAnswer(invocation -> {
+                    now.addAndGet(40);
+                    return unprocessed("user_boycotts", writes.subList(1, 2));
+                });
+
+        BatchWriteResult result = writer(200).write("user_boycotts", writes);
+
+        assertFalse(result.isComplete());
+        assertEquals(1, result.getUnprocessedCount());
+        assertEquals(writes.subList(1, 2), result.getUnprocessedItems().get("user_boycotts"));
+        assertTrue(now.get() <= 200 + 40);
+        assertEquals(sleeps.size(), result.getTotalRetries());
+    }
+
+    @Test
+    public void testRetryPolicy_capsBackoff() {
+        RetryPolicy policy = new RetryPolicy(10, 80, 1000);
+
+        assertEquals(10, policy.ceilingMillis(0));
+        assertEquals(40, policy.ceilingMillis(2));
+        assertEquals(80, policy.ceilingMillis(3));
+        assertEquals(80, policy.ceilingMillis(60));
+        for (int i = 0; i < 50; i++) {
+            long delay = policy.backoffMillis(5);
+            assertTrue(delay >= 0 && delay <= 80);
+        }
+        assertThrows(IllegalArgumentException.class, () -> new RetryPolicy(0, 80, 1000));
+    }
+}
@@ -0,0 +1,143 @@
+package com.boycottpro.users.dynamo;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.boycottpro.users.OutboxDrainHandler;
+import com.boycottpro.users.UpgradeUserHandler;
+import com.boycottpro.users.config.UpgradeOptions;
+import com.boycottpro.users.harness.Events;
+import com.boycottpro.users.harness.InMemoryDynamoDb;
+import com.boycottpro.users.mapping.UserItems;
+import com.boycottpro.users.outbox.InMemoryOutbox;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CounterUpdaterTest {
+
+    private static final String SUB = "11111111-2222-3333-4444-555555555555";
+
+    private InMemoryDynamoDb dynamoDb;
+
+    @BeforeEach
+    public void setUp() {
+        dynamoDb = new InMemoryDynamoDb();
+        for (String company : List.of("c1", "c2")) {
+            dynamoDb.seed("companies", Map.of("company_id", AttributeValue.fromS(company)));
+        }
+        for (String cause : List.of("k1", "k2")) {
+            dynamoDb.seed("causes", Map.of("cause_id", AttributeValue.fromS(cause)));
+        }
+        dynamoDb.seed("users", Map.of("user_id", AttributeValue.fromS(SUB), "paying_user", AttributeValue.fromBool(false)));
+    }
+
+    private String count(String table, String idAttribute, String id, String counter) {
+        AttributeValue value = dynamoDb.item(table, Map.of(idAttribute, AttributeValue.fromS(id))).get(counter);
+        return value == null ? null : value.n();
+    }
+
+    private static APIGatewayProxyRequestEvent event(String body) {
+        return Events.authorized(SUB, body);
+    }
+
+    @Test
+    public void testHandler_countsEachCompanyOnceAndIgnoresReplays() {
+        UpgradeOptions options = new UpgradeOptions();
+        options.setAggregateCounters(true);
+        options.setMetrics(false);
+        UpgradeUserHandler handler = new UpgradeUserHandler(dynamoDb, null, options);
+        String body = "{\"user_boycotts\":["
+                + "{\"company_id\":\"c1\",\"cause_id\":\"k1\"},"
+                + "{\"company_id\":\"c1\",\"cause_id\":\"k2\"},"
+                + "{\"company_id\":\"ghost\",\"cause_id\":\"k1\"}],"
+                + "\"user_causes\":[{\"cause_id\":\"k1\"}]}";
+
+        assertEquals(200, handler.handleRequest(event(body), null).getStatusCode());
+        assertEquals(200, handler.handleRequest(event(body), null).getStatusCode());
+
+        assertEquals("1", count("companies", "company_id", "c1", "boycott_count"));
+        assertNull(count("companies", "company_id", "c2", "boycott_count"));
+        assertEquals("1", count("causes", "cause_id", "k1", "follower_count"));
+        assertNull(count("causes", "cause_id", "k2", "follower_count"));
+        // ADD would have created it; the condition keeps unknown ids out of the table
+        assertNull(dynamoDb.item("companies", Map.of("company_id", AttributeValue.fromS("ghost"))));
+    }
+
+    @Test
+    public void testDeltas_decrementCountedIdsOnlyWhenTheFormReplacesTheList() {
+        CounterUpdater updater = new CounterUpdater(dynamoDb, 2, "companies", "causes", "user_counter_markers");
+        Map<String, AttributeValue> c1 = UserItems.boycottItem(SUB, "c1", null, "k1", null, null, "1");
+        updater.apply(SUB, Map.of("companies", Map.of("c1", 1L)));
+        Map<String, List<WriteRequest>> form = Map.of("user_boycotts",
+                List.of(UserItems.put(UserItems.boycottItem(SUB, "c2", null, "k1", null, null, "1"))));
+
+        assertEquals(Map.of("companies", Map.of("c2", 1L)), updater.deltas(SUB, form, false));
+        assertEquals(Map.of("companies", Map.of("c2", 1L, "c1", -1L)), updater.deltas(SUB, form, true));
+        assertEquals(Map.of(), updater.deltas(SUB, Map.of("user_boycotts", List.of(UserItems.put(c1))), true));
+    }
+
+    @Test
+    public void testApply_countsAUserOnceAcrossConcurrentRequests() {
+        CounterUpdater updater = new CounterUpdater(dynamoDb, 2, "companies", "causes", "user_counter_markers");
+        Map<String, List<WriteRequest>> form = Map.of("user_boycotts",
+                List.of(UserItems.put(UserItems.boycottItem(SUB, "c1", null, "k1", null, null, "1"))));
+        // both requests read the markers before either applies
+        Map<String, Map<String, Long>> first = updater.deltas(SUB, form, false);
+        Map<String, Map<String, Long>> second = updater.deltas(SUB, form, false);
+
+        assertEquals(0, updater.apply(SUB, first));
+        assertEquals(0, updater.apply(SUB, second));
+        assertEquals("1", count("companies", "company_id", "c1", "boycott_count"));
+
+        Map<String, Map<String, Long>> drop = Map.of("companies", Map.of("c1", -1L));
+        updater.apply(SUB, drop);
+        updater.apply(SUB, drop);
+        assertEquals("0", count("companies", "company_id", "c1", "boycott_count"));
+    }
+
+    @Test
+    public void testHandler_countsRowsAnEarlierAttemptWroteWithoutCounting() {
+        // as after a 503: the rows are in place but the counters were never applied
+        dynamoDb.seed("user_boycotts", UserItems.boycottItem(SUB, "c1", null, "k1", null, null, "1"));
+        UpgradeOptions options = new UpgradeOptions();
+        options.setAggregateCounters(true);
+        options.setDeltaSync(true);
+        options.setMetrics(false);
+
+        String body = "{\"user_boycotts\":[{\"company_id\":\"c1\",\"cause_id\":\"k1\"}],\"user_causes\":[]}";
+
+        assertEquals(200, new UpgradeUserHandler(dynamoDb, null, options).handleRequest(event(body), null)
+                .getStatusCode());
+
+        assertEquals("1", count("companies", "company_id", "c1", "boycott_count"));
+    }
+
+    @Test
+    public void testDeferred_countsOnlyOnceTheDrainHasWrittenTheRows() {
+        UpgradeOptions options = new UpgradeOptions();
+        options.setAggregateCounters(true);
+        options.setDeferredWrites(true);
+        options.setMetrics(false);
+        InMemoryOutbox outbox = new InMemoryOutbox();
+        String body = "{\"user_boycotts\":[{\"company_id\":\"c1\",\"cause_id\":\"k1\"}],\"user_causes\":[]}";
+
+        assertEquals(202, new UpgradeUserHandler(dynamoDb, null, options, outbox)
+                .handleRequest(event(body), null).getStatusCode());
+        assertNull(count("companies", "company_id", "c1", "boycott_count"));
+
+        CounterUpdater updater = new CounterUpdater(dynamoDb, 2, "companies", "causes", "user_counter_markers");
+        List<String> messages = outbox.take();
+        OutboxDrainHandler drain = new OutboxDrainHandler(dynamoDb, updater);
+        for (String message : messages) {
+            // redelivered messages don't count again
+            assertTrue(drain.drain("m", message));
+            assertTrue(drain.drain("m", message));
+        }
+        assertEquals("1", count("companies", "company_id", "c1", "boycott_count"));
+    }
+}
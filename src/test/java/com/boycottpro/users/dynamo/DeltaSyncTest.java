@@ -0,0 +1,107 @@
+package com.boycottpro.users.dynamo;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.boycottpro.users.UpgradeUserHandler;
+import com.boycottpro.users.config.UpgradeOptions;
+import com.boycottpro.users.harness.Events;
+import com.boycottpro.users.harness.InMemoryDynamoDb;
+import com.boycottpro.users.mapping.UserItems;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class DeltaSyncTest {
+
+    private InMemoryDynamoDb dynamoDb;
+    private DeltaSync deltaSync;
+
+    @BeforeEach
+    public void setUp() {
+        dynamoDb = new InMemoryDynamoDb();
+        deltaSync = new DeltaSync(dynamoDb);
+        dynamoDb.seed("user_boycotts", UserItems.boycottItem("u1", "c1", "Acme", "k1", "desc", null, "1"));
+        dynamoDb.seed("user_boycotts", UserItems.boycottItem("u1", "c2", "Beta", "k1", "desc", null, "1"));
+        dynamoDb.seed("user_boycotts", UserItems.boycottItem("u1", "c3", "Gone", "k1", "desc", null, "1"));
+        dynamoDb.seed("user_causes", UserItems.causeItem("u1", "k1", "desc", "1"));
+        dynamoDb.seed("user_boycotts", UserItems.boycottItem("u2", "c9", "Other", "k1", "desc", null, "1"));
+    }
+
+    private static Map<String, List<WriteRequest>> form() {
+        Map<String, List<WriteRequest>> writesByTable = new LinkedHashMap<>();
+        writesByTable.put("user_boycotts", List.of(
+                UserItems.put(UserItems.boycottItem("u1", "c1", "Acme", "k1", "desc", null, "1")),
+                UserItems.put(UserItems.boycottItem("u1", "c2", "Beta Inc", "k1", "desc", null, "1")),
+                UserItems.put(UserItems.boycottItem("u1", "c4", "New", "k1", "desc", null, "1"))));
+        writesByTable.put("user_causes", List.of(UserItems.put(UserItems.causeItem("u1", "k1", "desc", "1"))));
+        return writesByTable;
+    }
+
+    @Test
+    public void testDiff_keepsOnlyNewAndChangedItems() {
+        Map<String, List<WriteRequest>> changed = deltaSync.diff("u1", form(), false);
+
+        assertEquals(List.of("user_boycotts"), List.copyOf(changed.keySet()));
+        List<WriteRequest> writes = changed.get("user_boycotts");
+        assertEquals(2, writes.size());
+        assertEquals("c2#k1", writes.get(0).putRequest().item().get("company_cause_id").s());
+        assertEquals("c4#k1", writes.get(1).putRequest().item().get("company_cause_id").s());
+    }
+
+    @Test
+    public void testDiff_deletesStaleItemsWhenEnabled() {
+        Map<String, List<WriteRequest>> changed = deltaSync.diff("u1", form(), true);
+
+        List<WriteRequest> writes = changed.get("user_boycotts");
+        assertEquals(3, writes.size());
+        assertEquals(Map.of("user_id", AttributeValue.fromS("u1"), "company_cause_id", AttributeValue.fromS("c3#k1")),
+                writes.get(2).deleteRequest().key());
+        assertFalse(changed.containsKey("user_causes"));
+    }
+
+    @Test
+    public void testDiff_followsQueryPages() {
+        DynamoDbClient client = mock(DynamoDbClient.class);
+        Map<String, AttributeValue> first = UserItems.causeItem("u1", "k1", "desc", "1");
+        Map<String, AttributeValue> second = UserItems.causeItem("u1", "k2", "desc", "1");
+        when(client.query(any(QueryRequest.class)))
+                .thenReturn(QueryResponse.builder().items(List.of(first))
+                        .lastEvaluatedKey(Map.of("user_id", AttributeValue.fromS("u1"), "cause_id", AttributeValue.fromS("k1")))
+                        .build())
+                .thenReturn(QueryResponse.builder().items(List.of(second)).build());
+
+        Map<String, List<WriteRequest>> changed = new DeltaSync(client).diff("u1",
+                Map.of("user_causes", List.of(UserItems.put(first), UserItems.put(second))), false);
+
+        assertTrue(changed.isEmpty());
+        verify(client, times(2)).query(argThat((QueryRequest request) -> Boolean.TRUE.equals(request.consistentRead())));
+    }
+
+    @Test
+    public void testHandler_repeatUpgradeWritesNothing() {
+        dynamoDb.seed("users", Map.of("user_id", AttributeValue.fromS("u3"), "paying_user", AttributeValue.fromBool(false)));
+        UpgradeOptions options = new UpgradeOptions();
+        options.setDeltaSync(true);
+        UpgradeUserHandler handler = new UpgradeUserHandler(dynamoDb, null, options);
+        APIGatewayProxyRequestEvent event = Events.authorized("u3",
+                "{\"user_boycotts\":[{\"company_id\":\"c1\",\"cause_id\":\"k1\"}],"
+                        + "\"user_causes\":[{\"cause_id\":\"k1\"}]}");
+
+        assertEquals(200, handler.handleRequest(event, null).getStatusCode());
+        assertEquals(200, handler.handleRequest(event, null).getStatusCode());
+
+        assertEquals(1L, dynamoDb.getStats().get("BatchWriteItem"));
+        assertEquals(4L, dynamoDb.getStats().get("Query"));
+    }
+}
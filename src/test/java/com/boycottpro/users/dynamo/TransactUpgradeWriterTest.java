@@ -0,0 +1,109 @@
+package com.boycottpro.users.dynamo;
+
+import com.boycottpro.users.harness.InMemoryDynamoDb;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class TransactUpgradeWriterTest {
+
+    @Mock
+    private DynamoDbClient dynamoDb;
+
+    private static List<WriteRequest> puts(int count) {
+        List<WriteRequest> writes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            writes.add(WriteRequest.builder()
+                    .putRequest(PutRequest.builder()
+                            .item(Map.of("user_id", AttributeValue.fromS("user123"),
+                                    "cause_id", AttributeValue.fromS("cause" + i)))
+                            .build())
+                    .build());
+        }
+        return writes;
+    }
+
+    @Test
+    public void testFits_countsTheUsersUpdate() {
+        TransactUpgradeWriter writer = new TransactUpgradeWriter(dynamoDb);
+
+        assertTrue(writer.fits(Map.of("user_causes", puts(99))));
+        assertFalse(writer.fits(Map.of("user_causes", puts(100))));
+        assertTrue(writer.fits(Map.of()));
+    }
+
+    @Test
+    public void testUpgrade_writesEverythingInOneTransaction() {
+        when(dynamoDb.transactWriteItems(any(TransactWriteItemsRequest.class)))
+                .thenReturn(TransactWriteItemsResponse.builder().build());
+        Map<String, List<WriteRequest>> writesByTable = new LinkedHashMap<>();
+        writesByTable.put("user_boycotts", puts(3));
+        writesByTable.put("user_causes", puts(2));
+
+        assertEquals(UserUpgrader.Outcome.UPGRADED, new TransactUpgradeWriter(dynamoDb).upgrade("user123", writesByTable));
+
+        ArgumentCaptor<TransactWriteItemsRequest> captor = ArgumentCaptor.forClass(TransactWriteItemsRequest.class);
+        verify(dynamoDb).transactWriteItems(captor.capture());
+        List<TransactWriteItem> items = captor.getValue().transactItems();
+        assertEquals(6, items.size());
+        assertEquals("users", items.get(0).update().tableName());
+        assertEquals("attribute_exists(user_id) AND (attribute_not_exists(paying_user) OR paying_user <> :paying)",
+                items.get(0).update().conditionExpression());
+        assertEquals("user_boycotts", items.get(1).put().tableName());
+        assertEquals("user_causes", items.get(5).put().tableName());
+    }
+
+    @Test
+    public void testUpgrade_returnsNotFoundWhenUserMissing() {
+        when(dynamoDb.transactWriteItems(any(TransactWriteItemsRequest.class)))
+                .thenThrow(TransactionCanceledException.builder()
+                        .cancellationReasons(
+                                CancellationReason.builder().code("ConditionalCheckFailed").build(),
+                                CancellationReason.builder().code("None").build())
+                        .build());
+
+        assertEquals(UserUpgrader.Outcome.NOT_FOUND,
+                new TransactUpgradeWriter(dynamoDb).upgrade("user123", Map.of("user_causes", puts(1))));
+    }
+
+    @Test
+    public void testUpgrade_rethrowsOtherCancellations() {
+        when(dynamoDb.transactWriteItems(any(TransactWriteItemsRequest.class)))
+                .thenThrow(TransactionCanceledException.builder()
+                        .cancellationReasons(
+                                CancellationReason.builder().code("None").build(),
+                                CancellationReason.builder().code("TransactionConflict").build())
+                        .build());
+
+        TransactUpgradeWriter writer = new TransactUpgradeWriter(dynamoDb);
+        assertThrows(TransactionCanceledException.class,
+                () -> writer.upgrade("user123", Map.of("user_causes", puts(1))));
+    }
+
+    @Test
+    public void testUpgrade_stillWritesItemsForAnAlreadyPremiumUser() {
+        InMemoryDynamoDb store = new InMemoryDynamoDb();
+        store.seed("users", Map.of("user_id", AttributeValue.fromS("user123"), "paying_user", AttributeValue.fromBool(true)));
+        TransactUpgradeWriter writer = new TransactUpgradeWriter(store);
+
+        assertEquals(UserUpgrader.Outcome.ALREADY_PREMIUM, writer.upgrade("user123", Map.of("user_causes", puts(2))));
+        assertEquals(2, store.items("user_causes").size());
+
+        assertEquals(UserUpgrader.Outcome.NOT_FOUND, writer.upgrade("nobody", Map.of("user_causes", puts(1))));
+        assertEquals(2, store.items("user_causes").size());
+    }
+}
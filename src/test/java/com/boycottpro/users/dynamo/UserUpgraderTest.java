@@ -0,0 +1,88 @@
+package com.boycottpro.users.dynamo;
+
+import com.boycottpro.users.UpgradeUserHandler;
+import com.boycottpro.users.config.UpgradeOptions;
+import com.boycottpro.users.harness.Events;
+import com.boycottpro.users.harness.InMemoryDynamoDb;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserUpgraderTest {
+
+    private InMemoryDynamoDb dynamoDb;
+    private UserUpgrader upgrader;
+
+    @BeforeEach
+    public void setUp() {
+        dynamoDb = new InMemoryDynamoDb();
+        upgrader = new UserUpgrader(dynamoDb);
+    }
+
+    private void seedUser(String userId, AttributeValue paying) {
+        dynamoDb.seed("users", paying == null
+                ? Map.of("user_id", AttributeValue.fromS(userId), "username", AttributeValue.fromS("name"))
+                : Map.of("user_id", AttributeValue.fromS(userId), "username", AttributeValue.fromS("name"),
+                        "paying_user", paying));
+    }
+
+    private Map<String, AttributeValue> user(String userId) {
+        return dynamoDb.item("users", Map.of("user_id", AttributeValue.fromS(userId)));
+    }
+
+    @Test
+    public void testUpgrade_freeUser() {
+        seedUser("u1", AttributeValue.fromBool(false));
+        seedUser("u2", null);
+
+        assertEquals(UserUpgrader.Outcome.UPGRADED, upgrader.upgrade("u1"));
+        assertEquals(UserUpgrader.Outcome.UPGRADED, upgrader.upgrade("u2"));
+        assertTrue(user("u1").get("paying_user").bool());
+        assertTrue(user("u2").get("paying_user").bool());
+        assertEquals("name", user("u2").get("username").s());
+    }
+
+    @Test
+    public void testUpgrade_alreadyPremium() {
+        seedUser("u1", AttributeValue.fromBool(true));
+
+        assertEquals(UserUpgrader.Outcome.ALREADY_PREMIUM, upgrader.upgrade("u1"));
+    }
+
+    @Test
+    public void testUpgrade_missingUserIsNotCreated() {
+        assertEquals(UserUpgrader.Outcome.NOT_FOUND, upgrader.upgrade("nobody"));
+        assertNull(user("nobody"));
+    }
+
+    @Test
+    public void testHandler_countsAlreadyPremiumUpgradesOnBothPaths() throws Exception {
+        seedUser("u1", AttributeValue.fromBool(true));
+        String body = "{\"user_boycotts\":[],\"user_causes\":[{\"cause_id\":\"k1\"}]}";
+        ObjectMapper objectMapper = new ObjectMapper();
+        PrintStream stdout = System.out;
+        for (boolean transact : new boolean[]{false, true}) {
+            UpgradeOptions options = new UpgradeOptions();
+            options.setTransactWrites(transact);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+            try {
+                assertEquals(200, new UpgradeUserHandler(dynamoDb, null, options)
+                        .handleRequest(Events.authorized("u1", body), null).getStatusCode());
+            } finally {
+                System.setOut(stdout);
+            }
+            String emf = out.toString(StandardCharsets.UTF_8).lines()
+                    .filter(line -> line.contains("AlreadyPremium")).findFirst().orElseThrow();
+            assertEquals(1.0, objectMapper.readTree(emf).get("AlreadyPremium").asDouble(), "transact=" + transact);
+        }
+    }
+}
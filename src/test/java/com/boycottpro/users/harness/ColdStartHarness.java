@@ -0,0 +1,120 @@
+package com.boycottpro.users.harness;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.boycottpro.models.UserBoycotts;
+import com.boycottpro.models.UserCauses;
+import com.boycottpro.users.UpgradeUserHandler;
+import com.boycottpro.users.model.UpgradeUserForm;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Measures time-to-first-response of UpgradeUserHandler in fresh JVMs, with and without
+// the SnapStart priming done in beforeCheckpoint. Each run starts a child JVM against
+// LocalDynamoDbEndpoint, so no AWS account is needed.
+//
+//   mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+//   java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+//       com.boycottpro.users.harness.ColdStartHarness 5
+public class ColdStartHarness {
+
+    private static final String RESULT = "RESULT ";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("child")) {
+            child(Boolean.parseBoolean(args[1]));
+            return;
+        }
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        List<long[]> unprimed = new ArrayList<>();
+        List<long[]> primed = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            unprimed.add(fork(false));
+            primed.add(fork(true));
+        }
+        report("unprimed", unprimed);
+        report("primed", primed);
+    }
+
+    private static long[] fork(boolean primed) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ColdStartHarness.class.getName(), "child", Boolean.toString(primed))
+                .redirectErrorStream(true)
+                .start();
+        long[] result = null;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT)) {
+                    String[] parts = line.substring(RESULT.length()).split(" ");
+                    result = new long[]{Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2])};
+                }
+            }
+        }
+        if (process.waitFor() != 0 || result == null) {
+            throw new IllegalStateException("child JVM failed (primed=" + primed + ")");
+        }
+        return result;
+    }
+
+    private static void child(boolean primed) throws Exception {
+        try (LocalDynamoDbEndpoint endpoint = new LocalDynamoDbEndpoint()) {
+            long start = System.nanoTime();
+            DynamoDbClient dynamoDb = endpoint.client();
+            UpgradeUserHandler handler = new UpgradeUserHandler(dynamoDb);
+            long init = System.nanoTime() - start;
+
+            // in production this happens before the snapshot and is not on the request path
+            long primeStart = System.nanoTime();
+            if (primed) {
+                handler.beforeCheckpoint(null);
+            }
+            long prime = System.nanoTime() - primeStart;
+
+            APIGatewayProxyRequestEvent event = sampleEvent();
+            long requestStart = System.nanoTime();
+            APIGatewayProxyResponseEvent response = handler.handleRequest(event, null);
+            long first = System.nanoTime() - requestStart;
+            if (response.getStatusCode() != 200) {
+                throw new IllegalStateException("unexpected status " + response.getStatusCode() + ": " + response.getBody());
+            }
+            System.out.println(RESULT + init / 1_000 + " " + prime / 1_000 + " " + first / 1_000);
+        }
+    }
+
+    static APIGatewayProxyRequestEvent sampleEvent() throws Exception {
+        List<UserBoycotts> boycotts = new ArrayList<>();
+        List<UserCauses> causes = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            boycotts.add(new UserBoycotts(null, "comp" + i, "company " + i, "cause" + i,
+                    "cause desc " + i, null, null, "1754141635140"));
+            causes.add(new UserCauses(null, "cause" + i, "cause desc " + i, "1754141635140"));
+        }
+        return Events.authorized("11111111-2222-3333-4444-555555555555",
+                new ObjectMapper().writeValueAsString(new UpgradeUserForm(boycotts, causes)));
+    }
+
+    private static void report(String label, List<long[]> runs) {
+        System.out.printf("%-9s init=%6.1fms prime=%6.1fms first-response=%6.1fms (median of %d)%n", label,
+                median(runs, 0), median(runs, 1), median(runs, 2), runs.size());
+    }
+
+    private static double median(List<long[]> runs, int column) {
+        List<Long> values = new ArrayList<>();
+        for (long[] run : runs) {
+            values.add(run[column]);
+        }
+        Collections.sort(values);
+        return values.get(values.size() / 2) / 1_000.0;
+    }
+}
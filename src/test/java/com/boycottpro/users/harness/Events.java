@@ -0,0 +1,25 @@
+package com.boycottpro.users.harness;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// API Gateway events the way the Cognito authorizer hands them to the handler.
+public final class Events {
+
+    private Events() {
+    }
+
+    // A request whose JWT has already been verified for sub.
+    public static APIGatewayProxyRequestEvent authorized(String sub, String body) {
+        Map<String, Object> authorizer = new HashMap<>();
+        authorizer.put("claims", Map.of("sub", sub));
+        APIGatewayProxyRequestEvent.ProxyRequestContext rc = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        rc.setAuthorizer(authorizer);
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        event.setRequestContext(rc);
+        event.setBody(body);
+        return event;
+    }
+}
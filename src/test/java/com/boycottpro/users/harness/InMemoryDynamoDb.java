@@ -0,0 +1,630 @@
+package com.boycottpro.users.harness;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// DynamoDbClient that keeps users, user_boycotts and user_causes in memory and can inject
+// per-call latency, ProvisionedThroughputExceededException and partial UnprocessedItems.
+// Only the operations and expression forms the upgrade Lambda uses are supported; anything
+// else throws UnsupportedOperationException so a gap shows up instead of passing silently.
+public class InMemoryDynamoDb implements DynamoDbClient {
+
+    public static final Map<String, List<String>> KEY_SCHEMA = Map.of(
+            "users", List.of("user_id"),
+            "user_boycotts", List.of("user_id", "company_cause_id"),
+            "user_causes", List.of("user_id", "cause_id"),
+            "user_boycott_pages", List.of("user_id", "page"),
+            "upgrade_idempotency", List.of("idempotency_key"),
+            "user_counter_markers", List.of("user_id", "counter_id"),
+            "companies", List.of("company_id"),
+            "causes", List.of("cause_id"));
+
+    public interface LatencyModel {
+        long sampleMicros(Random random);
+
+        static LatencyModel none() {
+            return random -> 0;
+        }
+
+        static LatencyModel fixed(double millis) {
+            return random -> (long) (millis * 1000);
+        }
+
+        static LatencyModel uniform(double minMillis, double maxMillis) {
+            return random -> (long) ((minMillis + random.nextDouble() * (maxMillis - minMillis)) * 1000);
+        }
+
+        // Long-tailed: most calls near the median, a few far above it.
+        static LatencyModel logNormal(double medianMillis, double sigma) {
+            return random -> (long) (medianMillis * Math.exp(sigma * random.nextGaussian()) * 1000);
+        }
+    }
+
+    public static class Faults {
+        private final Map<String, LatencyModel> latencyByOperation = new HashMap<>();
+        private LatencyModel latency = LatencyModel.none();
+        private double throttleRate;
+        private double unprocessedRate;
+
+        public LatencyModel latencyFor(String operation) {
+            return latencyByOperation.getOrDefault(operation, latency);
+        }
+
+        public void setLatency(LatencyModel latency) {
+            this.latency = latency;
+        }
+
+        public void setLatency(String operation, LatencyModel latency) {
+            latencyByOperation.put(operation, latency);
+        }
+
+        public double getThrottleRate() {
+            return throttleRate;
+        }
+
+        // Chance that a call fails with ProvisionedThroughputExceededException.
+        public void setThrottleRate(double throttleRate) {
+            this.throttleRate = throttleRate;
+        }
+
+        public double getUnprocessedRate() {
+            return unprocessedRate;
+        }
+
+        // Chance that each item in a BatchWriteItem call comes back unprocessed.
+        public void setUnprocessedRate(double unprocessedRate) {
+            this.unprocessedRate = unprocessedRate;
+        }
+    }
+
+    private final Map<String, Map<List<AttributeValue>, Map<String, AttributeValue>>> tables = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> stats = new ConcurrentHashMap<>();
+    private final Faults faults;
+    private final Random random;
+
+    public InMemoryDynamoDb() {
+        this(new Faults(), 42L);
+    }
+
+    public InMemoryDynamoDb(Faults faults, long seed) {
+        this.faults = faults;
+        this.random = new Random(seed);
+        for (String table : KEY_SCHEMA.keySet()) {
+            tables.put(table, new ConcurrentHashMap<>());
+        }
+    }
+
+    public Faults getFaults() {
+        return faults;
+    }
+
+    // Call counts per operation, plus "throttled" and "unprocessedItems" for injected faults.
+    public Map<String, Long> getStats() {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        stats.forEach((name, count) -> snapshot.put(name, count.get()));
+        return snapshot;
+    }
+
+    public Map<String, AttributeValue> item(String tableName, Map<String, AttributeValue> key) {
+        return table(tableName).get(keyOf(tableName, key));
+    }
+
+    public List<Map<String, AttributeValue>> items(String tableName) {
+        return new ArrayList<>(table(tableName).values());
+    }
+
+    public void seed(String tableName, Map<String, AttributeValue> item) {
+        table(tableName).put(keyOf(tableName, item), new HashMap<>(item));
+    }
+
+    @Override
+    public GetItemResponse getItem(GetItemRequest request) {
+        begin("GetItem");
+        Map<String, AttributeValue> item = item(request.tableName(), request.key());
+        GetItemResponse.Builder response = GetItemResponse.builder();
+        if (item != null) {
+            response.item(project(item, request.projectionExpression(), request.expressionAttributeNames()));
+        }
+        return response.build();
+    }
+
+    // Supports a partition key equality condition, Limit and ExclusiveStartKey paging.
+    @Override
+    public QueryResponse query(QueryRequest request) {
+        begin("Query");
+        String[] sides = request.keyConditionExpression().split("\\s*=\\s*", 2);
+        if (sides.length != 2 || sides[1].contains(" ")) {
+            throw new UnsupportedOperationException("key condition not supported: " + request.keyConditionExpression());
+        }
+        String tableName = request.tableName();
+        List<String> keySchema = KEY_SCHEMA.get(tableName);
+        String partitionKey = resolve(sides[0].trim(), request.expressionAttributeNames());
+        if (!partitionKey.equals(keySchema.get(0))) {
+            throw new UnsupportedOperationException("query must be on the partition key " + keySchema.get(0));
+        }
+        AttributeValue partition = request.expressionAttributeValues().get(sides[1].trim());
+        String sortKey = keySchema.size() > 1 ? keySchema.get(1) : null;
+        List<Map<String, AttributeValue>> matches = new ArrayList<>();
+        for (Map<String, AttributeValue> item : table(tableName).values()) {
+            if (partition.equals(item.get(partitionKey))) {
+                matches.add(item);
+            }
+        }
+        if (sortKey != null) {
+            matches.sort((a, b) -> a.get(sortKey).s().compareTo(b.get(sortKey).s()));
+        }
+        int from = 0;
+        if (request.hasExclusiveStartKey() && sortKey != null) {
+            String start = request.exclusiveStartKey().get(sortKey).s();
+            while (from < matches.size() && matches.get(from).get(sortKey).s().compareTo(start) <= 0) {
+                from++;
+            }
+        }
+        int to = request.limit() == null ? matches.size() : Math.min(matches.size(), from + request.limit());
+        QueryResponse.Builder response = QueryResponse.builder()
+                .items(new ArrayList<>(matches.subList(from, to)))
+                .count(to - from);
+        if (to < matches.size() && sortKey != null) {
+            Map<String, AttributeValue> last = matches.get(to - 1);
+            response.lastEvaluatedKey(Map.of(partitionKey, partition, sortKey, last.get(sortKey)));
+        }
+        return response.build();
+    }
+
+    @Override
+    public PutItemResponse putItem(PutItemRequest request) {
+        begin("PutItem");
+        synchronized (this) {
+            Map<String, AttributeValue> old = item(request.tableName(), request.item());
+            try {
+                check(request.conditionExpression(), request.expressionAttributeNames(),
+                        request.expressionAttributeValues(), old);
+            } catch (ConditionalCheckFailedException e) {
+                throw withOldItem(e, request.returnValuesOnConditionCheckFailure(), old);
+            }
+            seed(request.tableName(), request.item());
+            return PutItemResponse.builder()
+                    .attributes(request.returnValues() == ReturnValue.ALL_OLD && old != null ? old : null)
+                    .build();
+        }
+    }
+
+    @Override
+    public DeleteItemResponse deleteItem(DeleteItemRequest request) {
+        begin("DeleteItem");
+        synchronized (this) {
+            Map<String, AttributeValue> old = item(request.tableName(), request.key());
+            check(request.conditionExpression(), request.expressionAttributeNames(),
+                        request.expressionAttributeValues(), old);
+            table(request.tableName()).remove(keyOf(request.tableName(), request.key()));
+            return DeleteItemResponse.builder().build();
+        }
+    }
+
+    @Override
+    public UpdateItemResponse updateItem(UpdateItemRequest request) {
+        begin("UpdateItem");
+        synchronized (this) {
+            Map<String, AttributeValue> old = item(request.tableName(), request.key());
+            try {
+                check(request.conditionExpression(), request.expressionAttributeNames(),
+                        request.expressionAttributeValues(), old);
+            } catch (ConditionalCheckFailedException e) {
+                throw withOldItem(e, request.returnValuesOnConditionCheckFailure(), old);
+            }
+            Map<String, AttributeValue> updated = new HashMap<>(old == null ? request.key() : old);
+            List<String> changed = update(request, updated);
+            seed(request.tableName(), updated);
+            return UpdateItemResponse.builder()
+                    .attributes(returnValues(request.returnValues(), old, updated, changed))
+                    .build();
+        }
+    }
+
+    @Override
+    public BatchWriteItemResponse batchWriteItem(BatchWriteItemRequest request) {
+        begin("BatchWriteItem");
+        int itemCount = 0;
+        for (List<WriteRequest> writes : request.requestItems().values()) {
+            itemCount += writes.size();
+        }
+        if (itemCount > 25) {
+            throw DynamoDbException.builder()
+                    .message("Too many items requested for the BatchWriteItem call")
+                    .statusCode(400)
+                    .build();
+        }
+        Map<String, List<WriteRequest>> unprocessed = new LinkedHashMap<>();
+        request.requestItems().forEach((tableName, writes) -> {
+            for (WriteRequest write : writes) {
+                if (random.nextDouble() < faults.getUnprocessedRate()) {
+                    unprocessed.computeIfAbsent(tableName, t -> new ArrayList<>()).add(write);
+                    count("unprocessedItems");
+                } else if (write.putRequest() != null) {
+                    seed(tableName, write.putRequest().item());
+                } else {
+                    table(tableName).remove(keyOf(tableName, write.deleteRequest().key()));
+                }
+            }
+        });
+        return BatchWriteItemResponse.builder().unprocessedItems(unprocessed).build();
+    }
+
+    // Keys that miss are left out of the response, as DynamoDB does.
+    @Override
+    public BatchGetItemResponse batchGetItem(BatchGetItemRequest request) {
+        begin("BatchGetItem");
+        Map<String, List<Map<String, AttributeValue>>> responses = new LinkedHashMap<>();
+        Map<String, KeysAndAttributes> unprocessed = new LinkedHashMap<>();
+        request.requestItems().forEach((tableName, keys) -> {
+            List<Map<String, AttributeValue>> found = new ArrayList<>();
+            List<Map<String, AttributeValue>> skipped = new ArrayList<>();
+            for (Map<String, AttributeValue> key : keys.keys()) {
+                if (random.nextDouble() < faults.getUnprocessedRate()) {
+                    skipped.add(key);
+                    count("unprocessedKeys");
+                    continue;
+                }
+                Map<String, AttributeValue> item = item(tableName, key);
+                if (item != null) {
+                    found.add(project(item, keys.projectionExpression(), keys.expressionAttributeNames()));
+                }
+            }
+            responses.put(tableName, found);
+            if (!skipped.isEmpty()) {
+                unprocessed.put(tableName, keys.toBuilder().keys(skipped).build());
+            }
+        });
+        return BatchGetItemResponse.builder().responses(responses).unprocessedKeys(unprocessed).build();
+    }
+
+    @Override
+    public TransactWriteItemsResponse transactWriteItems(TransactWriteItemsRequest request) {
+        begin("TransactWriteItems");
+        synchronized (this) {
+            List<CancellationReason> reasons = new ArrayList<>();
+            boolean failed = false;
+            for (TransactWriteItem item : request.transactItems()) {
+                String condition = null;
+                Map<String, String> names = null;
+                Map<String, AttributeValue> values = null;
+                Map<String, AttributeValue> old = null;
+                ReturnValuesOnConditionCheckFailure returnOld = null;
+                if (item.put() != null) {
+                    condition = item.put().conditionExpression();
+                    names = item.put().expressionAttributeNames();
+                    values = item.put().expressionAttributeValues();
+                    old = item(item.put().tableName(), item.put().item());
+                    returnOld = item.put().returnValuesOnConditionCheckFailure();
+                } else if (item.delete() != null) {
+                    condition = item.delete().conditionExpression();
+                    names = item.delete().expressionAttributeNames();
+                    values = item.delete().expressionAttributeValues();
+                    old = item(item.delete().tableName(), item.delete().key());
+                    returnOld = item.delete().returnValuesOnConditionCheckFailure();
+                } else if (item.update() != null) {
+                    condition = item.update().conditionExpression();
+                    names = item.update().expressionAttributeNames();
+                    values = item.update().expressionAttributeValues();
+                    old = item(item.update().tableName(), item.update().key());
+                    returnOld = item.update().returnValuesOnConditionCheckFailure();
+                } else if (item.conditionCheck() != null) {
+                    condition = item.conditionCheck().conditionExpression();
+                    names = item.conditionCheck().expressionAttributeNames();
+                    values = item.conditionCheck().expressionAttributeValues();
+                    old = item(item.conditionCheck().tableName(), item.conditionCheck().key());
+                    returnOld = item.conditionCheck().returnValuesOnConditionCheckFailure();
+                }
+                try {
+                    check(condition, names, values, old);
+                    reasons.add(CancellationReason.builder().code("None").build());
+                } catch (ConditionalCheckFailedException e) {
+                    reasons.add(CancellationReason.builder().code("ConditionalCheckFailed")
+                            .item(returnOld == ReturnValuesOnConditionCheckFailure.ALL_OLD ? old : null)
+                            .build());
+                    failed = true;
+                }
+            }
+            if (failed) {
+                throw TransactionCanceledException.builder()
+                        .message("Transaction cancelled")
+                        .cancellationReasons(reasons)
+                        .build();
+            }
+            for (TransactWriteItem item : request.transactItems()) {
+                if (item.put() != null) {
+                    seed(item.put().tableName(), item.put().item());
+                } else if (item.delete() != null) {
+                    table(item.delete().tableName()).remove(keyOf(item.delete().tableName(), item.delete().key()));
+                } else if (item.update() != null) {
+                    Update update = item.update();
+                    Map<String, AttributeValue> old = item(update.tableName(), update.key());
+                    Map<String, AttributeValue> updated = new HashMap<>(old == null ? update.key() : old);
+                    applyExpression(update.updateExpression(), update.expressionAttributeNames(),
+                            update.expressionAttributeValues(), updated);
+                    seed(update.tableName(), updated);
+                }
+            }
+            return TransactWriteItemsResponse.builder().build();
+        }
+    }
+
+    @Override
+    public DescribeEndpointsResponse describeEndpoints(DescribeEndpointsRequest request) {
+        begin("DescribeEndpoints");
+        return DescribeEndpointsResponse.builder()
+                .endpoints(Endpoint.builder().address("localhost").cachePeriodInMinutes(1440L).build())
+                .build();
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private void begin(String operation) {
+        count(operation);
+        long micros = faults.latencyFor(operation).sampleMicros(random);
+        if (micros > 0) {
+            try {
+                Thread.sleep(micros / 1000, (int) (micros % 1000) * 1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (random.nextDouble() < faults.getThrottleRate()) {
+            count("throttled");
+            throw ProvisionedThroughputExceededException.builder()
+                    .message("The level of configured provisioned throughput for the table was exceeded")
+                    .statusCode(400)
+                    .build();
+        }
+    }
+
+    private void count(String name) {
+        stats.computeIfAbsent(name, n -> new AtomicLong()).incrementAndGet();
+    }
+
+    private Map<List<AttributeValue>, Map<String, AttributeValue>> table(String tableName) {
+        Map<List<AttributeValue>, Map<String, AttributeValue>> table = tables.get(tableName);
+        if (table == null) {
+            throw ResourceNotFoundException.builder().message("Requested resource not found: " + tableName).build();
+        }
+        return table;
+    }
+
+    private static List<AttributeValue> keyOf(String tableName, Map<String, AttributeValue> item) {
+        List<AttributeValue> key = new ArrayList<>();
+        for (String attribute : KEY_SCHEMA.get(tableName)) {
+            AttributeValue value = item.get(attribute);
+            if (value == null) {
+                throw DynamoDbException.builder()
+                        .message("One of the required keys was not given a value: " + attribute)
+                        .statusCode(400)
+                        .build();
+            }
+            key.add(value);
+        }
+        return key;
+    }
+
+    private static ConditionalCheckFailedException withOldItem(ConditionalCheckFailedException e,
+                                                               ReturnValuesOnConditionCheckFailure returnValues,
+                                                               Map<String, AttributeValue> old) {
+        if (returnValues != ReturnValuesOnConditionCheckFailure.ALL_OLD || old == null) {
+            return e;
+        }
+        return ConditionalCheckFailedException.builder()
+                .message(e.getMessage())
+                .statusCode(400)
+                .item(old)
+                .build();
+    }
+
+    private static String resolve(String name, Map<String, String> names) {
+        return name.startsWith("#") && names != null ? names.get(name) : name;
+    }
+
+    private static void check(String condition, Map<String, String> names, Map<String, AttributeValue> values,
+                              Map<String, AttributeValue> item) {
+        if (condition == null || condition.isBlank()) {
+            return;
+        }
+        if (!evaluate(condition.trim(), names, values, item)) {
+            throw ConditionalCheckFailedException.builder()
+                    .message("The conditional request failed")
+                    .statusCode(400)
+                    .build();
+        }
+    }
+
+    // Supports attribute_exists(a), attribute_not_exists(a), a = :v and a <> :v, combined
+    // with AND, OR and parentheses.
+    private static boolean evaluate(String condition, Map<String, String> names, Map<String, AttributeValue> values,
+                                    Map<String, AttributeValue> item) {
+        List<String> anyOf = splitTopLevel(condition, "OR");
+        if (anyOf.size() > 1) {
+            for (String clause : anyOf) {
+                if (evaluate(clause, names, values, item)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        List<String> allOf = splitTopLevel(condition, "AND");
+        if (allOf.size() > 1) {
+            for (String clause : allOf) {
+                if (!evaluate(clause, names, values, item)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        String clause = condition.trim();
+        if (clause.startsWith("(") && clause.endsWith(")")) {
+            return evaluate(clause.substring(1, clause.length() - 1), names, values, item);
+        }
+        if (clause.startsWith("attribute_exists(")) {
+            String name = resolve(clause.substring(17, clause.length() - 1).trim(), names);
+            return item != null && item.containsKey(name);
+        }
+        if (clause.startsWith("attribute_not_exists(")) {
+            String name = resolve(clause.substring(21, clause.length() - 1).trim(), names);
+            return item == null || !item.containsKey(name);
+        }
+        String[] sides = clause.split("\\s*(<>|=)\\s*", 2);
+        if (sides.length == 2) {
+            AttributeValue actual = item == null ? null : item.get(resolve(sides[0].trim(), names));
+            AttributeValue expected = values.get(sides[1].trim());
+            if (actual == null) {
+                return false;
+            }
+            return clause.contains("<>") != actual.equals(expected);
+        }
+        throw new UnsupportedOperationException("condition not supported: " + clause);
+    }
+
+    private static List<String> splitTopLevel(String condition, String operator) {
+        List<String> parts = new ArrayList<>();
+        String token = " " + operator + " ";
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < condition.length(); i++) {
+            char c = condition.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && condition.regionMatches(true, i, token, 0, token.length())) {
+                parts.add(condition.substring(start, i));
+                start = i + token.length();
+                i = start - 1;
+            }
+        }
+        parts.add(condition.substring(start));
+        return parts;
+    }
+
+    private static List<String> update(UpdateItemRequest request, Map<String, AttributeValue> item) {
+        if (request.hasAttributeUpdates()) {
+            List<String> changed = new ArrayList<>();
+            request.attributeUpdates().forEach((name, update) -> {
+                if (update.action() == AttributeAction.DELETE) {
+                    item.remove(name);
+                } else {
+                    item.put(name, update.value());
+                }
+                changed.add(name);
+            });
+            return changed;
+        }
+        return applyExpression(request.updateExpression(), request.expressionAttributeNames(),
+                request.expressionAttributeValues(), item);
+    }
+
+    // Supports "SET a = :v, ...", "ADD n :v, ..." and "REMOVE a, ..." clauses in any order.
+    private static List<String> applyExpression(String expression, Map<String, String> names,
+                                                Map<String, AttributeValue> values,
+                                                Map<String, AttributeValue> item) {
+        List<String> changed = new ArrayList<>();
+        if (expression == null) {
+            return changed;
+        }
+        for (String section : expression.trim().split("(?i)\\s+(?=(SET|ADD|REMOVE)\\s)")) {
+            String[] parts = section.trim().split("\\s+", 2);
+            String action = parts[0].toUpperCase();
+            for (String assignment : parts[1].split(",")) {
+                String clause = assignment.trim();
+                switch (action) {
+                    case "SET": {
+                        String[] sides = clause.split("=", 2);
+                        String name = resolve(sides[0].trim(), names);
+                        item.put(name, values.get(sides[1].trim()));
+                        changed.add(name);
+                        break;
+                    }
+                    case "ADD": {
+                        String[] sides = clause.split("\\s+", 2);
+                        String name = resolve(sides[0].trim(), names);
+                        AttributeValue current = item.get(name);
+                        long base = current == null ? 0 : Long.parseLong(current.n());
+                        long delta = Long.parseLong(values.get(sides[1].trim()).n());
+                        item.put(name, AttributeValue.fromN(Long.toString(base + delta)));
+                        changed.add(name);
+                        break;
+                    }
+                    case "REMOVE": {
+                        String name = resolve(clause, names);
+                        item.remove(name);
+                        changed.add(name);
+                        break;
+                    }
+                    default:
+                        throw new UnsupportedOperationException("update action not supported: " + action);
+                }
+            }
+        }
+        return changed;
+    }
+
+    private static Map<String, AttributeValue> returnValues(ReturnValue returnValue, Map<String, AttributeValue> old,
+                                                           Map<String, AttributeValue> updated, List<String> changed) {
+        if (returnValue == null) {
+            return null;
+        }
+        switch (returnValue) {
+            case ALL_NEW:
+                return updated;
+            case ALL_OLD:
+                return old;
+            case UPDATED_NEW: {
+                Map<String, AttributeValue> attributes = new HashMap<>();
+                for (String name : changed) {
+                    if (updated.containsKey(name)) {
+                        attributes.put(name, updated.get(name));
+                    }
+                }
+                return attributes;
+            }
+            case UPDATED_OLD: {
+                Map<String, AttributeValue> attributes = new HashMap<>();
+                for (String name : changed) {
+                    if (old != null && old.containsKey(name)) {
+                        attributes.put(name, old.get(name));
+                    }
+                }
+                return attributes;
+            }
+            default:
+                return null;
+        }
+    }
+
+    private static Map<String, AttributeValue> project(Map<String, AttributeValue> item, String projection,
+                                                       Map<String, String> names) {
+        if (projection == null || projection.isBlank()) {
+            return item;
+        }
+        Map<String, AttributeValue> projected = new HashMap<>();
+        for (String name : projection.split(",")) {
+            String resolved = resolve(name.trim(), names);
+            if (item.containsKey(resolved)) {
+                projected.put(resolved, item.get(resolved));
+            }
+        }
+        return projected;
+    }
+}
@@ -0,0 +1,84 @@
+package com.boycottpro.users.harness;
+
+import com.boycottpro.users.config.UpgradeOptions;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InMemoryDynamoDbTest {
+
+    private static WriteRequest cause(String userId, String causeId) {
+        return WriteRequest.builder()
+                .putRequest(PutRequest.builder()
+                        .item(Map.of("user_id", AttributeValue.fromS(userId), "cause_id", AttributeValue.fromS(causeId)))
+                        .build())
+                .build();
+    }
+
+    @Test
+    public void testBatchWriteItem_returnsInjectedUnprocessedItems() {
+        InMemoryDynamoDb.Faults faults = new InMemoryDynamoDb.Faults();
+        faults.setUnprocessedRate(0.5);
+        InMemoryDynamoDb dynamoDb = new InMemoryDynamoDb(faults, 7L);
+        List<WriteRequest> writes = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            writes.add(cause("u1", "cause" + i));
+        }
+
+        BatchWriteItemResponse response = dynamoDb.batchWriteItem(BatchWriteItemRequest.builder()
+                .requestItems(Map.of("user_causes", writes))
+                .build());
+
+        int unprocessed = response.unprocessedItems().getOrDefault("user_causes", List.of()).size();
+        assertTrue(unprocessed > 0 && unprocessed < 20);
+        assertEquals(20 - unprocessed, dynamoDb.items("user_causes").size());
+        assertEquals((long) unprocessed, dynamoDb.getStats().get("unprocessedItems"));
+    }
+
+    @Test
+    public void testUpdateItem_honoursConditionAndUpdatedNew() {
+        InMemoryDynamoDb dynamoDb = new InMemoryDynamoDb();
+        dynamoDb.seed("users", Map.of("user_id", AttributeValue.fromS("u1"), "username", AttributeValue.fromS("a")));
+        UpdateItemRequest.Builder request = UpdateItemRequest.builder()
+                .tableName("users")
+                .updateExpression("SET paying_user = :paying")
+                .conditionExpression("attribute_exists(user_id)")
+                .expressionAttributeValues(Map.of(":paying", AttributeValue.fromBool(true)))
+                .returnValues(ReturnValue.UPDATED_NEW);
+
+        UpdateItemResponse response = dynamoDb.updateItem(request.key(Map.of("user_id", AttributeValue.fromS("u1"))).build());
+
+        assertEquals(Map.of("paying_user", AttributeValue.fromBool(true)), response.attributes());
+        assertThrows(ConditionalCheckFailedException.class,
+                () -> dynamoDb.updateItem(request.key(Map.of("user_id", AttributeValue.fromS("u2"))).build()));
+        assertNull(dynamoDb.item("users", Map.of("user_id", AttributeValue.fromS("u2"))));
+    }
+
+    @Test
+    public void testLoadDriver_noAcknowledgedDataLostUnderPartialThrottling() throws Exception {
+        InMemoryDynamoDb.Faults faults = new InMemoryDynamoDb.Faults();
+        faults.setUnprocessedRate(0.3);
+        InMemoryDynamoDb dynamoDb = new InMemoryDynamoDb(faults, 11L);
+
+        LoadDriver.Report report = LoadDriver.run(dynamoDb, new UpgradeOptions(), 4, 40, 11L);
+
+        assertEquals(Map.of(200, 40), report.statusCounts);
+        assertTrue(report.expectedItems > 0);
+        assertEquals(0, report.lostItems);
+        assertEquals(0, report.usersNotUpgraded);
+        assertTrue(dynamoDb.getStats().get("unprocessedItems") > 0);
+    }
+}
@@ -0,0 +1,178 @@
+package com.boycottpro.users.harness;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.boycottpro.models.UserBoycotts;
+import com.boycottpro.models.UserCauses;
+import com.boycottpro.users.UpgradeUserHandler;
+import com.boycottpro.users.config.UpgradeOptions;
+import com.boycottpro.users.mapping.UserItems;
+import com.boycottpro.users.model.UpgradeUserForm;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Replays upgrade requests from several threads against UpgradeUserHandler backed by
+// InMemoryDynamoDb, then checks the store: every item of a request that got a 200 must be
+// there, anything missing is reported as lost. Prints status counts and latency percentiles.
+//
+//   java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+//       com.boycottpro.users.harness.LoadDriver <threads> <requests> <throttleRate> <unprocessedRate> <medianLatencyMs>
+public class LoadDriver {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    public static class Report {
+        public final Map<Integer, Integer> statusCounts = new TreeMap<>();
+        public final List<Long> latenciesMicros = new ArrayList<>();
+        public long expectedItems;
+        public long lostItems;
+        public long usersNotUpgraded;
+        public long elapsedMillis;
+
+        public long percentileMicros(double percentile) {
+            List<Long> sorted = new ArrayList<>(latenciesMicros);
+            Collections.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+            return sorted.get(Math.max(index, 0));
+        }
+    }
+
+    private static class Sent {
+        final String userId;
+        final UpgradeUserForm form;
+
+        Sent(String userId, UpgradeUserForm form) {
+            this.userId = userId;
+            this.form = form;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        InMemoryDynamoDb.Faults faults = new InMemoryDynamoDb.Faults();
+        faults.setThrottleRate(args.length > 2 ? Double.parseDouble(args[2]) : 0.0);
+        faults.setUnprocessedRate(args.length > 3 ? Double.parseDouble(args[3]) : 0.1);
+        double medianLatency = args.length > 4 ? Double.parseDouble(args[4]) : 5.0;
+        faults.setLatency(InMemoryDynamoDb.LatencyModel.logNormal(medianLatency, 0.5));
+
+        InMemoryDynamoDb dynamoDb = new InMemoryDynamoDb(faults, 42L);
+        Report report = run(dynamoDb, UpgradeOptions.fromEnvironment(), threads, requests, 42L);
+
+        System.out.printf("requests=%d threads=%d elapsed=%dms throughput=%.1f req/s%n", requests, threads,
+                report.elapsedMillis, requests * 1000.0 / Math.max(report.elapsedMillis, 1));
+        System.out.println("status " + report.statusCounts);
+        System.out.printf("latency p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms%n",
+                report.percentileMicros(50) / 1000.0, report.percentileMicros(90) / 1000.0,
+                report.percentileMicros(99) / 1000.0, report.percentileMicros(100) / 1000.0);
+        System.out.println("items expected=" + report.expectedItems + " lost=" + report.lostItems
+                + " usersNotUpgraded=" + report.usersNotUpgraded);
+        System.out.println("dynamodb " + dynamoDb.getStats());
+    }
+
+    public static Report run(InMemoryDynamoDb dynamoDb, UpgradeOptions options, int threads, int requests,
+                             long seed) throws Exception {
+        Random random = new Random(seed);
+        List<Sent> sent = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            String userId = "load-user-" + i;
+            dynamoDb.seed("users", Map.of(
+                    "user_id", AttributeValue.fromS(userId),
+                    "email_addr", AttributeValue.fromS(userId + "@example.com"),
+                    "username", AttributeValue.fromS(userId),
+                    "created_ts", AttributeValue.fromN("1754141635140"),
+                    "paying_user", AttributeValue.fromBool(false)));
+            sent.add(new Sent(userId, randomForm(random)));
+        }
+
+        UpgradeUserHandler handler = new UpgradeUserHandler(dynamoDb, null, options);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<long[]>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (Sent request : sent) {
+            APIGatewayProxyRequestEvent event = event(request);
+            results.add(executor.submit(() -> {
+                long requestStart = System.nanoTime();
+                APIGatewayProxyResponseEvent response = handler.handleRequest(event, null);
+                return new long[]{response.getStatusCode(), (System.nanoTime() - requestStart) / 1_000};
+            }));
+        }
+
+        Report report = new Report();
+        List<Integer> statuses = new ArrayList<>();
+        for (Future<long[]> result : results) {
+            long[] outcome = result.get();
+            statuses.add((int) outcome[0]);
+            report.statusCounts.merge((int) outcome[0], 1, Integer::sum);
+            report.latenciesMicros.add(outcome[1]);
+        }
+        report.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        executor.shutdown();
+
+        for (int i = 0; i < sent.size(); i++) {
+            if (statuses.get(i) == 200) {
+                verify(dynamoDb, sent.get(i), report);
+            }
+        }
+        return report;
+    }
+
+    // Acknowledged requests only: a 503 tells the client its data was not all written.
+    private static void verify(InMemoryDynamoDb dynamoDb, Sent request, Report report) {
+        String userId = request.userId;
+        Map<String, AttributeValue> user = dynamoDb.item("users", Map.of("user_id", AttributeValue.fromS(userId)));
+        if (user == null || !Boolean.TRUE.equals(user.get("paying_user").bool())) {
+            report.usersNotUpgraded++;
+        }
+        for (UserBoycotts boycott : request.form.getUser_boycotts()) {
+            report.expectedItems++;
+            String companyCauseId = UserItems.companyCauseId(boycott.getCompany_id(), boycott.getCause_id(),
+                    boycott.getPersonal_reason());
+            if (dynamoDb.item("user_boycotts", Map.of(
+                    "user_id", AttributeValue.fromS(userId),
+                    "company_cause_id", AttributeValue.fromS(companyCauseId))) == null) {
+                report.lostItems++;
+            }
+        }
+        for (UserCauses cause : request.form.getUser_causes()) {
+            report.expectedItems++;
+            if (dynamoDb.item("user_causes", Map.of(
+                    "user_id", AttributeValue.fromS(userId),
+                    "cause_id", AttributeValue.fromS(cause.getCause_id()))) == null) {
+                report.lostItems++;
+            }
+        }
+    }
+
+    // Most users boycott a handful of companies; a few import long lists.
+    static UpgradeUserForm randomForm(Random random) {
+        int boycottCount = random.nextDouble() < 0.9 ? 1 + random.nextInt(15) : 50 + random.nextInt(250);
+        int causeCount = 1 + random.nextInt(10);
+        List<UserBoycotts> boycotts = new ArrayList<>();
+        for (int i = 0; i < boycottCount; i++) {
+            String causeId = "cause" + random.nextInt(causeCount);
+            String reason = random.nextDouble() < 0.2 ? "my own reason " + i : null;
+            boycotts.add(new UserBoycotts(null, "company" + i, "Company " + i, causeId,
+                    "description of " + causeId, null, reason, "1754141635140"));
+        }
+        List<UserCauses> causes = new ArrayList<>();
+        for (int i = 0; i < causeCount; i++) {
+            causes.add(new UserCauses(null, "cause" + i, "description of cause" + i, "1754141635140"));
+        }
+        return new UpgradeUserForm(boycotts, causes);
+    }
+
+    private static APIGatewayProxyRequestEvent event(Sent request) throws Exception {
+        return Events.authorized(request.userId, objectMapper.writeValueAsString(request.form));
+    }
+}
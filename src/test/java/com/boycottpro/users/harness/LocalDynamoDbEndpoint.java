@@ -0,0 +1,84 @@
+package com.boycottpro.users.harness;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+// Answers the DynamoDB JSON protocol with canned responses on localhost, so a real
+// DynamoDbClient (marshallers, HTTP client, connection pool) can be exercised offline.
+public class LocalDynamoDbEndpoint implements AutoCloseable {
+
+    private static final String UPDATE_ITEM = "{\"Attributes\":{"
+            + "\"user_id\":{\"S\":\"user123\"},"
+            + "\"email_addr\":{\"S\":\"email@email.com\"},"
+            + "\"username\":{\"S\":\"username\"},"
+            + "\"created_ts\":{\"N\":\"100\"},"
+            + "\"paying_user\":{\"BOOL\":true}}}";
+    private static final String BATCH_WRITE_ITEM = "{\"UnprocessedItems\":{}}";
+    private static final String DESCRIBE_ENDPOINTS = "{\"Endpoints\":[{\"Address\":\"localhost\",\"CachePeriodInMinutes\":1440}]}";
+
+    private final HttpServer server;
+
+    public LocalDynamoDbEndpoint() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public URI uri() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    public DynamoDbClient client() {
+        return DynamoDbClient.builder()
+                .httpClient(UrlConnectionHttpClient.create())
+                .endpointOverride(uri())
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("local", "local")))
+                .build();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            in.readAllBytes();
+        }
+        String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+        String operation = target == null ? "" : target.substring(target.indexOf('.') + 1);
+        String body;
+        switch (operation) {
+            case "UpdateItem":
+                body = UPDATE_ITEM;
+                break;
+            case "BatchWriteItem":
+                body = BATCH_WRITE_ITEM;
+                break;
+            case "DescribeEndpoints":
+                body = DESCRIBE_ENDPOINTS;
+                break;
+            default:
+                body = "{}";
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/x-amz-json-1.0");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
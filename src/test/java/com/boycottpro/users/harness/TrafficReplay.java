@@ -0,0 +1,306 @@
+package com.boycottpro.users.harness;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.boycottpro.users.UpgradeUserHandler;
+import com.boycottpro.users.config.UpgradeOptions;
+import com.boycottpro.users.http.HttpBodies;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Captures anonymized upgrade bodies into a corpus and replays the corpus through
+// UpgradeUserHandler against InMemoryDynamoDb (no injected latency), one request at a time,
+// measuring wall time and allocated bytes per request over repeated passes. The result is
+// compared with a committed baseline and the run fails when p95 latency or mean allocation
+// regresses past the tolerances (replay.p95Tolerance, default 0.25; replay.allocTolerance,
+// default 0.15), or when the mix of status codes changes. Latency is compared after
+// dividing by a fixed JDK-only calibration workload timed in the same JVM, so a baseline
+// recorded on one machine still means something on another; allocation is compared as is.
+//
+//   capture: java ... TrafficReplay capture <events.jsonl> <corpus.jsonl>
+//   replay:  java ... TrafficReplay replay <corpus.jsonl> <baseline.json> [--update-baseline]
+//
+// capture reads one API Gateway event (or bare body) per line, decodes base64/compressed
+// bodies, keeps only user_boycotts and user_causes, and masks personal_reason text with
+// same-length filler so the corpus keeps production's sizes but no user content. The sub
+// never enters the corpus; replay assigns its own.
+public class TrafficReplay {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .enable(SerializationFeature.INDENT_OUTPUT);
+
+    public static class Result {
+        public final Map<Integer, Integer> statusCounts = new TreeMap<>();
+        public final List<Long> latenciesNanos = new ArrayList<>();
+        public final List<Long> allocatedBytes = new ArrayList<>();
+        public long calibrationNanos;
+
+        public long percentile(List<Long> values, double percentile) {
+            List<Long> sorted = new ArrayList<>(values);
+            Collections.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+            return sorted.get(Math.max(index, 0));
+        }
+
+        public double meanAllocatedBytes() {
+            double total = 0;
+            for (long bytes : allocatedBytes) {
+                total += bytes;
+            }
+            return total / Math.max(allocatedBytes.size(), 1);
+        }
+
+        // p95 latency in units of the calibration workload.
+        public double normalizedP95() {
+            return (double) percentile(latenciesNanos, 95) / calibrationNanos;
+        }
+
+        public Map<String, Object> toBaseline() {
+            Map<String, Object> baseline = new LinkedHashMap<>();
+            baseline.put("requests", latenciesNanos.size());
+            baseline.put("status_counts", statusCounts);
+            baseline.put("p50_micros", percentile(latenciesNanos, 50) / 1_000);
+            baseline.put("p95_micros", percentile(latenciesNanos, 95) / 1_000);
+            baseline.put("p99_micros", percentile(latenciesNanos, 99) / 1_000);
+            baseline.put("calibration_micros", calibrationNanos / 1_000);
+            baseline.put("p95_normalized", normalizedP95());
+            baseline.put("alloc_mean_bytes", Math.round(meanAllocatedBytes()));
+            baseline.put("alloc_p95_bytes", percentile(allocatedBytes, 95));
+            return baseline;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 3 && args[0].equals("capture")) {
+            int[] counts = capture(Paths.get(args[1]), Paths.get(args[2]));
+            System.out.println("captured " + counts[0] + " bodies, skipped " + counts[1]);
+            return;
+        }
+        if (args.length >= 3 && args[0].equals("replay")) {
+            System.exit(replay(Paths.get(args[1]), Paths.get(args[2]),
+                    args.length > 3 && args[3].equals("--update-baseline")));
+        }
+        System.err.println("usage: TrafficReplay capture <events.jsonl> <corpus.jsonl>");
+        System.err.println("       TrafficReplay replay <corpus.jsonl> <baseline.json> [--update-baseline]");
+        System.exit(2);
+    }
+
+    public static int[] capture(Path events, Path corpus) throws Exception {
+        int captured = 0;
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(events, StandardCharsets.UTF_8);
+             BufferedWriter writer = Files.newBufferedWriter(corpus, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    writer.write(anonymize(body(objectMapper.readTree(line))));
+                    writer.newLine();
+                    captured++;
+                } catch (Exception e) {
+                    skipped++;
+                }
+            }
+        }
+        return new int[]{captured, skipped};
+    }
+
+    // The request body of a logged API Gateway event, or the line itself when it is a bare body.
+    static String body(JsonNode line) throws Exception {
+        if (!line.has("body") || !(line.has("requestContext") || line.has("headers") || line.has("httpMethod"))) {
+            return objectMapper.writeValueAsString(line);
+        }
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        event.setBody(line.get("body").asText());
+        event.setIsBase64Encoded(line.path("isBase64Encoded").asBoolean(false));
+        Map<String, String> headers = new HashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = line.path("headers").fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> header = fields.next();
+            headers.put(header.getKey(), header.getValue().asText());
+        }
+        event.setHeaders(headers);
+        try (InputStream body = HttpBodies.openRequestBody(event, 32L * 1024 * 1024)) {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    static String anonymize(String body) throws Exception {
+        JsonNode root = objectMapper.readTree(body);
+        ObjectNode anonymized = objectMapper.createObjectNode();
+        for (String list : List.of("user_boycotts", "user_causes")) {
+            JsonNode entries = root.get(list);
+            if (entries == null || !entries.isArray()) {
+                continue;
+            }
+            ArrayNode copy = anonymized.putArray(list);
+            for (JsonNode entry : entries) {
+                if (entry.isObject()) {
+                    ObjectNode masked = ((ObjectNode) entry).deepCopy();
+                    masked.remove("user_id");
+                    JsonNode reason = masked.get("personal_reason");
+                    if (reason != null && reason.isTextual()) {
+                        masked.put("personal_reason", "x".repeat(reason.asText().length()));
+                    }
+                    copy.add(masked);
+                } else {
+                    copy.add(entry);
+                }
+            }
+        }
+        return new ObjectMapper().writeValueAsString(anonymized);
+    }
+
+    // Returns the process exit code: 0 when within tolerance (or the baseline was written).
+    public static int replay(Path corpus, Path baselinePath, boolean updateBaseline) throws Exception {
+        List<String> bodies = new ArrayList<>();
+        for (String line : Files.readAllLines(corpus, StandardCharsets.UTF_8)) {
+            if (!line.isBlank()) {
+                bodies.add(line);
+            }
+        }
+        int warmup = Integer.getInteger("replay.warmupPasses", 30);
+        int passes = Integer.getInteger("replay.passes", 30);
+        Result result = run(bodies, warmup, passes);
+        Map<String, Object> measured = result.toBaseline();
+        System.out.println("replay " + measured);
+
+        if (updateBaseline || !Files.exists(baselinePath)) {
+            Files.writeString(baselinePath, objectMapper.writeValueAsString(measured) + "\n");
+            System.out.println("baseline written to " + baselinePath);
+            return 0;
+        }
+        JsonNode baseline = objectMapper.readTree(baselinePath.toFile());
+        double p95Tolerance = Double.parseDouble(System.getProperty("replay.p95Tolerance", "0.25"));
+        double allocTolerance = Double.parseDouble(System.getProperty("replay.allocTolerance", "0.15"));
+        List<String> regressions = compare(baseline, result, p95Tolerance, allocTolerance);
+        if (regressions.isEmpty()) {
+            System.out.println("within tolerance of " + baselinePath);
+            return 0;
+        }
+        for (String regression : regressions) {
+            System.out.println("REGRESSION " + regression);
+        }
+        return 1;
+    }
+
+    static List<String> compare(JsonNode baseline, Result result, double p95Tolerance, double allocTolerance) {
+        List<String> regressions = new ArrayList<>();
+        Map<String, Integer> expectedStatuses = new TreeMap<>();
+        baseline.path("status_counts").fields()
+                .forEachRemaining(status -> expectedStatuses.put(status.getKey(), status.getValue().asInt()));
+        Map<String, Integer> statuses = new TreeMap<>();
+        result.statusCounts.forEach((status, count) -> statuses.put(String.valueOf(status), count));
+        if (!expectedStatuses.equals(statuses)) {
+            regressions.add("status counts " + statuses + " differ from the baseline's " + expectedStatuses);
+        }
+        double p95 = result.normalizedP95();
+        double baselineP95 = baseline.path("p95_normalized").asDouble();
+        if (p95 > baselineP95 * (1 + p95Tolerance)) {
+            regressions.add(String.format("p95 latency %.2f calibration units vs baseline %.2f (+%.0f%%, limit +%.0f%%)",
+                    p95, baselineP95, (p95 / baselineP95 - 1) * 100, p95Tolerance * 100));
+        }
+        double alloc = result.meanAllocatedBytes();
+        double baselineAlloc = baseline.path("alloc_mean_bytes").asDouble();
+        if (alloc > baselineAlloc * (1 + allocTolerance)) {
+            regressions.add(String.format("mean allocation %.0f B/request vs baseline %.0f (+%.0f%%, limit +%.0f%%)",
+                    alloc, baselineAlloc, (alloc / baselineAlloc - 1) * 100, allocTolerance * 100));
+        }
+        return regressions;
+    }
+
+    public static Result run(List<String> bodies, int warmupPasses, int passes) {
+        InMemoryDynamoDb dynamoDb = new InMemoryDynamoDb();
+        List<APIGatewayProxyRequestEvent> events = new ArrayList<>();
+        for (int i = 0; i < bodies.size(); i++) {
+            String userId = "replay-user-" + i;
+            dynamoDb.seed("users", Map.of("user_id", AttributeValue.fromS(userId),
+                    "paying_user", AttributeValue.fromBool(false)));
+            events.add(Events.authorized(userId, bodies.get(i)));
+        }
+        // the default options, with the per-request EMF line kept but not printed
+        UpgradeUserHandler handler = new UpgradeUserHandler(dynamoDb, null, new UpgradeOptions());
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Result result = new Result();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            long[][] latencies = new long[events.size()][passes];
+            long[][] allocations = new long[events.size()][passes];
+            for (int pass = 0; pass < warmupPasses + passes; pass++) {
+                if (pass == warmupPasses) {
+                    result.calibrationNanos = calibrate();
+                }
+                for (int i = 0; i < events.size(); i++) {
+                    long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+                    long start = System.nanoTime();
+                    int status = handler.handleRequest(events.get(i), null).getStatusCode();
+                    long elapsed = System.nanoTime() - start;
+                    long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+                    if (pass >= warmupPasses) {
+                        latencies[i][pass - warmupPasses] = elapsed;
+                        allocations[i][pass - warmupPasses] = allocated;
+                    }
+                    if (pass == warmupPasses) {
+                        result.statusCounts.merge(status, 1, Integer::sum);
+                    }
+                }
+            }
+            result.calibrationNanos = Math.min(result.calibrationNanos, calibrate());
+            // each request's best pass, which is what it costs when nothing else (GC, the JIT,
+            // a noisy neighbour) gets in the way and so what changes when the code changes
+            for (int i = 0; i < events.size(); i++) {
+                result.latenciesNanos.add(Arrays.stream(latencies[i]).min().getAsLong());
+                result.allocatedBytes.add(Arrays.stream(allocations[i]).min().getAsLong());
+            }
+        } finally {
+            System.setOut(stdout);
+        }
+        return result;
+    }
+
+    // Best of several runs of a fixed hashing, string-building and sorting workload that
+    // touches nothing in this repository.
+    static long calibrate() {
+        long best = Long.MAX_VALUE;
+        long sink = 0;
+        for (int run = 0; run < 50; run++) {
+            long start = System.nanoTime();
+            Map<String, Integer> map = new HashMap<>();
+            for (int i = 0; i < 2_000; i++) {
+                map.put("company" + i + "#cause" + (i % 37), i);
+            }
+            List<String> keys = new ArrayList<>(map.keySet());
+            Collections.sort(keys);
+            sink += keys.get(keys.size() / 2).hashCode();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return sink == 42 ? best + 1 : best;
+    }
+}
@@ -0,0 +1,63 @@
+package com.boycottpro.users.harness;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrafficReplayTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testCapture_decodesTheEventAndMasksUserContent() throws Exception {
+        String body = "{\"user_id\":\"someone\",\"email\":\"a@b.c\",\"user_boycotts\":[{\"user_id\":\"someone\","
+                + "\"company_id\":\"c1\",\"cause_id\":\"k1\",\"personal_reason\":\"my secret\"}],"
+                + "\"user_causes\":[{\"cause_id\":\"k1\"}]}";
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+            gzip.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        String event = objectMapper.writeValueAsString(Map.of(
+                "headers", Map.of("Content-Encoding", "gzip"),
+                "isBase64Encoded", true,
+                "requestContext", Map.of("authorizer", Map.of("claims", Map.of("sub", "someone"))),
+                "body", Base64.getEncoder().encodeToString(gzipped.toByteArray())));
+
+        JsonNode captured = objectMapper.readTree(
+                TrafficReplay.anonymize(TrafficReplay.body(objectMapper.readTree(event))));
+
+        assertFalse(captured.toString().contains("someone"));
+        assertFalse(captured.has("email"));
+        assertEquals("xxxxxxxxx", captured.at("/user_boycotts/0/personal_reason").asText());
+        assertEquals("c1", captured.at("/user_boycotts/0/company_id").asText());
+        assertEquals("k1", captured.at("/user_causes/0/cause_id").asText());
+    }
+
+    @Test
+    public void testCompare_flagsSlowerLatencyMoreAllocationAndChangedStatuses() throws Exception {
+        TrafficReplay.Result result = TrafficReplay.run(List.of(
+                "{\"user_boycotts\":[{\"company_id\":\"c1\",\"cause_id\":\"k1\"}],\"user_causes\":[]}"), 1, 3);
+        assertEquals(Map.of(200, 1), result.statusCounts);
+        JsonNode baseline = objectMapper.valueToTree(result.toBaseline());
+
+        assertEquals(List.of(), TrafficReplay.compare(baseline, result, 0.25, 0.15));
+
+        result.calibrationNanos /= 2;
+        result.allocatedBytes.replaceAll(bytes -> bytes * 2);
+        result.statusCounts.put(400, 1);
+        List<String> regressions = TrafficReplay.compare(baseline, result, 0.25, 0.15);
+        assertEquals(3, regressions.size());
+        assertTrue(regressions.get(0).startsWith("status counts"));
+        assertTrue(regressions.get(1).startsWith("p95 latency"));
+        assertTrue(regressions.get(2).startsWith("mean allocation"));
+    }
+}
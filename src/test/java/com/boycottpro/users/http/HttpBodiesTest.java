@@ -0,0 +1,118 @@
+package com.boycottpro.users.http;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.boycottpro.users.UpgradeUserHandler;
+import com.boycottpro.users.config.UpgradeOptions;
+import com.boycottpro.users.harness.Events;
+import com.boycottpro.users.harness.InMemoryDynamoDb;
+import com.boycottpro.users.parse.InvalidUpgradeBodyException;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HttpBodiesTest {
+
+    private static final String BODY = "{\"user_boycotts\":[{\"company_id\":\"c1\",\"cause_id\":\"k1\"}],"
+            + "\"user_causes\":[{\"cause_id\":\"k1\"}]}";
+
+    private static APIGatewayProxyRequestEvent event(String body, boolean base64, Map<String, String> headers) {
+        APIGatewayProxyRequestEvent event = Events.authorized("u1", body);
+        event.setIsBase64Encoded(base64);
+        event.setHeaders(headers);
+        return event;
+    }
+
+    private static String base64(byte[] bytes) {
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static byte[] rawDeflate(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bytes, new Deflater(Deflater.DEFAULT_COMPRESSION, true))) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void testNegotiate_followsQValues() {
+        assertEquals(ContentCoding.IDENTITY, ContentCoding.negotiate(null));
+        assertEquals(ContentCoding.GZIP, ContentCoding.negotiate("gzip, deflate, br"));
+        assertEquals(ContentCoding.DEFLATE, ContentCoding.negotiate("gzip;q=0.5, deflate"));
+        assertEquals(ContentCoding.IDENTITY, ContentCoding.negotiate("gzip;q=0, br"));
+        assertEquals(ContentCoding.GZIP, ContentCoding.negotiate("*"));
+    }
+
+    @Test
+    public void testOpenRequestBody_inflatesEveryCoding() throws IOException {
+        byte[] json = BODY.getBytes(StandardCharsets.UTF_8);
+        String gzip = base64(ContentCoding.GZIP.encode(json));
+        String zlib = base64(ContentCoding.DEFLATE.encode(json));
+        String raw = base64(rawDeflate(json));
+
+        assertEquals(BODY, read(HttpBodies.openRequestBody(event(gzip, true, Map.of("content-encoding", "gzip")), 1 << 20)));
+        assertEquals(BODY, read(HttpBodies.openRequestBody(event(zlib, true, Map.of("Content-Encoding", "deflate")), 1 << 20)));
+        assertEquals(BODY, read(HttpBodies.openRequestBody(event(raw, true, Map.of("Content-Encoding", "deflate")), 1 << 20)));
+        assertEquals(BODY, read(HttpBodies.openRequestBody(event(base64(json), true, null), 1 << 20)));
+    }
+
+    @Test
+    public void testOpenRequestBody_rejectsBadBodies() {
+        byte[] bomb = ContentCoding.GZIP.encode(new byte[1 << 20]);
+
+        assertThrows(UnsupportedContentEncodingException.class, () -> HttpBodies.openRequestBody(
+                event(BODY, false, Map.of("Content-Encoding", "br")), 1 << 20));
+        assertThrows(InvalidUpgradeBodyException.class, () -> HttpBodies.openRequestBody(
+                event(BODY, false, Map.of("Content-Encoding", "gzip")), 1 << 20));
+        assertThrows(InvalidUpgradeBodyException.class, () -> read(HttpBodies.openRequestBody(
+                event(base64(bomb), true, Map.of("Content-Encoding", "gzip")), 1024)));
+    }
+
+    @Test
+    public void testCompress_onlyBodiesWorthIt() {
+        APIGatewayProxyResponseEvent small = new APIGatewayProxyResponseEvent()
+                .withStatusCode(200).withHeaders(Map.of("Content-Type", "application/json")).withBody("{}");
+        String large = "{\"message\":\"" + "x".repeat(4000) + "\"}";
+        APIGatewayProxyResponseEvent big = new APIGatewayProxyResponseEvent()
+                .withStatusCode(200).withHeaders(Map.of("Content-Type", "application/json")).withBody(large);
+
+        assertSame(small, HttpBodies.compress(small, ContentCoding.GZIP, 1024));
+        APIGatewayProxyResponseEvent compressed = HttpBodies.compress(big, ContentCoding.GZIP, 1024);
+
+        assertTrue(compressed.getIsBase64Encoded());
+        assertEquals("gzip", compressed.getHeaders().get("Content-Encoding"));
+        assertEquals("application/json", compressed.getHeaders().get("Content-Type"));
+        assertTrue(compressed.getBody().length() < large.length() / 10);
+    }
+
+    @Test
+    public void testHandler_acceptsGzipBodyAndRejectsUnknownCoding() {
+        InMemoryDynamoDb dynamoDb = new InMemoryDynamoDb();
+        dynamoDb.seed("users", Map.of("user_id", AttributeValue.fromS("u1"), "paying_user", AttributeValue.fromBool(false)));
+        UpgradeUserHandler handler = new UpgradeUserHandler(dynamoDb, null, new UpgradeOptions());
+        String gzip = base64(ContentCoding.GZIP.encode(BODY.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(200, handler.handleRequest(event(gzip, true, Map.of("Content-Encoding", "gzip")), null).getStatusCode());
+        assertEquals(1, dynamoDb.items("user_boycotts").size());
+        assertEquals(415, handler.handleRequest(event(BODY, false, Map.of("Content-Encoding", "br")), null).getStatusCode());
+        assertEquals(400, handler.handleRequest(event("bm90IGd6aXA=", true, Map.of("Content-Encoding", "gzip")), null)
+                .getStatusCode());
+    }
+}
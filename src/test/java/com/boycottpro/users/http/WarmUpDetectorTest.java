@@ -0,0 +1,39 @@
+package com.boycottpro.users.http;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WarmUpDetectorTest {
+
+    private final WarmUpDetector detector = new WarmUpDetector("X-Warm-Up", "/warmup");
+
+    @Test
+    public void testIsWarmUp_markerHeaderOrResource() {
+        assertTrue(detector.isWarmUp(new APIGatewayProxyRequestEvent().withHeaders(Map.of("X-WARM-UP", "1"))));
+        assertTrue(detector.isWarmUp(new APIGatewayProxyRequestEvent().withResource("/warmup")));
+    }
+
+    @Test
+    public void testIsWarmUp_clientRequestsCantPassForAScheduledPing() {
+        WarmUpDetector defaults = new WarmUpDetector("", "/warmup");
+        APIGatewayProxyRequestEvent.ProxyRequestContext rc = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+
+        assertFalse(defaults.isWarmUp(new APIGatewayProxyRequestEvent().withHeaders(Map.of("X-Warm-Up", "1"))));
+        assertFalse(defaults.isWarmUp(new APIGatewayProxyRequestEvent().withResource("/warmup")
+                .withHttpMethod("POST").withRequestContext(rc)));
+        assertFalse(defaults.isWarmUp(new APIGatewayProxyRequestEvent().withPath("/warmup")));
+        assertTrue(defaults.isWarmUp(new APIGatewayProxyRequestEvent().withResource("/warmup")));
+    }
+
+    @Test
+    public void testIsWarmUp_ordinaryRequestsAreNot() {
+        assertFalse(detector.isWarmUp(new APIGatewayProxyRequestEvent()));
+        assertFalse(detector.isWarmUp(new APIGatewayProxyRequestEvent().withHeaders(Map.of("X-Warm-Up", "false"))));
+        assertFalse(detector.isWarmUp(new APIGatewayProxyRequestEvent().withResource("/users/upgrade")));
+        assertFalse(new WarmUpDetector("", "").isWarmUp(new APIGatewayProxyRequestEvent().withResource("")));
+    }
+}
@@ -0,0 +1,164 @@
+package com.boycottpro.users.idempotency;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.boycottpro.users.UpgradeUserHandler;
+import com.boycottpro.users.config.UpgradeOptions;
+import com.boycottpro.users.harness.Events;
+import com.boycottpro.users.harness.InMemoryDynamoDb;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdempotencyGuardTest {
+
+    private static final String SUB = "11111111-2222-3333-4444-555555555555";
+    private static final String BODY = "{\"user_boycotts\":[{\"company_id\":\"c1\",\"cause_id\":\"k1\"}],"
+            + "\"user_causes\":[{\"cause_id\":\"k1\"}]}";
+
+    private InMemoryDynamoDb dynamoDb;
+    private UpgradeOptions options;
+
+    @BeforeEach
+    public void setUp() {
+        dynamoDb = new InMemoryDynamoDb();
+        dynamoDb.seed("users", Map.of(
+                "user_id", AttributeValue.fromS(SUB),
+                "email_addr", AttributeValue.fromS("email@email.com"),
+                "username", AttributeValue.fromS("username"),
+                "created_ts", AttributeValue.fromN("100"),
+                "paying_user", AttributeValue.fromBool(false)));
+        options = new UpgradeOptions();
+        options.setIdempotency(true);
+    }
+
+    private static APIGatewayProxyRequestEvent event(String body, String idempotencyKey) {
+        APIGatewayProxyRequestEvent event = Events.authorized(SUB, body);
+        if (idempotencyKey != null) {
+            event.setHeaders(Map.of("idempotency-key", idempotencyKey));
+        }
+        return event;
+    }
+
+    @Test
+    public void testRetry_replaysWithoutWrites() {
+        UpgradeUserHandler handler = new UpgradeUserHandler(dynamoDb, null, options);
+
+        APIGatewayProxyResponseEvent first = handler.handleRequest(event(BODY, null), null);
+        APIGatewayProxyResponseEvent retry = handler.handleRequest(event(BODY, null), null);
+
+        assertEquals(200, first.getStatusCode());
+        assertEquals(200, retry.getStatusCode());
+        assertEquals(first.getBody(), retry.getBody());
+        assertEquals("true", retry.getHeaders().get("Idempotent-Replayed"));
+        assertEquals(1L, dynamoDb.getStats().get("UpdateItem"));
+        assertEquals(1L, dynamoDb.getStats().get("BatchWriteItem"));
+    }
+
+    @Test
+    public void testRetryOnAnotherContainer_replaysFromTable() {
+        new UpgradeUserHandler(dynamoDb, null, options).handleRequest(event(BODY, "abc"), null);
+
+        APIGatewayProxyResponseEvent retry = new UpgradeUserHandler(dynamoDb, null, options)
+                .handleRequest(event(BODY, "abc"), null);
+
+        assertEquals(200, retry.getStatusCode());
+        assertEquals("true", retry.getHeaders().get("Idempotent-Replayed"));
+        assertEquals(1L, dynamoDb.getStats().get("BatchWriteItem"));
+        assertEquals(1, dynamoDb.items("upgrade_idempotency").size());
+    }
+
+    @Test
+    public void testReusedKeyWithDifferentBody_rejected() {
+        UpgradeUserHandler handler = new UpgradeUserHandler(dynamoDb, null, options);
+        handler.handleRequest(event(BODY, "abc"), null);
+
+        APIGatewayProxyResponseEvent response = handler.handleRequest(
+                event(BODY.replace("c1", "c2"), "abc"), null);
+
+        assertEquals(422, response.getStatusCode());
+        assertEquals(1L, dynamoDb.getStats().get("BatchWriteItem"));
+    }
+
+    @Test
+    public void testFailedRequest_releasesKey() {
+        UpgradeUserHandler handler = new UpgradeUserHandler(dynamoDb, null, options);
+
+        APIGatewayProxyResponseEvent response = handler.handleRequest(event("{\"user_causes\":[]}", null), null);
+
+        assertEquals(400, response.getStatusCode());
+        assertTrue(dynamoDb.items("upgrade_idempotency").isEmpty());
+    }
+
+    @Test
+    public void testInProgressRecord_conflicts() {
+        long now = System.currentTimeMillis() / 1000;
+        IdempotencyStore store = new IdempotencyStore(dynamoDb);
+        IdempotencyGuard guard = new IdempotencyGuard(store, new ResponseCache(4), 3600, 60, () -> now);
+        APIGatewayProxyRequestEvent event = event(BODY, "abc");
+        AtomicInteger runs = new AtomicInteger();
+        store.put(new IdempotencyRecord(SUB + "#key:abc", IdempotencyRecord.IN_PROGRESS, "hash", 0, null, now + 30));
+
+        APIGatewayProxyResponseEvent response = guard.handle(event, e -> {
+            runs.incrementAndGet();
+            return new APIGatewayProxyResponseEvent().withStatusCode(200).withBody("{}");
+        });
+
+        assertEquals(409, response.getStatusCode());
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    public void testExpiredRecord_isReclaimed() {
+        long now = System.currentTimeMillis() / 1000;
+        IdempotencyStore store = new IdempotencyStore(dynamoDb);
+        IdempotencyGuard guard = new IdempotencyGuard(store, new ResponseCache(4), 3600, 60, () -> now);
+        store.put(new IdempotencyRecord(SUB + "#key:abc", IdempotencyRecord.IN_PROGRESS, "hash", 0, null, now - 1));
+
+        APIGatewayProxyResponseEvent response = guard.handle(event(BODY, "abc"),
+                e -> new APIGatewayProxyResponseEvent().withStatusCode(200).withBody("{}"));
+
+        assertEquals(200, response.getStatusCode());
+        Map<String, AttributeValue> item = dynamoDb.item("upgrade_idempotency",
+                Map.of("idempotency_key", AttributeValue.fromS(SUB + "#key:abc")));
+        assertEquals(IdempotencyRecord.COMPLETED, item.get("status").s());
+        assertEquals(Long.toString(now + 3600), item.get("expires_at").n());
+    }
+
+    @Test
+    public void testExpiredRecord_reclaimedByOneContainerOnly() {
+        long now = System.currentTimeMillis() / 1000;
+        String key = SUB + "#key:abc";
+        IdempotencyRecord rival = new IdempotencyRecord(key, IdempotencyRecord.IN_PROGRESS, "rival", 0, null, now + 60);
+        dynamoDb = new InMemoryDynamoDb() {
+            private boolean raced;
+
+            @Override
+            public PutItemResponse putItem(PutItemRequest request) {
+                // another container reclaims the expired record between our read and our put
+                if (!raced && "expires_at = :expires".equals(request.conditionExpression())) {
+                    raced = true;
+                    seed("upgrade_idempotency", rival.toItem());
+                }
+                return super.putItem(request);
+            }
+        };
+        IdempotencyStore store = new IdempotencyStore(dynamoDb);
+        store.put(new IdempotencyRecord(key, IdempotencyRecord.IN_PROGRESS, "hash", 0, null, now - 1));
+
+        IdempotencyRecord holder = store.claim(
+                new IdempotencyRecord(key, IdempotencyRecord.IN_PROGRESS, "mine", 0, null, now + 60), now);
+
+        assertNotNull(holder);
+        assertEquals("rival", holder.getRequestHash());
+        assertEquals("rival", dynamoDb.item("upgrade_idempotency",
+                Map.of("idempotency_key", AttributeValue.fromS(key))).get("request_hash").s());
+    }
+}
@@ -0,0 +1,54 @@
+package com.boycottpro.users.mapping;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DuplicateCoalescerTest {
+
+    private static WriteRequest boycott(String companyId, String name, String timestamp) {
+        return UserItems.put(UserItems.boycottItem("u1", companyId, name, "k1", "desc", null, timestamp));
+    }
+
+    @Test
+    public void testCoalesce_newestTimestampWins() {
+        Map<String, List<WriteRequest>> writesByTable = new LinkedHashMap<>();
+        writesByTable.put("user_boycotts", List.of(
+                boycott("c1", "first", "200"),
+                boycott("c2", "other", "100"),
+                boycott("c1", "older", "100"),
+                boycott("c1", "tie", "200")));
+        writesByTable.put("user_causes", List.of(
+                UserItems.put(UserItems.causeItem("u1", "k1", "a", null)),
+                UserItems.put(UserItems.causeItem("u1", "k1", "b", null))));
+
+        DuplicateCoalescer.Result result = DuplicateCoalescer.coalesce(writesByTable);
+
+        assertEquals(3, result.getDroppedDuplicates());
+        List<WriteRequest> boycotts = result.getWritesByTable().get("user_boycotts");
+        assertEquals(2, boycotts.size());
+        // a tie goes to the later entry, which keeps the first entry's position
+        assertEquals("tie", boycotts.get(0).putRequest().item().get("company_name").s());
+        assertEquals("other", boycotts.get(1).putRequest().item().get("company_name").s());
+        List<WriteRequest> causes = result.getWritesByTable().get("user_causes");
+        assertEquals(1, causes.size());
+        assertEquals("b", causes.get(0).putRequest().item().get("cause_desc").s());
+    }
+
+    @Test
+    public void testCoalesce_personalReasonsAreDistinctItems() {
+        Map<String, List<WriteRequest>> writesByTable = Map.of("user_boycotts", List.of(
+                UserItems.put(UserItems.boycottItem("u1", "c1", "Acme", "k1", "desc", null, "1")),
+                UserItems.put(UserItems.boycottItem("u1", "c1", "Acme", "k1", "desc", "mine", "1"))));
+
+        DuplicateCoalescer.Result result = DuplicateCoalescer.coalesce(writesByTable);
+
+        assertEquals(0, result.getDroppedDuplicates());
+        assertSame(writesByTable.get("user_boycotts"), result.getWritesByTable().get("user_boycotts"));
+    }
+}
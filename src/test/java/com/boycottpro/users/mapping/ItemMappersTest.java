@@ -0,0 +1,79 @@
+package com.boycottpro.users.mapping;
+
+import com.boycottpro.models.UserBoycotts;
+import com.boycottpro.models.UserCauses;
+import com.boycottpro.models.Users;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ItemMappersTest {
+
+    @Test
+    public void testUserBoycotts_matchesTheDecoderLayoutAndRoundTrips() {
+        UserBoycotts boycott = new UserBoycotts("u1", "c1", "Company", "k1", "desc", null, null, "100");
+
+        Map<String, AttributeValue> item = ItemMappers.USER_BOYCOTTS.toItem(boycott);
+        UserBoycotts back = ItemMappers.USER_BOYCOTTS.fromItem(item);
+
+        assertEquals(UserItems.boycottItem("u1", "c1", "Company", "k1", "desc", null, "100"), item);
+        assertEquals("c1#k1", back.getCompany_cause_id());
+        assertEquals("Company", back.getCompany_name());
+        assertNull(back.getPersonal_reason());
+    }
+
+    @Test
+    public void testUserCauses_skipsMissingAttributes() {
+        Map<String, AttributeValue> item = ItemMappers.USER_CAUSES.toItem(new UserCauses("u1", "k1", null, null));
+
+        assertEquals(Map.of("user_id", AttributeValue.fromS("u1"), "cause_id", AttributeValue.fromS("k1")), item);
+        UserCauses back = ItemMappers.USER_CAUSES.fromItem(item);
+        assertEquals("k1", back.getCause_id());
+        assertNull(back.getCause_desc());
+    }
+
+    @Test
+    public void testUsers_toleratesAnItemWithoutEmailOrCreatedTs() {
+        Users user = ItemMappers.USERS.fromItem(Map.of(
+                "user_id", AttributeValue.fromS("u1"),
+                "paying_user", AttributeValue.fromBool(true)));
+
+        assertEquals("u1", user.getUser_id());
+        assertNull(user.getEmail_addr());
+        assertEquals(0, user.getCreated_ts());
+        assertTrue(user.isPaying_user());
+        assertFalse(ItemMappers.USERS.fromItem(Map.of()).isPaying_user());
+    }
+
+    @Test
+    public void testUsers_roundTrips() {
+        Users user = new Users();
+        user.setUser_id("u1");
+        user.setEmail_addr("a@example.com");
+        user.setCreated_ts(1754141635140L);
+        user.setPaying_user(true);
+
+        Map<String, AttributeValue> item = ItemMappers.USERS.toItem(user);
+        Users back = ItemMappers.USERS.fromItem(item);
+
+        assertFalse(item.containsKey("username"));
+        assertEquals("1754141635140", item.get("created_ts").n());
+        assertEquals("a@example.com", back.getEmail_addr());
+        assertEquals(1754141635140L, back.getCreated_ts());
+        assertTrue(back.isPaying_user());
+    }
+
+    @Test
+    public void testToItem_rejectsAMissingKeyAttribute() {
+        assertThrows(IllegalArgumentException.class, () -> ItemMappers.USERS.toItem(new Users()));
+        assertThrows(IllegalArgumentException.class, () -> ItemMappers.USER_BOYCOTTS.toItem(
+                new UserBoycotts(null, "c1", null, "k1", null, null, null, null)));
+        assertThrows(IllegalArgumentException.class, () -> ItemMappers.USER_BOYCOTTS.toItem(
+                new UserBoycotts("u1", null, null, "k1", null, null, null, null)));
+        assertThrows(IllegalArgumentException.class, () -> ItemMappers.USER_CAUSES.toItem(
+                new UserCauses("u1", "", null, null)));
+    }
+}
@@ -0,0 +1,83 @@
+package com.boycottpro.users.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RequestMetricsTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testToEmf_definesEveryMetricUnderTheStatusDimension() throws Exception {
+        RequestMetrics metrics = new RequestMetrics();
+        metrics.millis("TotalMillis", 12.5);
+        metrics.count("UserBoycottsItems", 3);
+        metrics.millis("BatchWriteChunkMillis", 4);
+        metrics.millis("BatchWriteChunkMillis", 6);
+
+        JsonNode emf = objectMapper.readTree(metrics.toEmf("Test/Namespace", "200", 1700000000000L));
+
+        JsonNode aws = emf.get("_aws");
+        assertEquals(1700000000000L, aws.get("Timestamp").asLong());
+        JsonNode directive = aws.get("CloudWatchMetrics").get(0);
+        assertEquals("Test/Namespace", directive.get("Namespace").asText());
+        assertEquals("Status", directive.get("Dimensions").get(0).get(0).asText());
+        assertEquals(3, directive.get("Metrics").size());
+        assertEquals("Count", directive.get("Metrics").get(1).get("Unit").asText());
+        assertEquals("200", emf.get("Status").asText());
+        assertEquals(12.5, emf.get("TotalMillis").asDouble());
+        assertEquals(3.0, emf.get("UserBoycottsItems").asDouble());
+        assertTrue(emf.get("BatchWriteChunkMillis").isArray());
+        assertEquals(2, emf.get("BatchWriteChunkMillis").size());
+    }
+
+    @Test
+    public void testValues_capAtOneHundredPerMetric() {
+        RequestMetrics metrics = new RequestMetrics();
+        for (int i = 0; i < 150; i++) {
+            metrics.count("Calls", i);
+        }
+
+        assertEquals(100, metrics.values("Calls").size());
+    }
+
+    @Test
+    public void testDisabled_recordsAndPrintsNothing() {
+        RequestMetrics metrics = RequestMetrics.disabled();
+        metrics.count("Calls", 1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        metrics.emit(new PrintStream(out), "Test/Namespace", "200");
+
+        assertTrue(metrics.values("Calls").isEmpty());
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    public void testRecord_readsSingleAndListConsumedCapacity() {
+        RequestMetrics metrics = new RequestMetrics();
+
+        DynamoDbCallMetrics.record(metrics, UpdateItemResponse.builder()
+                .consumedCapacity(ConsumedCapacity.builder().tableName("users").capacityUnits(1.0).build())
+                .build());
+        DynamoDbCallMetrics.record(metrics, BatchWriteItemResponse.builder()
+                .consumedCapacity(ConsumedCapacity.builder().tableName("user_boycotts").capacityUnits(25.0).build(),
+                        ConsumedCapacity.builder().tableName("user_causes").capacityUnits(2.0).build())
+                .build());
+        DynamoDbCallMetrics.record(metrics, UpdateItemResponse.builder().build());
+
+        assertEquals(List.of(1.0), metrics.values("ConsumedCapacity.users"));
+        assertEquals(List.of(25.0), metrics.values("ConsumedCapacity.user_boycotts"));
+        assertEquals(List.of(2.0), metrics.values("ConsumedCapacity.user_causes"));
+    }
+}
@@ -0,0 +1,156 @@
+package com.boycottpro.users.outbox;
+
+import com.boycottpro.users.mapping.UserItems;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.DeleteRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class OutboxTest {
+
+    private static List<WriteRequest> boycotts(int count, int descLength) {
+        List<WriteRequest> writes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            writes.add(UserItems.put(UserItems.boycottItem("u1", "c" + i, "Company " + i, "k1",
+                    "x".repeat(descLength), null, "1")));
+        }
+        return writes;
+    }
+
+    @Test
+    public void testCodec_roundTripsEveryAttributeType() throws Exception {
+        Map<String, AttributeValue> item = new LinkedHashMap<>();
+        item.put("user_id", AttributeValue.fromS("u1"));
+        item.put("count", AttributeValue.fromN("12.5"));
+        item.put("raw", AttributeValue.fromB(SdkBytes.fromUtf8String("bytes")));
+        item.put("flag", AttributeValue.fromBool(true));
+        item.put("none", AttributeValue.fromNul(true));
+        item.put("tags", AttributeValue.fromSs(List.of("a", "b")));
+        item.put("scores", AttributeValue.fromNs(List.of("1", "2")));
+        item.put("blobs", AttributeValue.fromBs(List.of(SdkBytes.fromUtf8String("z"))));
+        item.put("list", AttributeValue.fromL(List.of(AttributeValue.fromS("x"), AttributeValue.fromN("1"))));
+        item.put("map", AttributeValue.fromM(Map.of("nested", AttributeValue.fromS("y"))));
+        WriteRequest delete = WriteRequest.builder()
+                .deleteRequest(DeleteRequest.builder()
+                        .key(Map.of("user_id", AttributeValue.fromS("u1"), "cause_id", AttributeValue.fromS("k9")))
+                        .build())
+                .build();
+        Map<String, List<WriteRequest>> writesByTable = new LinkedHashMap<>();
+        writesByTable.put("user_boycotts", List.of(UserItems.put(item)));
+        writesByTable.put("user_causes", List.of(delete));
+
+        OutboxMessage decoded = OutboxCodec.decode(OutboxCodec.encode(new OutboxMessage("u1", writesByTable)));
+
+        assertEquals("u1", decoded.getUserId());
+        assertEquals(writesByTable, decoded.getWritesByTable());
+    }
+
+    @Test
+    public void testCodec_rejectsForeignBodies() {
+        assertThrows(IllegalArgumentException.class, () -> OutboxCodec.decode("{\"user_id\":\"u1\"}"));
+        assertThrows(IllegalArgumentException.class, () -> OutboxCodec.decode(
+                "{\"user_id\":\"u1\",\"writes\":{\"user_causes\":[{\"put\":{\"cause_id\":{\"X\":\"1\"}}}]}}"));
+    }
+
+    @Test
+    public void testInMemory_takeDrainsWhatWasPublished() {
+        InMemoryOutbox outbox = new InMemoryOutbox();
+        outbox.publish(new OutboxMessage("u1", Map.of("user_boycotts", boycotts(3, 10))));
+
+        assertEquals(1, outbox.size());
+        assertEquals(1, outbox.take().size());
+        assertEquals(0, outbox.size());
+    }
+
+    @Test
+    public void testSqs_oneMessagePerBatchUpToTenPerCall() throws Exception {
+        SqsClient sqs = mock(SqsClient.class);
+        when(sqs.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(SendMessageBatchResponse.builder().build());
+
+        new SqsOutbox(sqs, "queue.fifo").publish(new OutboxMessage("u1", Map.of("user_boycotts", boycotts(300, 10))));
+
+        ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(sqs, times(2)).sendMessageBatch(captor.capture());
+        assertEquals(10, captor.getAllValues().get(0).entries().size());
+        assertEquals(2, captor.getAllValues().get(1).entries().size());
+        int items = 0;
+        for (SendMessageBatchRequest request : captor.getAllValues()) {
+            assertEquals("queue.fifo", request.queueUrl());
+            for (SendMessageBatchRequestEntry entry : request.entries()) {
+                assertEquals("u1", entry.messageGroupId());
+                items += OutboxCodec.decode(entry.messageBody()).getItemCount();
+            }
+        }
+        assertEquals(300, items);
+    }
+
+    @Test
+    public void testSqs_halvesMessagesOverTheSizeLimit() throws Exception {
+        SqsClient sqs = mock(SqsClient.class);
+        when(sqs.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(SendMessageBatchResponse.builder().build());
+
+        new SqsOutbox(sqs, "queue.fifo").publish(new OutboxMessage("u1", Map.of("user_boycotts", boycotts(4, 100_000))));
+
+        ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(sqs, times(2)).sendMessageBatch(captor.capture());
+        for (SendMessageBatchRequest request : captor.getAllValues()) {
+            assertEquals(1, request.entries().size());
+            assertEquals(2, OutboxCodec.decode(request.entries().get(0).messageBody()).getItemCount());
+        }
+    }
+
+    @Test
+    public void testSqs_resendsOnlyTheFailedEntries() throws Exception {
+        SqsClient sqs = mock(SqsClient.class);
+        when(sqs.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(SendMessageBatchResponse.builder()
+                        .failed(BatchResultErrorEntry.builder().id("1").code("InternalError").build())
+                        .build())
+                .thenReturn(SendMessageBatchResponse.builder().build());
+
+        new SqsOutbox(sqs, "queue.fifo").publish(new OutboxMessage("u1", Map.of("user_boycotts", boycotts(75, 10))));
+
+        ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(sqs, times(2)).sendMessageBatch(captor.capture());
+        SendMessageBatchRequestEntry failed = captor.getAllValues().get(0).entries().get(1);
+        List<SendMessageBatchRequestEntry> resent = captor.getAllValues().get(1).entries();
+        assertEquals(1, resent.size());
+        assertEquals(failed.messageBody(), resent.get(0).messageBody());
+        assertEquals(failed.messageDeduplicationId(), resent.get(0).messageDeduplicationId());
+    }
+
+    @Test
+    public void testSqs_rejectsAStandardQueue() {
+        assertThrows(IllegalArgumentException.class, () -> new SqsOutbox(mock(SqsClient.class), "queue"));
+    }
+
+    @Test
+    public void testSqs_failedEntriesThrow() {
+        SqsClient sqs = mock(SqsClient.class);
+        when(sqs.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(SendMessageBatchResponse.builder()
+                        .failed(BatchResultErrorEntry.builder().id("0").code("InternalError").build())
+                        .build());
+
+        assertThrows(IllegalStateException.class, () -> new SqsOutbox(sqs, "queue.fifo")
+                .publish(new OutboxMessage("u1", Map.of("user_boycotts", boycotts(1, 10)))));
+    }
+}
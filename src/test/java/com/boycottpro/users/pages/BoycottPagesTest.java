@@ -0,0 +1,178 @@
+package com.boycottpro.users.pages;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.boycottpro.models.UserBoycotts;
+import com.boycottpro.users.UpgradeUserHandler;
+import com.boycottpro.users.config.UpgradeOptions;
+import com.boycottpro.users.dynamo.BatchWriter;
+import com.boycottpro.users.dynamo.RetryPolicy;
+import com.boycottpro.users.harness.Events;
+import com.boycottpro.users.harness.InMemoryDynamoDb;
+import com.boycottpro.users.mapping.UserItems;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoycottPagesTest {
+
+    private static final String SUB = "11111111-2222-3333-4444-555555555555";
+
+    private InMemoryDynamoDb dynamoDb;
+
+    @BeforeEach
+    public void setUp() {
+        dynamoDb = new InMemoryDynamoDb();
+        dynamoDb.seed("users", Map.of("user_id", AttributeValue.fromS(SUB), "paying_user", AttributeValue.fromBool(false)));
+    }
+
+    private BoycottPages pages(int maxPageBytes) {
+        return new BoycottPages(dynamoDb, new BatchWriter(dynamoDb, new RetryPolicy(1, 1, 1_000)),
+                new RetryPolicy(1, 1, 0), "user_boycott_pages", maxPageBytes);
+    }
+
+    private static List<Map<String, AttributeValue>> boycotts(int from, int count) {
+        List<Map<String, AttributeValue>> boycotts = new ArrayList<>();
+        for (int i = from; i < from + count; i++) {
+            boycotts.add(UserItems.boycottItem(SUB, "company" + i, "Company " + i, "cause" + (i % 7),
+                    "description of cause" + (i % 7), i % 5 == 0 ? "reason " + i : null, "1754141635140"));
+        }
+        return boycotts;
+    }
+
+    private UpgradeUserHandler handler(int threshold) {
+        UpgradeOptions options = new UpgradeOptions();
+        options.setPagedStorage(true);
+        options.setPagedStorageThreshold(threshold);
+        options.setMetrics(false);
+        return new UpgradeUserHandler(dynamoDb, null, options);
+    }
+
+    private static APIGatewayProxyRequestEvent event(int from, int count) {
+        StringBuilder body = new StringBuilder("{\"user_boycotts\":[");
+        for (int i = from; i < from + count; i++) {
+            body.append(i > from ? "," : "").append("{\"company_id\":\"company").append(i)
+                    .append("\",\"company_name\":\"Company ").append(i).append("\",\"cause_id\":\"cause1\"}");
+        }
+        body.append("],\"user_causes\":[{\"cause_id\":\"cause1\"}]}");
+        return Events.authorized(SUB, body.toString());
+    }
+
+    @Test
+    public void testPaginate_keepsPagesUnderTheCapAndRoundTrips() {
+        List<Map<String, AttributeValue>> boycotts = boycotts(0, 2_000);
+
+        List<byte[]> encoded = BoycottPageCodec.paginate(boycotts, 8 * 1024);
+
+        assertTrue(encoded.size() > 1);
+        List<Map<String, AttributeValue>> decoded = new ArrayList<>();
+        for (byte[] page : encoded) {
+            assertTrue(page.length <= 8 * 1024, "page of " + page.length + " bytes");
+            decoded.addAll(BoycottPageCodec.decode(SUB, page));
+        }
+        assertEquals(boycotts, decoded);
+        assertEquals(1, BoycottPageCodec.paginate(boycotts, 300_000).size());
+    }
+
+    @Test
+    public void testHandler_storesALargeListAsPagesAndFoldsInExistingItems() {
+        dynamoDb.seed("user_boycotts", UserItems.boycottItem(SUB, "old", null, "cause9", null, null, "1"));
+
+        assertEquals(200, handler(100).handleRequest(event(0, 2_000), null).getStatusCode());
+
+        assertTrue(dynamoDb.items("user_boycotts").isEmpty());
+        assertEquals(1, dynamoDb.items("user_causes").size());
+        // one request for the pages and one for the cause and the folded item's delete, not 80
+        assertEquals(2L, dynamoDb.getStats().get("BatchWriteItem"));
+        // only user_boycotts is read back; the causes are only needed with delta sync
+        assertEquals(1L, dynamoDb.getStats().get("Query"));
+        PageIndex index = pages(300_000).index(SUB);
+        assertEquals(1, index.getVersion());
+        assertEquals(2_001, index.getBoycottCount());
+        List<UserBoycotts> read = new BoycottReader(dynamoDb, pages(300_000)).read(SUB);
+        assertEquals(2_001, read.size());
+        assertEquals("Company 0", read.stream().filter(b -> "company0".equals(b.getCompany_id()))
+                .findFirst().orElseThrow().getCompany_name());
+    }
+
+    @Test
+    public void testHandler_keepsAPagedUserOnPagesAndDropsTheOldPageSet() {
+        UpgradeUserHandler handler = handler(100);
+        assertEquals(200, handler.handleRequest(event(0, 500), null).getStatusCode());
+        PageIndex first = pages(300_000).index(SUB);
+
+        assertEquals(200, handler.handleRequest(event(500, 1), null).getStatusCode());
+
+        assertTrue(dynamoDb.items("user_boycotts").isEmpty());
+        PageIndex second = pages(300_000).index(SUB);
+        assertEquals(2, second.getVersion());
+        assertEquals(501, second.getBoycottCount());
+        assertNull(dynamoDb.item("user_boycott_pages", Map.of("user_id", AttributeValue.fromS(SUB),
+                "page", AttributeValue.fromS(first.pageKey(0)))));
+        assertEquals(1 + second.getPageCount(), dynamoDb.items("user_boycott_pages").size());
+    }
+
+    @Test
+    public void testWrite_losesToAConcurrentWriterWithoutLeavingPages() {
+        BoycottPages pages = pages(300_000);
+        assertEquals(BoycottPages.Written.Status.COMMITTED, pages.write(SUB, null, boycotts(0, 10)).getStatus());
+        PageIndex stale = pages.index(SUB);
+        assertEquals(BoycottPages.Written.Status.COMMITTED, pages.write(SUB, stale, boycotts(0, 20)).getStatus());
+
+        BoycottPages.Written lost = pages.write(SUB, stale, boycotts(0, 30));
+
+        assertEquals(BoycottPages.Written.Status.CONFLICT, lost.getStatus());
+        assertEquals(20, pages.read(SUB, pages.index(SUB)).size());
+        assertEquals(2, dynamoDb.items("user_boycott_pages").size());
+    }
+
+    @Test
+    public void testRead_followsTheIndexWhenAConcurrentWriteDeletesThePages() {
+        AtomicBoolean raced = new AtomicBoolean();
+        dynamoDb = new InMemoryDynamoDb() {
+            @Override
+            public BatchGetItemResponse batchGetItem(BatchGetItemRequest request) {
+                if (raced.compareAndSet(false, true)) {
+                    // another request commits a new page set and deletes this one mid-read
+                    pages(300_000).write(SUB, pages(300_000).index(SUB), boycotts(0, 20));
+                }
+                return super.batchGetItem(request);
+            }
+        };
+        BoycottPages pages = pages(300_000);
+        raced.set(true);
+        pages.write(SUB, null, boycotts(0, 10));
+        raced.set(false);
+
+        BoycottPages.Snapshot snapshot = pages.read(SUB);
+
+        assertEquals(2, snapshot.getIndex().getVersion());
+        assertEquals(20, snapshot.getBoycotts().size());
+        assertThrows(IllegalStateException.class, () -> pages.read(SUB, new PageIndex(1, "gone", 1, 10)));
+    }
+
+    @Test
+    public void testReader_mergesItemsWrittenBesideThePages() {
+        BoycottPages pages = pages(300_000);
+        pages.write(SUB, null, boycotts(0, 10));
+        // e.g. from a bulk upgrade that writes user_boycotts items directly
+        dynamoDb.seed("user_boycotts", UserItems.boycottItem(SUB, "late", null, "cause1", null, null, "2"));
+        dynamoDb.seed("user_boycotts",
+                UserItems.boycottItem(SUB, "company0", "Stale", "cause0", null, "reason 0", "0"));
+
+        List<UserBoycotts> read = new BoycottReader(dynamoDb, pages).read(SUB);
+
+        assertEquals(11, read.size());
+        assertTrue(read.stream().anyMatch(b -> "late".equals(b.getCompany_id())));
+        assertEquals("Company 0", read.stream().filter(b -> "company0".equals(b.getCompany_id()))
+                .findFirst().orElseThrow().getCompany_name());
+    }
+}
@@ -0,0 +1,98 @@
+package com.boycottpro.users.parse;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UpgradeBodyDecoderTest {
+
+    private final UpgradeBodyDecoder decoder = new UpgradeBodyDecoder(3, 16);
+
+    private static Map<String, AttributeValue> item(WriteRequest write) {
+        return write.putRequest().item();
+    }
+
+    @Test
+    public void testDecode_derivesKeysFromEntries() throws Exception {
+        String body = "{\"user_boycotts\":["
+                + "{\"company_id\":\"c1\",\"company_name\":\"Acme\",\"cause_id\":\"k1\",\"cause_desc\":\"desc\",\"timestamp\":\"1\"},"
+                + "{\"company_id\":\"c2\",\"cause_id\":\"k2\",\"personal_reason\":\"mine\"}],"
+                + "\"user_causes\":[{\"cause_id\":\"k1\",\"cause_desc\":\"desc\",\"timestamp\":\"1\"}]}";
+
+        DecodedUpgrade decoded = decoder.decode(body, "sub1");
+
+        assertTrue(decoded.isComplete());
+        Map<String, AttributeValue> first = item(decoded.getBoycottWrites().get(0));
+        assertEquals("sub1", first.get("user_id").s());
+        assertEquals("c1#k1", first.get("company_cause_id").s());
+        assertEquals("Acme", first.get("company_name").s());
+        assertFalse(first.containsKey("personal_reason"));
+        assertEquals("mine#c2", item(decoded.getBoycottWrites().get(1)).get("company_cause_id").s());
+        Map<String, AttributeValue> cause = item(decoded.getCauseWrites().get(0));
+        assertEquals("sub1", cause.get("user_id").s());
+        assertEquals("k1", cause.get("cause_id").s());
+        assertEquals(List.of("user_boycotts", "user_causes"), List.copyOf(decoded.toWritesByTable().keySet()));
+    }
+
+    @Test
+    public void testDecode_ignoresClientKeysAndUnknownFields() throws Exception {
+        String body = "{\"extra\":{\"nested\":[1,2]},\"user_boycotts\":["
+                + "{\"user_id\":\"someone-else\",\"company_cause_id\":\"forged\",\"company_id\":\"c1\",\"cause_id\":\"k1\",\"rating\":5}],"
+                + "\"user_causes\":[]}";
+
+        DecodedUpgrade decoded = decoder.decode(body, "sub1");
+
+        Map<String, AttributeValue> boycott = item(decoded.getBoycottWrites().get(0));
+        assertEquals("sub1", boycott.get("user_id").s());
+        assertEquals("c1#k1", boycott.get("company_cause_id").s());
+        assertFalse(boycott.containsKey("rating"));
+        assertEquals(List.of("user_boycotts"), List.copyOf(decoded.toWritesByTable().keySet()));
+    }
+
+    @Test
+    public void testDecode_missingOrNullArrayIsIncomplete() throws Exception {
+        assertFalse(decoder.decode("{\"user_boycotts\":null,\"user_causes\":[]}", "sub1").isComplete());
+        assertFalse(decoder.decode("{\"user_boycotts\":[]}", "sub1").isComplete());
+    }
+
+    @Test
+    public void testDecode_rejectsTooManyEntries() {
+        String body = "{\"user_causes\":[{\"cause_id\":\"a\"},{\"cause_id\":\"b\"},{\"cause_id\":\"c\"},{\"cause_id\":\"d\"}]}";
+
+        InvalidUpgradeBodyException e = assertThrows(InvalidUpgradeBodyException.class,
+                () -> decoder.decode(body, "sub1"));
+        assertTrue(e.getMessage().contains("more than 3"));
+    }
+
+    @Test
+    public void testDecode_rejectsLongField() {
+        String body = "{\"user_causes\":[{\"cause_id\":\"a\",\"cause_desc\":\"" + "x".repeat(17) + "\"}]}";
+
+        InvalidUpgradeBodyException e = assertThrows(InvalidUpgradeBodyException.class,
+                () -> decoder.decode(body, "sub1"));
+        assertTrue(e.getMessage().contains("cause_desc"));
+    }
+
+    @Test
+    public void testDecode_rejectsMissingKeys() {
+        assertThrows(InvalidUpgradeBodyException.class,
+                () -> decoder.decode("{\"user_boycotts\":[{\"cause_id\":\"k1\"}]}", "sub1"));
+        assertThrows(InvalidUpgradeBodyException.class,
+                () -> decoder.decode("{\"user_causes\":[{\"cause_desc\":\"d\"}]}", "sub1"));
+    }
+
+    @Test
+    public void testDecode_rejectsMalformedBodies() {
+        assertThrows(InvalidUpgradeBodyException.class, () -> decoder.decode("", "sub1"));
+        assertThrows(InvalidUpgradeBodyException.class, () -> decoder.decode("[]", "sub1"));
+        assertThrows(InvalidUpgradeBodyException.class,
+                () -> decoder.decode("{\"user_causes\":{}}", "sub1"));
+        assertThrows(JsonProcessingException.class, () -> decoder.decode("{\"user_causes\":[", "sub1"));
+    }
+}
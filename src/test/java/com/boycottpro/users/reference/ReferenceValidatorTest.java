@@ -0,0 +1,177 @@
+package com.boycottpro.users.reference;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.boycottpro.users.UpgradeUserHandler;
+import com.boycottpro.users.config.UpgradeOptions;
+import com.boycottpro.users.dynamo.RetryPolicy;
+import com.boycottpro.users.harness.Events;
+import com.boycottpro.users.harness.InMemoryDynamoDb;
+import com.boycottpro.users.mapping.UserItems;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReferenceValidatorTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private InMemoryDynamoDb dynamoDb;
+
+    @BeforeEach
+    public void setUp() {
+        dynamoDb = new InMemoryDynamoDb();
+        seed();
+    }
+
+    private void seed() {
+        for (int i = 0; i < 150; i++) {
+            dynamoDb.seed("companies", Map.of("company_id", AttributeValue.fromS("c" + i),
+                    "company_name", AttributeValue.fromS("Company " + i)));
+        }
+        dynamoDb.seed("causes", Map.of("cause_id", AttributeValue.fromS("k1"),
+                "cause_desc", AttributeValue.fromS("Cause one")));
+        dynamoDb.seed("users", Map.of("user_id", AttributeValue.fromS("11111111-2222-3333-4444-555555555555"),
+                "paying_user", AttributeValue.fromBool(false)));
+    }
+
+    private ReferenceValidator validator(ReferenceCache cache) {
+        return new ReferenceValidator(dynamoDb, cache, new RetryPolicy(1, 1, 0), "companies", "causes");
+    }
+
+    private ReferenceCache cache(int capacity) {
+        return new ReferenceCache(capacity, 60_000, 5_000, now::get);
+    }
+
+    private static Map<String, List<WriteRequest>> writes(List<WriteRequest> boycotts, List<WriteRequest> causes) {
+        Map<String, List<WriteRequest>> writesByTable = new LinkedHashMap<>();
+        writesByTable.put("user_boycotts", boycotts);
+        writesByTable.put("user_causes", causes);
+        return writesByTable;
+    }
+
+    private static WriteRequest boycott(String companyId, String companyName, String causeId, String causeDesc) {
+        return UserItems.put(UserItems.boycottItem("u1", companyId, companyName, causeId, causeDesc, null, "1"));
+    }
+
+    @Test
+    public void testValidate_replacesSentNamesWithStoredOnes() {
+        WriteRequest correct = boycott("c1", "Company 1", "k1", "Cause one");
+        Map<String, List<WriteRequest>> writesByTable = writes(
+                List.of(correct, boycott("c2", "Forged Name", "k1", null)),
+                List.of(UserItems.put(UserItems.causeItem("u1", "k1", "stale", "1"))));
+
+        ReferenceValidator.Result result = validator(cache(100)).validate(writesByTable);
+
+        assertTrue(result.isValid());
+        assertEquals(2, result.getRewritten());
+        assertSame(correct, result.getWritesByTable().get("user_boycotts").get(0));
+        Map<String, AttributeValue> fixed = result.getWritesByTable().get("user_boycotts").get(1).putRequest().item();
+        assertEquals("Company 2", fixed.get("company_name").s());
+        assertEquals("Cause one", fixed.get("cause_desc").s());
+        assertEquals("Cause one",
+                result.getWritesByTable().get("user_causes").get(0).putRequest().item().get("cause_desc").s());
+    }
+
+    @Test
+    public void testValidate_servesWarmReferencesFromTheCache() {
+        ReferenceValidator validator = validator(cache(100));
+        Map<String, List<WriteRequest>> writesByTable = writes(List.of(boycott("c1", null, "k1", null)), List.of());
+
+        assertEquals(2, validator.validate(writesByTable).getFetched());
+        assertEquals(0, validator.validate(writesByTable).getFetched());
+        assertEquals(1L, dynamoDb.getStats().get("BatchGetItem"));
+
+        now.addAndGet(60_000);
+        assertEquals(2, validator.validate(writesByTable).getFetched());
+        assertEquals(2L, dynamoDb.getStats().get("BatchGetItem"));
+    }
+
+    @Test
+    public void testValidate_reportsUnknownIdsAndRemembersThemBriefly() {
+        ReferenceValidator validator = validator(cache(100));
+        Map<String, List<WriteRequest>> writesByTable = writes(
+                List.of(boycott("c1", null, "k9", null), boycott("nope", null, "k1", null)), List.of());
+
+        ReferenceValidator.Result result = validator.validate(writesByTable);
+
+        assertFalse(result.isValid());
+        assertEquals(List.of("cause_id k9", "company_id nope"), result.getUnknown());
+        assertEquals(0, validator.validate(writesByTable).getFetched());
+        now.addAndGet(5_000);
+        assertEquals(2, validator.validate(writesByTable).getFetched());
+    }
+
+    @Test
+    public void testValidate_splitsKeysAndRetriesUnprocessedOnes() {
+        AtomicBoolean bounced = new AtomicBoolean();
+        dynamoDb = new InMemoryDynamoDb() {
+            @Override
+            public BatchGetItemResponse batchGetItem(BatchGetItemRequest request) {
+                // the first call with causes in it gets them bounced back unprocessed
+                if (request.requestItems().containsKey("causes") && bounced.compareAndSet(false, true)) {
+                    Map<String, List<Map<String, AttributeValue>>> found = new HashMap<>();
+                    BatchGetItemResponse partial = super.batchGetItem(BatchGetItemRequest.builder()
+                            .requestItems(Map.of("companies", request.requestItems().get("companies"))).build());
+                    found.putAll(partial.responses());
+                    return BatchGetItemResponse.builder().responses(found)
+                            .unprocessedKeys(Map.of("causes", request.requestItems().get("causes"))).build();
+                }
+                return super.batchGetItem(request);
+            }
+        };
+        seed();
+        List<WriteRequest> boycotts = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            boycotts.add(boycott("c" + i, null, null, null));
+        }
+
+        ReferenceValidator.Result result = validator(cache(1000))
+                .validate(writes(boycotts, List.of(UserItems.put(UserItems.causeItem("u1", "k1", null, "1")))));
+
+        assertTrue(result.isValid(), result.getUnknown().toString());
+        assertEquals(151, result.getFetched());
+        assertEquals(3L, dynamoDb.getStats().get("BatchGetItem"));
+    }
+
+    @Test
+    public void testCache_evictsTheLeastRecentlyUsed() {
+        ReferenceCache cache = cache(2);
+        cache.put("companies", "a", ReferenceCache.Reference.of("A"));
+        cache.put("companies", "b", ReferenceCache.Reference.of("B"));
+        cache.get("companies", "a");
+        cache.put("companies", "c", ReferenceCache.Reference.of("C"));
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("companies", "b"));
+        assertEquals("A", cache.get("companies", "a").getName());
+    }
+
+    @Test
+    public void testHandler_rejectsUnknownReferences() {
+        UpgradeOptions options = new UpgradeOptions();
+        options.setValidateReferences(true);
+        options.setMetrics(false);
+        UpgradeUserHandler handler = new UpgradeUserHandler(dynamoDb, null, options);
+        APIGatewayProxyRequestEvent event = Events.authorized("11111111-2222-3333-4444-555555555555",
+                "{\"user_boycotts\":[{\"company_id\":\"ghost\",\"cause_id\":\"k1\"}],\"user_causes\":[]}");
+
+        APIGatewayProxyResponseEvent response = handler.handleRequest(event, null);
+
+        assertEquals(400, response.getStatusCode());
+        assertTrue(response.getBody().contains("company_id ghost"));
+        assertTrue(dynamoDb.items("user_boycotts").isEmpty());
+    }
+}